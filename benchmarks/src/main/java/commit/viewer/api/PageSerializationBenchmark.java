@@ -0,0 +1,65 @@
+package commit.viewer.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import commit.viewer.git.Fixtures;
+import commit.viewer.model.CommitModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the JSON of a page of commits sent by {@link CommitResource}: serialized by Jackson, tagged, and served
+ * from {@link PageCache} once serialized.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageSerializationBenchmark {
+
+    @Param({"30", "100"})
+    private int size;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final PageCache pages = new PageCache();
+
+    private List<CommitModel> page;
+
+    @Setup
+    public void setUp() {
+        this.page = Fixtures.history(this.size);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return this.mapper.writeValueAsBytes(this.page);
+    }
+
+    @Benchmark
+    public EntityTag tag() {
+        return PageCache.tag(this.page);
+    }
+
+    @Benchmark
+    public byte[] serializeCached() {
+        return this.pages.serialize(PageCache.tag(this.page), this.page);
+    }
+}
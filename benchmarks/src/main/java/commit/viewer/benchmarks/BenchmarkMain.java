@@ -0,0 +1,40 @@
+package commit.viewer.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks, it takes the command line options of JMH, e.g., a benchmark name pattern. The allocation rate
+ * of every benchmark is always reported, see {@link GCProfiler}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class BenchmarkMain {
+
+    /**
+     * Method called from the operating system.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        final Runner runner = new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()
+        );
+        if (commandLine.shouldList()) {
+            runner.list();
+            return;
+        }
+        runner.run();
+    }
+}
@@ -0,0 +1,287 @@
+package commit.viewer.benchmarks;
+
+import commit.viewer.Main;
+import commit.viewer.git.FakeGitHub;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.String.format;
+
+/**
+ * Load generator of {@code /commits}, served from a {@link FakeGitHub}, so throughput and latency are measured on a
+ * single machine without Github API.
+ * <p>
+ * Requests are sent at a fixed rate whatever the responses take, i.e., an open loop, and the latency of a request is
+ * counted from the time it was due, so a stalled server is not hidden by requests that were sent late. Pages are
+ * chosen at random up to the given page. Requests of the warm-up are not counted. The latency percentiles, the status
+ * of the responses and the calls made to the stub during the measurement are reported.
+ * <p>
+ * The server is started in this process unless {@code --server} is given, in which case that server must use the stub,
+ * i.e., be started with {@code -Dcommit.viewer.githubUrl=http://127.0.0.1:<github-port>}. Options are given as
+ * {@code --name value}, see {@link #usage()}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class LoadGenerator {
+
+    private static final String OWNER = "owner";
+
+    private static final String REPOSITORY = "repository";
+
+    private static final String[] CALL_TYPES = {"repo", "branch", "commits"};
+
+    /**
+     * Method called from the operating system.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Map<String, String> options;
+        try {
+            options = options(args);
+        } catch (final IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(usage());
+            System.exit(1);
+            return;
+        }
+        if (options.containsKey("help")) {
+            System.out.println(usage());
+            return;
+        }
+
+        final int rps = Integer.parseInt(options.getOrDefault("rps", "200"));
+        final int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        final int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup-seconds", "5"));
+        final int pages = Integer.parseInt(options.getOrDefault("pages", "10"));
+        final int size = Integer.parseInt(options.getOrDefault("size", "30"));
+        final int pushSeconds = Integer.parseInt(options.getOrDefault("push-seconds", "0"));
+
+        try (FakeGitHub github = new FakeGitHub.Builder()
+                .repository(OWNER, REPOSITORY)
+                .commits(Long.parseLong(options.getOrDefault("commits", "10000")))
+                .latencyMillis(Long.parseLong(options.getOrDefault("latency-ms", "50")))
+                .etags(Boolean.parseBoolean(options.getOrDefault("etags", "true")))
+                .rateLimit(Integer.parseInt(options.getOrDefault("rate-limit", "5000")))
+                .port(Integer.parseInt(options.getOrDefault("github-port", "0")))
+                .build()) {
+            final String serverUrl;
+            if (options.containsKey("server")) {
+                serverUrl = options.get("server").replaceFirst("/*$", "/");
+            } else {
+                // Read by the server when its first project is started.
+                System.setProperty("commit.viewer.githubUrl", github.url());
+                serverUrl = format("http://127.0.0.1:%d/", freePort());
+                Main.startRestfulServer(URI.create(serverUrl));
+            }
+            System.out.printf("Github stub on %s, server on %s.%n", github.url(), serverUrl);
+
+            final ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor();
+            if (pushSeconds > 0) {
+                pusher.scheduleAtFixedRate(() -> github.push(1), pushSeconds, pushSeconds, TimeUnit.SECONDS);
+            }
+            try {
+                new LoadGenerator(github, serverUrl, rps, pages, size).run(warmupSeconds, seconds);
+            } finally {
+                pusher.shutdownNow();
+            }
+        }
+        // The server is stopped on shutdown.
+        System.exit(0);
+    }
+
+    private final FakeGitHub github;
+
+    private final String serverUrl;
+
+    private final int rps;
+
+    private final int pages;
+
+    private final int size;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+
+    /**
+     * The latencies of the measured requests, in nanoseconds, in order of completion.
+     */
+    private long[] latencies;
+
+    private final AtomicInteger measured = new AtomicInteger();
+
+    private final ConcurrentMap<String, LongAdder> statuses = new ConcurrentHashMap<>();
+
+    private LoadGenerator(final FakeGitHub github, final String serverUrl, final int rps, final int pages,
+                          final int size) {
+        this.github = github;
+        this.serverUrl = serverUrl;
+        this.rps = rps;
+        this.pages = pages;
+        this.size = size;
+    }
+
+    /**
+     * Sends the requests of the warm-up then of the measurement, and reports once all of them are answered.
+     */
+    private void run(final int warmupSeconds, final int seconds) throws InterruptedException {
+        final long interval = TimeUnit.SECONDS.toNanos(1) / this.rps;
+        final long warmup = (long) warmupSeconds * this.rps;
+        final long total = warmup + (long) seconds * this.rps;
+        this.latencies = new long[(int) (total - warmup)];
+
+        final SplittableRandom random = new SplittableRandom(42);
+        final List<CompletableFuture<?>> responses = new ArrayList<>((int) total);
+        long[] upstreamBefore = upstream();
+        final long start = System.nanoTime();
+        long measureStart = start;
+        for (long i = 0; i < total; i++) {
+            final long due = start + i * interval;
+            final long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final boolean measure = i >= warmup;
+            if (i == warmup) {
+                upstreamBefore = upstream();
+                measureStart = due;
+            }
+            final HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(format("%scommits?url=https://github.com/%s/%s.git&page=%d&size=%d",
+                            this.serverUrl, OWNER, REPOSITORY, 1 + random.nextInt(this.pages), this.size)))
+                    .build();
+            responses.add(this.client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (!measure) {
+                            return;
+                        }
+                        this.latencies[this.measured.getAndIncrement()] = System.nanoTime() - due;
+                        final String status = response != null ? Integer.toString(response.statusCode()) : "error";
+                        this.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+                    }));
+        }
+        final long sent = System.nanoTime();
+        try {
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+                    .exceptionally(e -> null)
+                    .get(1, TimeUnit.MINUTES);
+        } catch (final ExecutionException | TimeoutException e) {
+            System.out.println("Some requests were not answered within a minute after the last one was sent.");
+        }
+        report(sent - measureStart, upstreamBefore, upstream());
+    }
+
+    private void report(final long elapsed, final long[] upstreamBefore, final long[] upstreamAfter) {
+        final int count = this.measured.get();
+        final long[] sorted = Arrays.copyOf(this.latencies, count);
+        Arrays.sort(sorted);
+
+        final Map<String, Long> statuses = new TreeMap<>();
+        this.statuses.forEach((status, responses) -> statuses.put(status, responses.sum()));
+        System.out.printf("Requests: %d answered of %d sent, by status %s%n", count, this.latencies.length, statuses);
+        System.out.printf("Rate: %.1f requests/s sent for %d requests/s targeted%n",
+                this.latencies.length / (elapsed / 1e9), this.rps);
+        System.out.printf("Latency (ms): p50 %.2f, p99 %.2f, p999 %.2f, max %.2f%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                percentile(sorted, 1));
+
+        final Map<String, Long> calls = new HashMap<>();
+        for (int i = 0; i < CALL_TYPES.length; i++) {
+            calls.put(CALL_TYPES[i], upstreamAfter[i] - upstreamBefore[i]);
+        }
+        final int last = CALL_TYPES.length;
+        System.out.printf("Upstream calls: %d %s, not modified %d, rate limited %d%n",
+                upstreamAfter[last] - upstreamBefore[last], new TreeMap<>(calls),
+                upstreamAfter[last + 1] - upstreamBefore[last + 1],
+                upstreamAfter[last + 2] - upstreamBefore[last + 2]);
+    }
+
+    /**
+     * Reads the counters of the stub, i.e., the calls by type, all calls, the not modified and rate limited ones.
+     */
+    private long[] upstream() {
+        final long[] counters = new long[CALL_TYPES.length + 3];
+        for (int i = 0; i < CALL_TYPES.length; i++) {
+            counters[i] = this.github.requests(CALL_TYPES[i]);
+        }
+        counters[CALL_TYPES.length] = this.github.requests();
+        counters[CALL_TYPES.length + 1] = this.github.notModified();
+        counters[CALL_TYPES.length + 2] = this.github.rateLimited();
+        return counters;
+    }
+
+    /**
+     * Gets the given percentile of the given sorted latencies, in milliseconds.
+     */
+    private static double percentile(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Map<String, String> options(final String[] args) {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i] + ".");
+            }
+            final String name = args[i].substring(2);
+            if (name.equals("help")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value of " + args[i] + ".");
+            }
+        }
+        return options;
+    }
+
+    private static String usage() {
+        return String.join(System.lineSeparator(),
+                "Options:",
+                "  --rps <n>             requests per second sent to /commits (default 200)",
+                "  --seconds <n>         duration of the measurement (default 30)",
+                "  --warmup-seconds <n>  duration of the warm-up, not measured (default 5)",
+                "  --pages <n>           pages requested at random from 1 to n (default 10)",
+                "  --size <n>            commits per page (default 30)",
+                "  --commits <n>         commits of the stub repository (default 10000)",
+                "  --latency-ms <n>      latency of the stub responses (default 50)",
+                "  --etags <bool>        whether the stub answers conditional requests (default true)",
+                "  --rate-limit <n>      requests allowed by the stub each hour (default 5000)",
+                "  --push-seconds <n>    pushes a commit to the stub every n seconds (default 0, never)",
+                "  --github-port <n>     port of the stub (default a free one)",
+                "  --server <url>        server to load instead of starting one, it must use the stub"
+        );
+    }
+}
@@ -0,0 +1,37 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of parsing a page of commits sent by Github REST API, see {@link CommitParser#parseCommits}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitParserBenchmark {
+
+    private final byte[] page = Fixtures.page();
+
+    @Benchmark
+    public List<CommitModel> parsePage() {
+        return CommitParser.parseCommits(new ByteArrayInputStream(this.page));
+    }
+}
@@ -0,0 +1,93 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The commits the benchmarks work on. A page of Github REST API is kept as resource, with the fields Github sends,
+ * i.e., most of its bytes are skipped by the parser. Longer histories are made of the commits of that page, with their
+ * own sha, parents and dates.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public final class Fixtures {
+
+    /**
+     * The number of commits of the page.
+     */
+    public static final int PAGE_SIZE = 100;
+
+    private static final byte[] PAGE = read("/github/commits.json");
+
+    private static final List<CommitModel> TEMPLATES = CommitParser.parseCommits(new ByteArrayInputStream(PAGE));
+
+    /**
+     * The date of the newest commit of a history, in epoch milliseconds.
+     */
+    private static final long NEWEST = Instant.parse("2020-09-13T14:00:00Z").toEpochMilli();
+
+    private Fixtures() {
+
+    }
+
+    /**
+     * Gets the message body of a page of commits sent by Github REST API.
+     *
+     * @return The JSON bytes, they must not be modified.
+     */
+    public static byte[] page() {
+        return PAGE;
+    }
+
+    /**
+     * Gets a linear history, newest commit first, each commit has the next one as parent.
+     *
+     * @param size The number of commits.
+     * @return {@link List} of {@link CommitModel}.
+     */
+    public static List<CommitModel> history(final int size) {
+        final List<CommitModel> history = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            history.add(commit(-i));
+        }
+        return history;
+    }
+
+    /**
+     * Gets the commit of the given number of a history, whose parent is the commit of the previous number. Number
+     * {@code 0} is the newest commit of {@link #history(int)}, newer commits have positive numbers.
+     *
+     * @param number The number of the commit.
+     * @return The {@link CommitModel}.
+     */
+    public static CommitModel commit(final long number) {
+        final CommitModel template = TEMPLATES.get((int) Math.floorMod(number, (long) TEMPLATES.size()));
+        return new CommitModel.Builder()
+                .sha(sha(number))
+                .message(template.getMessage())
+                .author(template.getAuthor())
+                .date(Instant.ofEpochMilli(NEWEST + TimeUnit.MINUTES.toMillis(number)).toString())
+                .parents(List.of(sha(number - 1)))
+                .build();
+    }
+
+    private static String sha(final long number) {
+        return String.format("%040x", number - Long.MIN_VALUE);
+    }
+
+    private static byte[] read(final String resource) {
+        try (InputStream input = Fixtures.class.getResourceAsStream(resource)) {
+            return input.readAllBytes();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
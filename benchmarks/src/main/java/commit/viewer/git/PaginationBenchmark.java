@@ -0,0 +1,94 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Benchmark of serving a page of a cached branch, see {@link GitCommitAccess#getCommits(String, int, int)}, at shallow
+ * and deep offsets of a long history. The branch is fresh, so Github API is not requested, and every commit of the page
+ * is read, as the resource does to serialize it.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationBenchmark {
+
+    private static final String BRANCH = "master";
+
+    @Param({"100000"})
+    private int cachedCommits;
+
+    @Param({"1", "100", "3000"})
+    private int page;
+
+    @Param({"30"})
+    private int size;
+
+    private GitCommitAccess project;
+
+    @Setup
+    public void setUp() {
+        final UnchangedFetcher fetcher = new UnchangedFetcher();
+        this.project = new GitCommitAccess(null, "owner", "repository", fetcher);
+        final BranchCache branchCache = new BranchCache(this.project.graph);
+        branchCache.append(Fixtures.history(this.cachedCommits));
+        this.project.cache.put(BRANCH, branchCache);
+        fetcher.newest = branchCache.snapshot().subList(0, GitCommitAccess.MAX_PER_PAGE);
+        // Refreshed once, so pages are served from the cache.
+        this.project.refresh(BRANCH).join();
+    }
+
+    @Benchmark
+    public void getCommits(final Blackhole blackhole) {
+        for (final CommitModel commit : this.project.getCommits(BRANCH, this.page, this.size).join()) {
+            blackhole.consume(commit);
+        }
+    }
+
+    /**
+     * Answers the same newest page, i.e., no commit is ever pushed.
+     */
+    private static final class UnchangedFetcher implements CommitFetcher {
+
+        private List<CommitModel> newest;
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchNewest(final String branch) {
+            return completedFuture(this.newest);
+        }
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchHistory(final String sha, final int page,
+                                                                 final int perPage) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchPage(final String branch, final String head, final int page,
+                                                              final int perPage) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+    }
+}
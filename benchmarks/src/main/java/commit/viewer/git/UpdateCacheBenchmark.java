@@ -0,0 +1,112 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Benchmark of refreshing a cached branch, i.e., merging the newest page of Github API into the cache, see
+ * {@link GitCommitAccess#refresh(String)}. The newest page has {@code newCommits} commits that are not cached followed
+ * by the newest cached commits, as if they were pushed since the last refresh, no commit is pushed when it is
+ * {@code 0}. Github API is replaced by a fetcher that answers without parsing.
+ * <p>
+ * Since each refresh adds commits, a measurement is a batch of refreshes on a cache started over on each iteration,
+ * its score is the time of the whole batch. The allocation reported by the GC profiler includes the cache rebuilt by
+ * that setup, so it is only comparable between runs of the same {@code cachedCommits}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = UpdateCacheBenchmark.BATCH_SIZE)
+@Measurement(iterations = 20, batchSize = UpdateCacheBenchmark.BATCH_SIZE)
+@Fork(1)
+public class UpdateCacheBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    private static final String BRANCH = "master";
+
+    @Param({"1000", "100000"})
+    private int cachedCommits;
+
+    @Param({"0", "10"})
+    private int newCommits;
+
+    private List<CommitModel> history;
+
+    private GitCommitAccess project;
+
+    private BranchCache branchCache;
+
+    /**
+     * The number of the newest commit, see {@link Fixtures#commit(long)}.
+     */
+    private long newest;
+
+    @Setup(Level.Trial)
+    public void setUpHistory() {
+        this.history = Fixtures.history(this.cachedCommits);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        this.project = new GitCommitAccess(null, "owner", "repository", new NewestFetcher());
+        this.branchCache = new BranchCache(this.project.graph);
+        this.branchCache.append(this.history);
+        this.project.cache.put(BRANCH, this.branchCache);
+        this.newest = 0;
+    }
+
+    @Benchmark
+    public void refresh() {
+        this.project.refresh(BRANCH).join();
+    }
+
+    /**
+     * Answers the newest page, made of the new commits and the newest cached ones.
+     */
+    private final class NewestFetcher implements CommitFetcher {
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchNewest(final String branch) {
+            final List<CommitModel> page = new ArrayList<>(GitCommitAccess.MAX_PER_PAGE);
+            for (int i = newCommits; i > 0; i--) {
+                page.add(Fixtures.commit(newest + i));
+            }
+            newest += newCommits;
+            page.addAll(branchCache.snapshot().subList(0, GitCommitAccess.MAX_PER_PAGE - newCommits));
+            return completedFuture(page);
+        }
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchHistory(final String sha, final int page,
+                                                                 final int perPage) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+
+        @Override
+        public CompletableFuture<List<CommitModel>> fetchPage(final String branch, final String head, final int page,
+                                                              final int perPage) {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package commit.viewer.model;
+
+import commit.viewer.git.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link CommitModel#equals(Object)} and {@link CommitModel#hashCode()}, on a commit with a message body.
+ * Compared commits have their own strings, as commits read from the cache and from Github API do.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommitModelBenchmark {
+
+    private CommitModel commit;
+
+    private CommitModel same;
+
+    private CommitModel other;
+
+    @Setup
+    public void setUp() {
+        this.commit = Fixtures.commit(0);
+        this.same = copy(this.commit, this.commit.getMessage());
+        this.other = copy(this.commit, this.commit.getMessage() + ".");
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return this.commit.hashCode();
+    }
+
+    @Benchmark
+    public boolean equalsSame() {
+        return this.commit.equals(this.same);
+    }
+
+    @Benchmark
+    public boolean equalsOther() {
+        return this.commit.equals(this.other);
+    }
+
+    private static CommitModel copy(final CommitModel commit, final String message) {
+        return new CommitModel.Builder()
+                .sha(new String(commit.getSha()))
+                .author(new String(commit.getAuthor()))
+                .date(new String(commit.getDate()))
+                .message(new String(message))
+                .parents(commit.getParents())
+                .build();
+    }
+}
@@ -2,7 +2,11 @@ package commit.viewer;
 
 import commit.viewer.api.CommitResource;
 import commit.viewer.api.HealthResource;
-import commit.viewer.git.GitCommitAccess;
+import commit.viewer.api.MetricsResource;
+import commit.viewer.api.RequestMetrics;
+import commit.viewer.git.CommitSource;
+import commit.viewer.git.GitCommitAccessRegistry;
+import commit.viewer.git.RateLimitedException;
 import commit.viewer.model.CommitModel;
 import io.netty.channel.Channel;
 import org.glassfish.jersey.jackson.JacksonFeature;
@@ -15,6 +19,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 /**
  * Main server process.
@@ -27,13 +32,17 @@ public class Main {
      * Method called from the operating system.
      */
     public static void main(final String[] args) {
-        startRestfulServer();
+        startRestfulServer(URI.create("http://localhost:8080/"));
         
         final Scanner inputScanner = new Scanner(System.in);
 
         System.out.println("Program started!");
         System.out.println("Insert your input:");
 
+        // The project cloned by the command line, the REST API keeps its own projects on the registry.
+        CommitSource project = null;
+        String currentBranch = null;
+
         while (inputScanner.hasNextLine()) {
             final String line = inputScanner.nextLine().trim();
             if (line.equals("exit")) {
@@ -51,12 +60,12 @@ public class Main {
                         System.out.println("Command invalid, see valid example below:");
                         System.out.println("$ git log");
                     }
-                    if (!GitCommitAccess.INSTANCE.isProjectStarted()) {
+                    if (project == null) {
                         System.out.println("Please clone a project first.");
                         break;
                     }
                     try {
-                        final List<CommitModel> commits = GitCommitAccess.INSTANCE.getCommits();
+                        final List<CommitModel> commits = project.getCommits(currentBranch).join();
                         for (final CommitModel commit: commits) {
                             System.out.println("sha: " + commit.getSha());
                             System.out.println("author: " + commit.getAuthor());
@@ -74,11 +83,15 @@ public class Main {
                         System.out.println("$ git checkout master");
                         break;
                     }
-                    if (!GitCommitAccess.INSTANCE.isProjectStarted()) {
+                    if (project == null) {
                         System.out.println("Please clone a project first.");
                         break;
                     }
-                    GitCommitAccess.INSTANCE.setBranch(commands[2]);
+                    if (!project.setBranch(commands[2]).join()) {
+                        System.out.println("Failed to checkout branch: " + commands[2]);
+                        break;
+                    }
+                    currentBranch = commands[2];
                     System.out.println("Successfully set URL to: " + commands[2]);
                     break;
                 case "branch":
@@ -87,13 +100,13 @@ public class Main {
                         System.out.println("$ git checkout https://api.github.com/repos/apache/spark/commits");
                         break;
                     }
-                    if (!GitCommitAccess.INSTANCE.isProjectStarted()) {
+                    if (project == null) {
                         System.out.println("Please clone a project first.");
                         break;
                     }
                     System.out.println("The list below shows the branch cached locally:");
-                    for (final String branch: GitCommitAccess.INSTANCE.listBranches()) {
-                        if (branch.equals(GitCommitAccess.INSTANCE.getCurrentBranch())) {
+                    for (final String branch: project.listBranches()) {
+                        if (branch.equals(currentBranch)) {
                             System.out.println("[current] " + branch);
                             continue;
                         }
@@ -106,7 +119,19 @@ public class Main {
                         System.out.println("$ git clone https://github.com/apache/spark.git");
                         break;
                     }
-                    if (GitCommitAccess.INSTANCE.startProjectByURL(commands[2])) {
+                    final CommitSource cloned;
+                    try {
+                        cloned = GitCommitAccessRegistry.INSTANCE.getProjectByURL(commands[2], true).join();
+                    } catch (final CompletionException e) {
+                        final RateLimitedException limited = RateLimitedException.causeOf(e);
+                        System.out.println(limited != null
+                                ? "Github API rate limit exceeded, retry in " + limited.getRetryAfterSeconds() + "s."
+                                : "Failed starting project with URL:" + commands[2]);
+                        break;
+                    }
+                    if (cloned != null) {
+                        project = cloned;
+                        currentBranch = cloned.getDefaultBranch();
                         System.out.println("Project started with URL:" + commands[2]);
                         break;
                     }
@@ -118,21 +143,29 @@ public class Main {
         }
     }
 
-    private static void startRestfulServer() {
+    /**
+     * Starts the REST API on the given URI, it is stopped on shutdown.
+     *
+     * @param uri The base URI, e.g., {@code http://localhost:8080/}.
+     * @return The server {@link Channel}.
+     */
+    public static Channel startRestfulServer(final URI uri) {
         final ResourceConfig resourceConfig = ResourceConfig.forApplication(
                 new Application() {
                     public Set getSingletons() {
                         final Set<Object> set = new HashSet<>();
                         set.add(new HealthResource());
                         set.add(new CommitResource());
+                        set.add(new MetricsResource());
+                        set.add(new RequestMetrics());
                         return set;
                     }
                 }
         ).register(new JacksonFeature());
 
-        final URI uri = URI.create("http://localhost:8080/");
         final Channel server = NettyHttpContainerProvider.createHttp2Server(uri, resourceConfig, null);
         Runtime.getRuntime().addShutdownHook(new Thread((server::close)));
+        return server;
     }
 }
 
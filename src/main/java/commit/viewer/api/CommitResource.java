@@ -1,21 +1,43 @@
 package commit.viewer.api;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import commit.viewer.git.CommitQuery;
+import commit.viewer.git.CommitSource;
 import commit.viewer.git.GitCommitAccess;
+import commit.viewer.git.GitCommitAccessRegistry;
+import commit.viewer.git.RateLimitedException;
 import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
-import java.net.URL;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+import java.net.URI;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 import static javax.ws.rs.core.Response.Status.OK;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 
 /**
  * A class that provides commit endpoint.
@@ -30,37 +52,311 @@ public class CommitResource {
     private static final Logger logger = LoggerFactory.getLogger(CommitResource.class);
 
     /**
-     * Gets {@link List} of {@link CommitModel} by given query param from endpoint API.
+     * The media type of newline-delimited JSON.
+     */
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * The number of commits read at a time by a stream, i.e., the maximum number of commits per Github page.
+     */
+    private static final int STREAM_CHUNK_SIZE = 100;
+
+    /**
+     * The maximum number of commits found by a search, i.e., the maximum number of commits per Github page.
+     */
+    private static final int MAX_SEARCH_SIZE = 100;
+
+    /**
+     * The threads that write streams, each one waits for the chunks of its stream.
+     */
+    private static final ExecutorService streamWriters = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("commit-viewer-stream-%d").setDaemon(true).build()
+    );
+
+    /**
+     * The pages already serialized.
+     */
+    private final PageCache pages = new PageCache();
+
+    /**
+     * Gets {@link List} of {@link CommitModel} by given query param from endpoint API. The request is suspended while
+     * commits are retrieved, so the server thread is released until the response is resumed.
+     * <p>
+     * Commits are either paginated by {@code page} or by a cursor, i.e., the sha of a commit given by {@code after} or
+     * {@code before}. Cursors are not shifted by new commits, the response has {@code next} and {@code prev} links
+     * with the cursors of the following and previous commits. A page or size below 1, or a page beyond the largest
+     * position of a commit, is answered with {@code 400}.
+     * <p>
+     * Responses have a strong {@code ETag} of the page, see {@link PageCache#tag(List)}, and a request whose
+     * {@code If-None-Match} has the tag of the page is answered with {@code 304 Not Modified}. The {@code max-age} of
+     * responses is the freshness of the project, see {@link CommitSource#getFreshnessSeconds()}.
      *
-     * @param url   The given URL.
-     * @param page  The page number.
-     * @param size  The size number.
-     * @return The response for corresponding request.
+     * @param asyncResponse The response to resume once commits are retrieved.
+     * @param uriInfo       The request URI, used to build links.
+     * @param url           The given URL.
+     * @param branch        The branch name, the default branch of the project if not given.
+     * @param page          The page number, starting at 1.
+     * @param size          The size number, at least 1.
+     * @param after         The sha of the commit newer than the requested commits.
+     * @param before        The sha of the commit older than the requested commits.
+     * @param ifNoneMatch   The entity tags of the pages the client has.
      */
     @GET
     @Produces(APPLICATION_JSON)
-    public Response getCommits(@QueryParam("url") String url,
-                               @QueryParam("page") Integer page,
-                               @QueryParam("size") Integer size) {
+    public void getCommits(@Suspended final AsyncResponse asyncResponse,
+                           @Context final UriInfo uriInfo,
+                           @QueryParam("url") String url,
+                           @QueryParam("branch") String branch,
+                           @QueryParam("page") Integer page,
+                           @QueryParam("size") Integer size,
+                           @QueryParam("after") String after,
+                           @QueryParam("before") String before,
+                           @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
 
-        try {
-            final boolean serverStarted = GitCommitAccess.INSTANCE.startProjectByURL(url);
+        if ((after != null || before != null) && (page != null || (after != null && before != null))) {
+            asyncResponse.resume(Response.status(BAD_REQUEST).build());
+            return;
+        }
+        // The position of the last commit of the page must fit an int.
+        if ((page != null && page < 1) || (size != null && size < 1)
+                || (long) (page != null ? page : 1) * (size != null ? size : GitCommitAccess.DEFAULT_PAGE_SIZE)
+                > Integer.MAX_VALUE) {
+            asyncResponse.resume(Response.status(BAD_REQUEST).build());
+            return;
+        }
 
-            if (!serverStarted) {
-                return Response.status(BAD_REQUEST).build();
+        // The request context is read before the request is suspended, commits might be retrieved on another thread.
+        final UriBuilder requestUri = uriInfo.getRequestUriBuilder();
+        GitCommitAccessRegistry.INSTANCE.getProjectByURL(url).thenCompose(project -> {
+            if (project == null) {
+                return completedFuture(Response.status(BAD_REQUEST).build());
             }
-            final List<CommitModel> commits;
-            if (page != null || size != null) {
-                commits = GitCommitAccess.INSTANCE.getCommits(page, size);
+            final String checkout = branch != null ? branch : project.getDefaultBranch();
+            final int limit = size != null ? size : GitCommitAccess.DEFAULT_PAGE_SIZE;
+            final CompletableFuture<List<CommitModel>> commits;
+            if (after != null) {
+                commits = project.getCommitsAfter(checkout, after, limit);
+            } else if (before != null) {
+                commits = project.getCommitsBefore(checkout, before, limit);
+            } else if (page != null || size != null) {
+                commits = project.getCommits(checkout, page != null ? page : 1, limit);
             } else {
-                commits = GitCommitAccess.INSTANCE.getCommits();
+                commits = project.getCommits(checkout);
             }
 
-            return Response.status(OK).type(APPLICATION_JSON).entity(commits).build();
-        } catch (final Exception e) {
+            return commits.thenApply(list -> {
+                final EntityTag tag = PageCache.tag(list);
+                final Response.ResponseBuilder response = matches(ifNoneMatch, tag)
+                        ? Response.notModified(tag)
+                        : Response.status(OK).type(APPLICATION_JSON).entity(this.pages.serialize(tag, list)).tag(tag);
+                response.cacheControl(cacheControl(project));
+                if (!list.isEmpty()) {
+                    response.link(cursor(requestUri, "after", list.get(list.size() - 1)), "next");
+                    response.link(cursor(requestUri, "before", list.get(0)), "prev");
+                }
+                return response.build();
+            });
+        }).exceptionally(e -> {
             logger.error("Failed to retrieve commits from {}", url);
-            return Response.status(BAD_REQUEST).build();
+            return failure(e);
+        }).thenAccept(asyncResponse::resume);
+    }
+
+    /**
+     * Streams the whole history of the given branch as newline-delimited JSON, see {@link CommitStream}. The request
+     * is suspended until the first chunk of commits is retrieved, so a missing project or branch is still answered
+     * with an error. The response is then written by a thread of {@link #streamWriters}, which waits for each chunk of
+     * commits, so commits are only fetched as fast as the client reads them, and neither the container threads nor
+     * the threads of Github API responses are blocked.
+     *
+     * @param asyncResponse The response to resume once the first chunk is retrieved.
+     * @param url           The given URL.
+     * @param branch        The branch name, the default branch of the project if not given.
+     * @param size          The number of commits read at a time.
+     */
+    @GET
+    @Path("stream")
+    @Produces(APPLICATION_NDJSON)
+    public void streamCommits(@Suspended final AsyncResponse asyncResponse,
+                              @QueryParam("url") String url,
+                              @QueryParam("branch") String branch,
+                              @QueryParam("size") Integer size) {
+
+        GitCommitAccessRegistry.INSTANCE.getProjectByURL(url).thenCompose(project -> {
+            if (project == null) {
+                return completedFuture(Response.status(BAD_REQUEST).build());
+            }
+            final String checkout = branch != null ? branch : project.getDefaultBranch();
+            final int chunkSize = size != null && size > 0 ? Math.min(size, STREAM_CHUNK_SIZE) : STREAM_CHUNK_SIZE;
+            return project.getCommits(checkout, 1, chunkSize).thenApply(first -> Response.status(OK)
+                    .type(APPLICATION_NDJSON)
+                    .entity(new CommitStream(project, checkout, chunkSize, first))
+                    .build());
+        }).exceptionally(e -> {
+            logger.error("Failed to stream commits from {}", url);
+            return failure(e);
+        }).thenAcceptAsync(asyncResponse::resume, streamWriters);
+    }
+
+    /**
+     * Searches the commits of the given branch, newest commit first, see {@link CommitQuery}. Criteria that are not
+     * given match every commit. Commits of Github repositories are searched in the cache only, see
+     * {@link GitCommitAccess#searchCommits(String, CommitQuery, int)}.
+     *
+     * @param asyncResponse The response to resume once commits are found.
+     * @param url           The given URL.
+     * @param branch        The branch name, the default branch of the project if not given.
+     * @param author        The author name, ignoring case.
+     * @param text          The words the message must have, in any order and ignoring case.
+     * @param since         The oldest ISO-8601 date, e.g., {@code 2020-09-13T00:00:00Z}.
+     * @param until         The newest ISO-8601 date.
+     * @param size          The maximum number of commits, at least 1 and at most {@link #MAX_SEARCH_SIZE}.
+     */
+    @GET
+    @Path("search")
+    @Produces(APPLICATION_JSON)
+    public void searchCommits(@Suspended final AsyncResponse asyncResponse,
+                              @QueryParam("url") String url,
+                              @QueryParam("branch") String branch,
+                              @QueryParam("author") String author,
+                              @QueryParam("q") String text,
+                              @QueryParam("since") String since,
+                              @QueryParam("until") String until,
+                              @QueryParam("size") Integer size) {
+
+        if (size != null && size < 1) {
+            asyncResponse.resume(Response.status(BAD_REQUEST).build());
+            return;
+        }
+        final CommitQuery query;
+        try {
+            query = new CommitQuery.Builder()
+                    .author(author)
+                    .text(text)
+                    .since(since != null ? Instant.parse(since) : null)
+                    .until(until != null ? Instant.parse(until) : null)
+                    .build();
+        } catch (final DateTimeParseException e) {
+            asyncResponse.resume(Response.status(BAD_REQUEST).build());
+            return;
         }
+
+        GitCommitAccessRegistry.INSTANCE.getProjectByURL(url).thenCompose(project -> {
+            if (project == null) {
+                return completedFuture(Response.status(BAD_REQUEST).build());
+            }
+            final String checkout = branch != null ? branch : project.getDefaultBranch();
+            final int limit = size != null ? Math.min(size, MAX_SEARCH_SIZE) : GitCommitAccess.DEFAULT_PAGE_SIZE;
+            return project.searchCommits(checkout, query, limit)
+                    .thenApply(list -> Response.status(OK).type(APPLICATION_JSON).entity(list).build());
+        }).exceptionally(e -> {
+            logger.error("Failed to search commits from {}", url);
+            return failure(e);
+        }).thenAccept(asyncResponse::resume);
+    }
+
+    /**
+     * Gets the statistics of the commits of the given branch, i.e., the number of commits by author, day and week,
+     * and the time each author took to commit for the first time, see {@link CommitStatsModel}. Statistics are
+     * aggregated as commits are cached, so they are read without reading commits. Commits of Github repositories are
+     * counted in the cache only, see {@link GitCommitAccess#getStats(String)}.
+     *
+     * @param asyncResponse The response to resume once statistics are retrieved.
+     * @param url           The given URL.
+     * @param branch        The branch name, the default branch of the project if not given.
+     */
+    @GET
+    @Path("stats")
+    @Produces(APPLICATION_JSON)
+    public void getStats(@Suspended final AsyncResponse asyncResponse,
+                         @QueryParam("url") String url,
+                         @QueryParam("branch") String branch) {
+
+        GitCommitAccessRegistry.INSTANCE.getProjectByURL(url).thenCompose(project -> {
+            if (project == null) {
+                return completedFuture(Response.status(BAD_REQUEST).build());
+            }
+            final String checkout = branch != null ? branch : project.getDefaultBranch();
+            return project.getStats(checkout).thenApply(stats -> Response.status(OK)
+                    .type(APPLICATION_JSON)
+                    .entity(stats)
+                    .cacheControl(cacheControl(project))
+                    .build());
+        }).exceptionally(e -> {
+            logger.error("Failed to retrieve statistics from {}", url);
+            return failure(e);
+        }).thenAccept(asyncResponse::resume);
+    }
+
+    /**
+     * Gets the response of a request that failed, {@code 503} with a {@code Retry-After} header if the rate limit of
+     * Github API is exhausted, otherwise {@code 400}.
+     */
+    private static Response failure(final Throwable e) {
+        final RateLimitedException limited = RateLimitedException.causeOf(e);
+        if (limited != null) {
+            return Response.status(SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, limited.getRetryAfterSeconds())
+                    .build();
+        }
+        return Response.status(BAD_REQUEST).build();
+    }
+
+    /**
+     * Checks whether the given {@code If-None-Match} header has the given tag. The comparison is weak, as required by
+     * {@code If-None-Match}, i.e., a weak tag matches the strong tag of the same value.
+     *
+     * @param ifNoneMatch The header, {@code null} if not given.
+     * @param tag         The tag of the page.
+     * @return {@code true} if the client has the page.
+     */
+    static boolean matches(final String ifNoneMatch, final EntityTag tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals('"' + tag.getValue() + '"')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the cache control of the pages of the given project, they are revalidated by their tag once stale.
+     */
+    private static CacheControl cacheControl(final CommitSource project) {
+        final CacheControl cacheControl = new CacheControl();
+        final long freshness = project.getFreshnessSeconds();
+        if (freshness > 0) {
+            cacheControl.setMaxAge((int) Math.min(Integer.MAX_VALUE, freshness));
+        } else {
+            cacheControl.setNoCache(true);
+        }
+        return cacheControl;
     }
-}
 
+    /**
+     * Builds the request URI with the given cursor instead of the page or cursor of the request.
+     *
+     * @param requestUri The request URI.
+     * @param name       The cursor name, i.e., {@code after} or {@code before}.
+     * @param commit     The cursor commit.
+     * @return The {@link URI} of the link.
+     */
+    private static URI cursor(final UriBuilder requestUri, final String name, final CommitModel commit) {
+        return requestUri.clone()
+                .replaceQueryParam("page")
+                .replaceQueryParam("after")
+                .replaceQueryParam("before")
+                .replaceQueryParam(name, commit.getSha())
+                .build();
+    }
+}
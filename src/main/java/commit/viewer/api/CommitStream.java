@@ -0,0 +1,87 @@
+package commit.viewer.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import commit.viewer.git.CommitSource;
+import commit.viewer.model.CommitModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The whole history of a branch written as newline-delimited JSON, one commit per line, newest commit first.
+ * <p>
+ * Commits are read by chunks through the cursor of the last written commit, see
+ * {@link CommitSource#streamCommitsAfter(String, String, String, int, int)}, i.e., by their position on the history of
+ * the newest commit of the first chunk, so they come from the cache while it has them, commits beyond the cache are
+ * fetched upstream without being cached, and commits pushed meanwhile are not streamed. The next chunk is requested
+ * while the current one is written, and no further chunk is requested until the current one is written, so a slow
+ * client slows the upstream fetches down, and the stream holds at most two chunks whatever the length of the history.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitStream implements StreamingOutput {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitStream.class);
+
+    /**
+     * The writer of a commit, the response stream is neither closed nor flushed by each commit.
+     */
+    private static final ObjectWriter writer = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false)
+            .writerFor(CommitModel.class);
+
+    private final CommitSource project;
+
+    private final String branch;
+
+    private final int chunkSize;
+
+    /**
+     * The first chunk, requested before the response is sent, so a missing branch is still answered with an error.
+     */
+    private final List<CommitModel> first;
+
+    CommitStream(final CommitSource project, final String branch, final int chunkSize,
+                 final List<CommitModel> first) {
+        this.project = project;
+        this.branch = branch;
+        this.chunkSize = chunkSize;
+        this.first = first;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        List<CommitModel> chunk = this.first;
+        final String head = chunk.isEmpty() ? null : chunk.get(0).getSha();
+        int written = 0;
+        while (!chunk.isEmpty()) {
+            final CompletableFuture<List<CommitModel>> next = this.project.streamCommitsAfter(
+                    this.branch, head, chunk.get(chunk.size() - 1).getSha(), written + chunk.size() - 1,
+                    this.chunkSize);
+            for (final CommitModel commit : chunk) {
+                writer.writeValue(output, commit);
+                output.write('\n');
+            }
+            output.flush();
+            written += chunk.size();
+
+            try {
+                chunk = next.join();
+            } catch (final CompletionException e) {
+                // The status is already sent, the client sees a truncated stream.
+                logger.error("Fail to stream branch {} after {} commits.", this.branch, written, e);
+                throw new IOException(e.getCause());
+            }
+        }
+        logger.debug("Streamed {} commits of branch {}.", written, this.branch);
+    }
+}
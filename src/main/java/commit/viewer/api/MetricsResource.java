@@ -0,0 +1,33 @@
+package commit.viewer.api;
+
+import commit.viewer.metrics.Metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * A class that provides metrics endpoint, in Prometheus text format.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    /**
+     * The media type of Prometheus text format.
+     */
+    static final String TEXT_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * An get endpoint for metrics scrapes.
+     *
+     * @return The response with every metric, see {@link Metrics#scrape()}.
+     */
+    @GET
+    @Produces(TEXT_PROMETHEUS)
+    public Response getMetrics() {
+        return Response.status(Response.Status.OK).entity(Metrics.INSTANCE.scrape()).build();
+    }
+}
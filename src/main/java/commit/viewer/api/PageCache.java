@@ -0,0 +1,82 @@
+package commit.viewer.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import commit.viewer.model.CommitModel;
+
+import javax.ws.rs.core.EntityTag;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The pages of commits already serialized as JSON, so hot pages are written straight from bytes without serializing
+ * them again. Pages are keyed by their entity tag, which identifies their content, see {@link #tag(List)}, hence a
+ * page is shared by every request that returns the same commits, whatever its page number or cursor.
+ * <p>
+ * The least recently used pages are evicted once the pages exceed {@link #MAX_BYTES}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class PageCache {
+
+    /**
+     * The maximum number of bytes of serialized pages kept, can be set by {@code commit.viewer.maxPageCacheBytes}
+     * system property.
+     */
+    private static final long MAX_BYTES = Long.getLong("commit.viewer.maxPageCacheBytes", 32L << 20);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Cache<String, byte[]> pages;
+
+    PageCache() {
+        this(MAX_BYTES);
+    }
+
+    PageCache(final long maxBytes) {
+        this.pages = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, byte[]>weigher((tag, page) -> page.length)
+                .build();
+    }
+
+    /**
+     * Gets the strong entity tag of the given page. A commit is identified by its sha, so a page is identified by the
+     * sha of its commits, i.e., the tag changes when the head of the branch moves the page, and is kept otherwise.
+     *
+     * @param commits The page of commits.
+     * @return The {@link EntityTag}.
+     */
+    static EntityTag tag(final List<CommitModel> commits) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (final CommitModel commit : commits) {
+            hasher.putString(commit.getSha(), US_ASCII).putByte((byte) 0);
+        }
+        return new EntityTag(hasher.putInt(commits.size()).hash().toString());
+    }
+
+    /**
+     * Gets the JSON of the given page, serialized only if the page is not kept.
+     *
+     * @param tag     The entity tag of the page, see {@link #tag(List)}.
+     * @param commits The page of commits.
+     * @return The JSON bytes, they must not be modified.
+     */
+    byte[] serialize(final EntityTag tag, final List<CommitModel> commits) {
+        try {
+            return this.pages.get(tag.getValue(), () -> mapper.writeValueAsBytes(commits));
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof JsonProcessingException) {
+                throw new UncheckedIOException((JsonProcessingException) e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package commit.viewer.api;
+
+import commit.viewer.metrics.Metrics;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import java.lang.reflect.Method;
+
+/**
+ * Records the latency of every request by resource method and status, see {@link Metrics}. A request is timed from
+ * its start until its response is written, so suspended requests include the time spent waiting for commits.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class RequestMetrics implements ApplicationEventListener {
+
+    private static final Metrics.Histogram requestLatency = Metrics.INSTANCE.histogram(
+            "commit_viewer_request_seconds",
+            "Latency of requests until the response is written, by resource method and status.",
+            "resource", "status"
+    );
+
+    @Override
+    public void onEvent(final ApplicationEvent event) {
+        // Only requests are recorded.
+    }
+
+    @Override
+    public RequestEventListener onRequest(final RequestEvent event) {
+        final long startTime = System.nanoTime();
+        return requestEvent -> {
+            if (requestEvent.getType() != RequestEvent.Type.FINISHED) {
+                return;
+            }
+            final String status = requestEvent.getContainerResponse() != null
+                    ? Integer.toString(requestEvent.getContainerResponse().getStatus())
+                    : "error";
+            requestLatency.observeNanos(System.nanoTime() - startTime, resource(requestEvent), status);
+        };
+    }
+
+    /**
+     * Gets the name of the resource method of the given request, e.g., {@code CommitResource.getCommits}.
+     */
+    private static String resource(final RequestEvent event) {
+        final ResourceMethod matched = event.getUriInfo().getMatchedResourceMethod();
+        if (matched == null) {
+            return "unmatched";
+        }
+        final Method method = matched.getInvocable().getHandlingMethod();
+        return method.getDeclaringClass().getSimpleName() + '.' + method.getName();
+    }
+}
@@ -0,0 +1,279 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * The cached commits of a single branch, newest commit first.
+ * <p>
+ * Commits are kept on a {@link CommitStore}, on the {@link CommitGraph} shared by all branches of the repository.
+ * Readers get an immutable snapshot without locking, writers are chained
+ * one after the other by {@link #update(Supplier)} and publish a new snapshot once the update is fully applied, so a
+ * reader never sees a half-applied update. Each branch has its own chain, so updating a branch does not delay updates
+ * of any other branch, and no thread is blocked while an update waits for Github API. Refreshes scheduled by
+ * {@link #refresh(Supplier)} are coalesced, callers arriving while a refresh waits for its turn share it.
+ * <p>
+ * The cache also keeps when it was last refreshed and last used, so fresh branches are served without asking Github
+ * API, and only branches used recently are refreshed in background.
+ * <p>
+ * When a {@link CommitSegment} is given, every change is also persisted on it, and the cache starts with the commits
+ * persisted by a previous run.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class BranchCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BranchCache.class);
+
+    /**
+     * The completion of the last scheduled update, the next update starts after it.
+     */
+    private CompletableFuture<Void> updates = completedFuture(null);
+
+    /**
+     * The scheduled refresh that is not started yet, {@code null} if there is none.
+     */
+    private CompletableFuture<Void> pendingRefresh;
+
+    /**
+     * The start of the last successful refresh, see {@link System#nanoTime()}, {@code null} if never refreshed.
+     */
+    private volatile Long refreshedAt;
+
+    /**
+     * The last time the cache was used, see {@link System#nanoTime()}, {@code null} if never used.
+     */
+    private volatile Long usedAt;
+
+    /**
+     * The graph of the repository, where commits are stored.
+     */
+    private final CommitGraph graph;
+
+    /**
+     * The store of commits, replaced when the cache is cleared.
+     */
+    private volatile CommitStore store;
+
+    /**
+     * The segment where changes are persisted, {@code null} if the cache is only kept in memory.
+     */
+    private CommitSegment segment;
+
+    /**
+     * Creates a cache only kept in memory.
+     *
+     * @param graph The graph of the repository.
+     */
+    BranchCache(final CommitGraph graph) {
+        this.graph = graph;
+        this.store = new CommitStore(graph);
+    }
+
+    /**
+     * Creates a cache persisted on the given file, it starts with the commits already persisted there. If the file
+     * cannot be used, the cache is only kept in memory.
+     *
+     * @param graph The graph of the repository.
+     * @param file  The segment file of the branch.
+     */
+    BranchCache(final CommitGraph graph, final Path file) {
+        this(graph);
+        final CommitStore loaded = new CommitStore(graph);
+        try {
+            this.segment = CommitSegment.open(file, loaded);
+            this.store = loaded;
+            logger.debug("Loaded {} commits from {}.", loaded.size(), file);
+        } catch (final IOException e) {
+            logger.warn("Fail to load segment {}, the branch is only cached in memory.", file, e);
+        }
+    }
+
+    /**
+     * Gets the current snapshot of commits, the snapshot is never modified after being published.
+     *
+     * @return Immutable {@link List} of {@link CommitModel}, indexed by sha.
+     */
+    CommitStore.Snapshot snapshot() {
+        return this.store.snapshot();
+    }
+
+    /**
+     * Gets the aggregates of the cached commits.
+     *
+     * @return The {@link CommitStatsModel}.
+     */
+    CommitStatsModel stats() {
+        return this.store.stats.toModel();
+    }
+
+    /**
+     * Estimates the heap used by the cache, without the commits kept on its graph.
+     *
+     * @return The estimated number of bytes.
+     */
+    long estimatedBytes() {
+        return this.store.estimatedBytes();
+    }
+
+    int size() {
+        return snapshot().size();
+    }
+
+    CommitModel getFirst() {
+        return snapshot().get(0);
+    }
+
+    /**
+     * Marks the cache as used now.
+     */
+    void use() {
+        this.usedAt = System.nanoTime();
+    }
+
+    /**
+     * Checks whether the cache was used within the given time.
+     *
+     * @param nanos The time in nanoseconds.
+     * @return {@code true} if the cache was used within the given time, otherwise {@code false}.
+     */
+    boolean isUsedWithin(final long nanos) {
+        final Long used = this.usedAt;
+        return used != null && System.nanoTime() - used < nanos;
+    }
+
+    /**
+     * Checks whether the cache was successfully refreshed within the given time.
+     *
+     * @param nanos The time in nanoseconds.
+     * @return {@code true} if the cache is fresh, otherwise {@code false}.
+     */
+    boolean isFresh(final long nanos) {
+        final Long refreshed = this.refreshedAt;
+        return refreshed != null && System.nanoTime() - refreshed < nanos;
+    }
+
+    /**
+     * Schedules an update of this branch, it starts once all previously scheduled updates are completed, whether they
+     * succeed or not.
+     *
+     * @param update The supplier that starts the update.
+     * @param <T>    The result type of the update.
+     * @return The result of the update.
+     */
+    <T> CompletableFuture<T> update(final Supplier<CompletableFuture<T>> update) {
+        final CompletableFuture<Void> previous;
+        final CompletableFuture<Void> next = new CompletableFuture<>();
+        synchronized (this) {
+            previous = this.updates;
+            this.updates = next;
+        }
+        final CompletableFuture<T> result = previous.thenCompose(ignored -> update.get());
+        result.whenComplete((value, e) -> next.complete(null));
+        return result;
+    }
+
+    /**
+     * Schedules a refresh of this branch, unless a refresh is already scheduled and not started yet, in that case the
+     * scheduled one is shared, since it starts after this call anyway. The cache is fresh from the start of the
+     * refresh once it succeeds.
+     *
+     * @param refresh The supplier that starts the refresh.
+     * @return The completion of the refresh.
+     */
+    CompletableFuture<Void> refresh(final Supplier<CompletableFuture<Void>> refresh) {
+        final CompletableFuture<Void> pending = new CompletableFuture<>();
+        synchronized (this) {
+            if (this.pendingRefresh != null) {
+                return this.pendingRefresh;
+            }
+            this.pendingRefresh = pending;
+        }
+        update(() -> {
+            synchronized (this) {
+                this.pendingRefresh = null;
+            }
+            final long startedAt = System.nanoTime();
+            return refresh.get().thenRun(() -> this.refreshedAt = startedAt);
+        }).whenComplete((ignored, e) -> {
+            if (e != null) {
+                pending.completeExceptionally(e);
+                return;
+            }
+            pending.complete(null);
+        });
+        return pending;
+    }
+
+    /**
+     * Adds newer commits at the beginning of the cache. Must be called from an {@link #update(Supplier)}.
+     *
+     * @param newest The newer commits, newest first.
+     */
+    void prepend(final List<CommitModel> newest) {
+        this.store.prepend(newest);
+        persist(segment -> segment.prepend(newest));
+    }
+
+    /**
+     * Adds older commits at the end of the cache. Must be called from an {@link #update(Supplier)}.
+     *
+     * @param oldest The older commits, newest first.
+     */
+    void append(final List<CommitModel> oldest) {
+        this.store.append(oldest);
+        persist(segment -> segment.append(oldest));
+    }
+
+    /**
+     * Removes all commits. Must be called from an {@link #update(Supplier)}. The commits stay on the graph, see
+     * {@link CommitGraph}.
+     */
+    void clear() {
+        this.store = new CommitStore(this.graph);
+        persist(CommitSegment::reset);
+    }
+
+    /**
+     * Persists a change on the segment, if any. A failure stops persisting, the cache is kept in memory only, since
+     * the segment would miss the change.
+     */
+    private void persist(final SegmentChange change) {
+        if (this.segment == null) {
+            return;
+        }
+        try {
+            change.apply(this.segment);
+        } catch (final IOException e) {
+            logger.warn("Fail to persist branch cache, it is only cached in memory from now on.", e);
+            closeSegment();
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            this.segment.close();
+        } catch (final IOException e) {
+            logger.debug("Fail to close segment.", e);
+        }
+        this.segment = null;
+    }
+
+    /**
+     * A change persisted on a {@link CommitSegment}.
+     */
+    @FunctionalInterface
+    private interface SegmentChange {
+        void apply(CommitSegment segment) throws IOException;
+    }
+}
@@ -0,0 +1,52 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The upstream API that commits of a remote repository are fetched from, either Github REST API, see
+ * {@link RestCommitFetcher}, or Github GraphQL API, see {@link GraphQLCommitFetcher}. The repository itself is given
+ * when the fetcher is created.
+ * <p>
+ * Every method fetches at most {@link GitCommitAccess#MAX_PER_PAGE} commits, newest first, and the future completes
+ * exceptionally if the branch or commit does not exist.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+interface CommitFetcher {
+
+    /**
+     * Fetches the newest commits of the given branch. It is called on every refresh, so it should be cheap when
+     * the branch did not change.
+     *
+     * @param branch The branch name.
+     * @return {@link List} of {@link CommitModel}.
+     */
+    CompletableFuture<List<CommitModel>> fetchNewest(String branch);
+
+    /**
+     * Fetches the given page of the history of the given commit, which starts with the commit itself. The history of
+     * the head of a branch is listed like the branch, so pages of a head do not shift when commits are pushed. It is
+     * a background request, e.g., to sync new commits or to stream the history beyond the cache.
+     *
+     * @param sha     The commit sha.
+     * @param page    The page number, starting at 1.
+     * @param perPage The number of commits per page.
+     * @return {@link List} of {@link CommitModel}, it has less than {@code perPage} commits on last page.
+     */
+    CompletableFuture<List<CommitModel>> fetchHistory(String sha, int page, int perPage);
+
+    /**
+     * Fetches the given page of commits of the given branch.
+     *
+     * @param branch  The branch name.
+     * @param head    The sha of the newest cached commit of the branch, the page is counted from it when the upstream
+     *                API allows it, or {@code null} if the branch is not cached yet.
+     * @param page    The page number, starting at 1.
+     * @param perPage The number of commits per page.
+     * @return {@link List} of {@link CommitModel}, it has less than {@code perPage} commits on last page.
+     */
+    CompletableFuture<List<CommitModel>> fetchPage(String branch, String head, int page, int perPage);
+}
@@ -0,0 +1,579 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed storage of the commits of a repository, shared by the caches of all its branches.
+ * <p>
+ * Each commit is stored once under an id, however many branches have it, and branches only keep ids, see
+ * {@link CommitStore}, so memory scales with the unique history of the repository. Commits are kept in fixed size
+ * columnar chunks: the sha as 20 binary bytes, the date as epoch milliseconds, the author as an id of a dictionary,
+ * the message as a {@link String} and the parents as ids. A value that does not round trip through its compact form,
+ * e.g., a sha that is not 40 lowercase hexadecimal characters, is kept as is. A parent that is not stored yet gets an
+ * id with only its sha, which is filled once the commit itself is stored.
+ * <p>
+ * Commits are also indexed by sha on an open addressing table of primitive arrays, keyed by a 64-bit hash of the
+ * binary sha, so the id of a sha is found in O(1), see {@link #idOf(String)}, and by message terms, author and day
+ * once their fields are stored, see {@link CommitIndex}.
+ * <p>
+ * Writes are synchronized, since branches of a repository are updated concurrently. An id is never reassigned and a
+ * stored commit is never modified, so reads do not lock: ids are read from a published branch snapshot, which is
+ * published after its commits are stored.
+ * <p>
+ * Hence commits are never freed either: memory is bounded by the unique commits seen since the project was started,
+ * not by the commits the branches have now. A cleared branch cache, see {@link BranchCache#clear()}, gets the same
+ * ids back for the commits it fetches again, so only the commits that no branch has anymore add up, i.e., the commits
+ * of a rewritten history or of a deleted branch, and the stubs of their parents. They are freed when the project is
+ * restarted.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitGraph {
+
+    /**
+     * The number of bits used to address a commit within a chunk.
+     */
+    private static final int CHUNK_BITS = 10;
+
+    /**
+     * The number of commits per chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The number of bytes of a binary sha.
+     */
+    private static final int SHA_BYTES = 20;
+
+    /**
+     * Flag of a slot whose sha is kept as is.
+     */
+    private static final byte RAW_SHA = 1;
+
+    /**
+     * Flag of a slot whose date is kept as is.
+     */
+    private static final byte RAW_DATE = 2;
+
+    /**
+     * Flag of a slot that only has a sha, i.e., a parent of a stored commit that is not stored yet.
+     */
+    private static final byte STUB = 4;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The initial capacity of the sha index, always a power of two.
+     */
+    private static final int INDEX_CAPACITY = 64;
+
+    /**
+     * The key of an empty entry of the sha index.
+     */
+    private static final long EMPTY_KEY = 0;
+
+    /**
+     * The chunks of commits by id, only the directory is replaced when a chunk is added.
+     */
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * The number of ids, only used by writers.
+     */
+    private int size;
+
+    /**
+     * The author names by id, an id is never reassigned.
+     */
+    private volatile String[] authors = new String[16];
+
+    /**
+     * The ids of author names, only used by writers.
+     */
+    private final Map<String, Integer> authorIds = new HashMap<>();
+
+    /**
+     * The sha index, replaced by a twice larger one when it is four fifths full.
+     */
+    private volatile Index index = new Index(INDEX_CAPACITY);
+
+    /**
+     * The number of entries of the sha index, only used by writers.
+     */
+    private int indexed;
+
+    /**
+     * The search indexes, written by writers of the graph.
+     */
+    final CommitIndex search = new CommitIndex(this);
+
+    /**
+     * Stores the given commit, unless a commit with the same sha and fields is already stored. The parents of the
+     * commit are kept if they are known, see {@link CommitModel#getParents()}.
+     *
+     * @param commit The commit.
+     * @return The id of the commit.
+     */
+    synchronized int add(final CommitModel commit) {
+        final int existing = idOf(commit.getSha());
+        if (existing >= 0 && isStub(existing)) {
+            fill(existing, commit);
+            return existing;
+        }
+        if (existing >= 0 && read(existing).equals(commit)) {
+            final Chunk chunk = chunk(existing);
+            if (chunk.parents[existing & CHUNK_MASK] == null && commit.getParents() != null) {
+                chunk.parents[existing & CHUNK_MASK] = parentIds(commit.getParents());
+            }
+            return existing;
+        }
+
+        final int id = newId();
+        writeSha(id, commit.getSha());
+        if (existing < 0) {
+            // A sha kept as is might not be unique, only the first commit with it is found by sha.
+            index(commit.getSha(), id);
+        }
+        fill(id, commit);
+        return id;
+    }
+
+    /**
+     * Gets the commit of the given id.
+     *
+     * @param id The id of a stored commit.
+     * @return The {@link CommitModel} view of the commit, without its parents.
+     */
+    CommitModel read(final int id) {
+        return chunk(id).read(id & CHUNK_MASK, this.authors);
+    }
+
+    /**
+     * Gets the sha of the given id.
+     *
+     * @param id The id.
+     * @return The sha.
+     */
+    String sha(final int id) {
+        return chunk(id).sha(id & CHUNK_MASK);
+    }
+
+    /**
+     * Gets the parents of the given id.
+     *
+     * @param id The id of a stored commit.
+     * @return The ids of the parents, or {@code null} if they are unknown, e.g., the commit was loaded from a
+     * {@link CommitSegment}.
+     */
+    synchronized int[] parents(final int id) {
+        return chunk(id).parents[id & CHUNK_MASK];
+    }
+
+    /**
+     * Gets the id of the given sha in O(1). Entries being written are skipped, since their id is either out of the
+     * chunks read or does not have the given sha yet.
+     *
+     * @param sha The commit sha.
+     * @return The id, or {@code -1} if no commit has the given sha.
+     */
+    int idOf(final String sha) {
+        if (sha == null) {
+            return -1;
+        }
+        final Index index = this.index;
+        final Chunk[] chunks = this.chunks;
+        final long key = key(sha);
+        final int mask = index.keys.length - 1;
+        for (int i = hash(key) & mask; index.keys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+            if (index.keys[i] != key) {
+                continue;
+            }
+            final int id = index.ids[i];
+            if (id >> CHUNK_BITS < chunks.length && sha.equals(chunks[id >> CHUNK_BITS].sha(id & CHUNK_MASK))) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the positions of the given commits whose following commits are exactly their history, i.e., every parent
+     * of the commits before such a position is either one of them or the commit at that position. The commits from
+     * such a position are then the same as the commits of any other branch from that commit, when it is also such a
+     * position there. The scan stops at the first commit whose parents are unknown.
+     *
+     * @param commits The commits of a branch, newest first.
+     * @param until   The number of commits to scan.
+     * @return The positions, in order.
+     */
+    List<Integer> historyPositions(final CommitStore.Snapshot commits, final int until) {
+        final List<Integer> positions = new ArrayList<>();
+        final Set<Integer> pending = new HashSet<>();
+        for (int i = 0; i < Math.min(until, commits.size()); i++) {
+            final int id = commits.id(i);
+            if (pending.isEmpty() ? i == 0 : pending.size() == 1 && pending.contains(id)) {
+                positions.add(i);
+            }
+            pending.remove(id);
+            final int[] parents = parents(id);
+            if (parents == null) {
+                break;
+            }
+            for (final int parent : parents) {
+                pending.add(parent);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Checks whether the commits from the given position are exactly the history of the commit at that position, see
+     * {@link #historyPositions(CommitStore.Snapshot, int)}.
+     *
+     * @param commits  The commits of a branch, newest first.
+     * @param position The position.
+     * @return {@code true} if it is a history position, otherwise {@code false}.
+     */
+    boolean isHistoryPosition(final CommitStore.Snapshot commits, final int position) {
+        final List<Integer> positions = historyPositions(commits, position + 1);
+        return !positions.isEmpty() && positions.get(positions.size() - 1) == position;
+    }
+
+    /**
+     * Estimates the heap used by the graph, assuming compressed references and compact Latin-1 strings.
+     *
+     * @return The estimated number of bytes.
+     */
+    synchronized long estimatedBytes() {
+        long bytes = 0;
+        for (final Chunk chunk : this.chunks) {
+            bytes += chunk.estimatedBytes();
+        }
+        bytes += array(this.authors.length, Integer.BYTES);
+        for (final String author : this.authors) {
+            bytes += string(author);
+        }
+        bytes += array(this.index.keys.length, Long.BYTES) + array(this.index.ids.length, Integer.BYTES);
+        return bytes;
+    }
+
+    private boolean isStub(final int id) {
+        return chunk(id).isFlagged(id & CHUNK_MASK, STUB);
+    }
+
+    private Chunk chunk(final int id) {
+        return this.chunks[id >> CHUNK_BITS];
+    }
+
+    private int newId() {
+        final int id = this.size;
+        if (id >> CHUNK_BITS == this.chunks.length) {
+            final Chunk[] grown = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+            grown[this.chunks.length] = new Chunk();
+            this.chunks = grown;
+        }
+        this.size++;
+        return id;
+    }
+
+    /**
+     * Gets the ids of the given parents, a new id is assigned to a parent that is not stored yet.
+     */
+    private int[] parentIds(final List<String> parents) {
+        final int[] ids = new int[parents.size()];
+        for (int i = 0; i < ids.length; i++) {
+            int id = idOf(parents.get(i));
+            if (id < 0) {
+                id = newId();
+                writeSha(id, parents.get(i));
+                chunk(id).flag(id & CHUNK_MASK, STUB);
+                index(parents.get(i), id);
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private void writeSha(final int id, final String sha) {
+        final Chunk chunk = chunk(id);
+        final int slot = id & CHUNK_MASK;
+        if (!encodeSha(sha, chunk.shas, slot * SHA_BYTES)) {
+            chunk.raw(slot, RAW_SHA)[slot * 2] = sha;
+        }
+    }
+
+    /**
+     * Writes the fields of the given commit on the slot of the given id, its sha is already written.
+     */
+    private void fill(final int id, final CommitModel commit) {
+        final Chunk chunk = chunk(id);
+        final int slot = id & CHUNK_MASK;
+        final long date = encodeDate(commit.getDate());
+        if (date == Long.MIN_VALUE) {
+            chunk.raw(slot, RAW_DATE)[slot * 2 + 1] = commit.getDate();
+        } else {
+            chunk.dates[slot] = date;
+        }
+        chunk.authors[slot] = authorId(commit.getAuthor());
+        chunk.messages[slot] = commit.getMessage();
+        if (commit.getParents() != null) {
+            chunk.parents[slot] = parentIds(commit.getParents());
+        }
+        chunk.unflag(slot, STUB);
+        this.search.add(id, commit, date);
+    }
+
+    /**
+     * Gets the id of the given author, a new id is assigned to an unknown author.
+     */
+    private int authorId(final String author) {
+        if (author == null) {
+            return -1;
+        }
+        final Integer id = this.authorIds.get(author);
+        if (id != null) {
+            return id;
+        }
+        final int newId = this.authorIds.size();
+        String[] authors = this.authors;
+        if (newId == authors.length) {
+            // Readers of the previous array never read this id.
+            authors = Arrays.copyOf(authors, newId * 2);
+        }
+        authors[newId] = author;
+        this.authors = authors;
+        this.authorIds.put(author, newId);
+        return newId;
+    }
+
+    /**
+     * Adds the given sha to the index. The table is replaced by a twice larger one rather than rehashed in place,
+     * since readers keep reading the previous one.
+     */
+    private void index(final String sha, final int id) {
+        if (sha == null) {
+            return;
+        }
+        Index index = this.index;
+        if ((this.indexed + 1) * 5L > index.keys.length * 4L) {
+            final Index grown = new Index(index.keys.length * 2);
+            for (int i = 0; i < index.keys.length; i++) {
+                if (index.keys[i] != EMPTY_KEY) {
+                    grown.put(index.keys[i], index.ids[i]);
+                }
+            }
+            index = grown;
+        }
+        index.put(key(sha), id);
+        this.index = index;
+        this.indexed++;
+    }
+
+    /**
+     * Gets the key of the given sha on the index, i.e., a hash of the binary sha, or of the sha kept as is. It is
+     * never {@link #EMPTY_KEY}.
+     */
+    private static long key(final String sha) {
+        final byte[] binary = new byte[SHA_BYTES];
+        long key = 0;
+        if (encodeSha(sha, binary, 0)) {
+            for (final byte value : binary) {
+                key = key * 31 + (value & 0xff);
+            }
+        } else {
+            key = sha.hashCode();
+        }
+        return key == EMPTY_KEY ? 1 : key;
+    }
+
+    /**
+     * Spreads the given key, so keys of close shas are not probed one after the other.
+     */
+    private static int hash(final long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /**
+     * Encodes a sha of 40 lowercase hexadecimal characters as 20 bytes.
+     *
+     * @return {@code false} if the sha does not round trip through the binary form.
+     */
+    private static boolean encodeSha(final String sha, final byte[] shas, final int offset) {
+        if (sha == null || sha.length() != SHA_BYTES * 2) {
+            return false;
+        }
+        for (int i = 0; i < SHA_BYTES; i++) {
+            final int high = Character.digit(sha.charAt(i * 2), 16);
+            final int low = Character.digit(sha.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0 || Character.isUpperCase(sha.charAt(i * 2))
+                    || Character.isUpperCase(sha.charAt(i * 2 + 1))) {
+                return false;
+            }
+            shas[offset + i] = (byte) (high << 4 | low);
+        }
+        return true;
+    }
+
+    private static String decodeSha(final byte[] shas, final int offset) {
+        final char[] sha = new char[SHA_BYTES * 2];
+        for (int i = 0; i < SHA_BYTES; i++) {
+            final int value = shas[offset + i] & 0xff;
+            sha[i * 2] = HEX[value >>> 4];
+            sha[i * 2 + 1] = HEX[value & 0xf];
+        }
+        return new String(sha);
+    }
+
+    /**
+     * Encodes an ISO-8601 instant, e.g., {@code 2011-04-14T16:00:49Z}, as epoch milliseconds.
+     *
+     * @return The epoch milliseconds, or {@link Long#MIN_VALUE} if the date does not round trip through them.
+     */
+    private static long encodeDate(final String date) {
+        if (date == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            final long millis = Instant.parse(date).toEpochMilli();
+            return Instant.ofEpochMilli(millis).toString().equals(date) ? millis : Long.MIN_VALUE;
+        } catch (final DateTimeParseException | ArithmeticException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    static long array(final int length, final int elementBytes) {
+        return align(16 + (long) length * elementBytes);
+    }
+
+    private static long string(final String value) {
+        return value == null ? 0 : 24 + array(value.length(), 1);
+    }
+
+    private static long align(final long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * The open addressing table of the sha index.
+     */
+    private static final class Index {
+        private final long[] keys;
+        private final int[] ids;
+
+        private Index(final int capacity) {
+            this.keys = new long[capacity];
+            this.ids = new int[capacity];
+        }
+
+        private void put(final long key, final int id) {
+            final int mask = this.keys.length - 1;
+            int i = hash(key) & mask;
+            while (this.keys[i] != EMPTY_KEY) {
+                i = (i + 1) & mask;
+            }
+            // The id is written first, a reader seeing the key with an older id only fails the sha check.
+            this.ids[i] = id;
+            this.keys[i] = key;
+        }
+    }
+
+    /**
+     * The columns of {@link #CHUNK_SIZE} commits.
+     */
+    private static final class Chunk {
+        private final byte[] shas = new byte[CHUNK_SIZE * SHA_BYTES];
+        private final long[] dates = new long[CHUNK_SIZE];
+        private final int[] authors = new int[CHUNK_SIZE];
+        private final String[] messages = new String[CHUNK_SIZE];
+        private final int[][] parents = new int[CHUNK_SIZE][];
+
+        /**
+         * The {@link #RAW_SHA}, {@link #RAW_DATE} and {@link #STUB} flags of each slot, allocated on first flag.
+         */
+        private byte[] flags;
+
+        /**
+         * The raw sha and date of each slot, interleaved, allocated on first raw value.
+         */
+        private String[] raw;
+
+        private void flag(final int slot, final byte flag) {
+            if (this.flags == null) {
+                this.flags = new byte[CHUNK_SIZE];
+            }
+            this.flags[slot] |= flag;
+        }
+
+        private void unflag(final int slot, final byte flag) {
+            if (this.flags != null) {
+                this.flags[slot] &= ~flag;
+            }
+        }
+
+        /**
+         * Flags the given slot and gets the raw values.
+         */
+        private String[] raw(final int slot, final byte flag) {
+            if (this.raw == null) {
+                this.raw = new String[CHUNK_SIZE * 2];
+            }
+            flag(slot, flag);
+            return this.raw;
+        }
+
+        private boolean isFlagged(final int slot, final byte flag) {
+            final byte[] flags = this.flags;
+            return flags != null && (flags[slot] & flag) != 0;
+        }
+
+        private String sha(final int slot) {
+            return isFlagged(slot, RAW_SHA) ? this.raw[slot * 2] : decodeSha(this.shas, slot * SHA_BYTES);
+        }
+
+        private CommitModel read(final int slot, final String[] authorNames) {
+            final int author = this.authors[slot];
+            return new CommitModel.Builder()
+                    .sha(sha(slot))
+                    .date(isFlagged(slot, RAW_DATE)
+                            ? this.raw[slot * 2 + 1]
+                            : Instant.ofEpochMilli(this.dates[slot]).toString())
+                    .author(author < 0 ? null : authorNames[author])
+                    .message(this.messages[slot])
+                    .build();
+        }
+
+        private long estimatedBytes() {
+            long bytes = 16 + array(this.shas.length, 1) + array(this.dates.length, Long.BYTES)
+                    + array(this.authors.length, Integer.BYTES) + array(this.messages.length, Integer.BYTES)
+                    + array(this.parents.length, Integer.BYTES);
+            for (final String message : this.messages) {
+                bytes += string(message);
+            }
+            for (final int[] ids : this.parents) {
+                bytes += ids == null ? 0 : array(ids.length, Integer.BYTES);
+            }
+            if (this.flags != null) {
+                bytes += array(this.flags.length, 1);
+            }
+            if (this.raw != null) {
+                bytes += array(this.raw.length, Integer.BYTES);
+                for (final String value : this.raw) {
+                    bytes += string(value);
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search indexes of the commits of a {@link CommitGraph}, kept in sync by the graph as commits are stored, so every
+ * commit is indexed once whatever the number of branches that have it. Commits are indexed by id on posting lists:
+ * <ul>
+ *     <li>an inverted index of the terms of messages, see {@link CommitQuery#terms(String)},</li>
+ *     <li>the commits of each author, ignoring case,</li>
+ *     <li>the commits of each day, sorted by day, so a date range only reads the days within it.</li>
+ * </ul>
+ * A search only enumerates the shortest posting list of its criteria, each candidate is then checked against the
+ * whole query and against the branch, see {@link #search(CommitQuery, CommitStore.Snapshot, int)}.
+ * <p>
+ * Posting lists are appended by the writer of the graph and read without locking, see {@link Postings}. Like the
+ * commits of the graph, postings are never removed, so the indexes grow with the unique commits seen rather than with
+ * the commits the branches have now, and a candidate that no branch has anymore is skipped by the branch check.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitIndex {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final CommitGraph graph;
+
+    private final ConcurrentMap<String, Postings> terms = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Postings> authors = new ConcurrentHashMap<>();
+
+    /**
+     * The commits by epoch day.
+     */
+    private final ConcurrentSkipListMap<Long, Postings> days = new ConcurrentSkipListMap<>();
+
+    CommitIndex(final CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Indexes the given commit. Must be called by the writer of the graph, once the fields of the commit are stored.
+     *
+     * @param id     The id of the commit.
+     * @param commit The commit.
+     * @param date   The date of the commit in epoch milliseconds, or {@link Long#MIN_VALUE} if it is not ISO-8601.
+     */
+    void add(final int id, final CommitModel commit, final long date) {
+        if (commit.getMessage() != null) {
+            for (final String term : CommitQuery.terms(commit.getMessage())) {
+                this.terms.computeIfAbsent(term, key -> new Postings()).add(id);
+            }
+        }
+        if (commit.getAuthor() != null) {
+            this.authors.computeIfAbsent(commit.getAuthor().toLowerCase(Locale.ROOT), key -> new Postings()).add(id);
+        }
+        if (date != Long.MIN_VALUE) {
+            this.days.computeIfAbsent(Math.floorDiv(date, DAY_MILLIS), key -> new Postings()).add(id);
+        }
+    }
+
+    /**
+     * Searches the commits of the given branch that match the given query.
+     *
+     * @param query   The query.
+     * @param commits The commits of the branch, newest first.
+     * @param size    The maximum number of commits.
+     * @return The positions of the newest matching commits on the branch, in order.
+     */
+    int[] search(final CommitQuery query, final CommitStore.Snapshot commits, final int size) {
+        if (query.isEmpty()) {
+            final int[] positions = new int[Math.min(size, commits.size())];
+            Arrays.setAll(positions, i -> i);
+            return positions;
+        }
+
+        final List<Postings> candidates = candidates(query);
+        if (candidates == null) {
+            return new int[0];
+        }
+        final List<Integer> positions = new ArrayList<>();
+        for (final Postings postings : candidates) {
+            // The size is read first, the ids read after it are all written.
+            final int length = postings.size;
+            final int[] ids = postings.ids;
+            for (int i = 0; i < length; i++) {
+                final int position = commits.positionOf(ids[i]);
+                if (position >= 0 && query.matches(this.graph.read(ids[i]))) {
+                    positions.add(position);
+                }
+            }
+        }
+        return positions.stream().mapToInt(Integer::intValue).sorted().limit(size).toArray();
+    }
+
+    /**
+     * Gets the shortest posting lists that have every commit matching the given query.
+     *
+     * @return {@link List} of disjoint {@link Postings}, or {@code null} if no commit matches.
+     */
+    private List<Postings> candidates(final CommitQuery query) {
+        List<Postings> shortest = null;
+        long shortestSize = Long.MAX_VALUE;
+        if (query.getAuthor() != null) {
+            final Postings postings = this.authors.get(query.getAuthor());
+            if (postings == null) {
+                return null;
+            }
+            shortest = List.of(postings);
+            shortestSize = postings.size;
+        }
+        for (final String term : query.getTerms()) {
+            final Postings postings = this.terms.get(term);
+            if (postings == null) {
+                return null;
+            }
+            if (postings.size < shortestSize) {
+                shortest = List.of(postings);
+                shortestSize = postings.size;
+            }
+        }
+        if (query.getSince() != null || query.getUntil() != null) {
+            final NavigableMap<Long, Postings> range = days(query.getSince(), query.getUntil());
+            long rangeSize = 0;
+            for (final Postings postings : range.values()) {
+                rangeSize += postings.size;
+            }
+            if (rangeSize < shortestSize) {
+                shortest = new ArrayList<>(range.values());
+            }
+        }
+        return shortest;
+    }
+
+    private NavigableMap<Long, Postings> days(final Instant since, final Instant until) {
+        if (since != null && until != null && since.isAfter(until)) {
+            return new ConcurrentSkipListMap<>();
+        }
+        if (since == null) {
+            return this.days.headMap(day(until), true);
+        }
+        if (until == null) {
+            return this.days.tailMap(day(since), true);
+        }
+        return this.days.subMap(day(since), true, day(until), true);
+    }
+
+    private static long day(final Instant date) {
+        return Math.floorDiv(date.toEpochMilli(), DAY_MILLIS);
+    }
+
+    /**
+     * Estimates the heap used by the posting lists, not counting the terms.
+     *
+     * @return The estimated number of bytes.
+     */
+    long estimatedBytes() {
+        long bytes = 0;
+        for (final Map<?, Postings> index : List.of(this.terms, this.authors, this.days)) {
+            for (final Postings postings : index.values()) {
+                bytes += CommitGraph.array(postings.ids.length, Integer.BYTES);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * A posting list, i.e., ids in the order they are indexed. There is a single writer, and an id is written before
+     * the size is published, so readers read the size before the ids.
+     */
+    private static final class Postings {
+
+        private volatile int[] ids = new int[4];
+
+        private volatile int size;
+
+        private void add(final int id) {
+            int[] ids = this.ids;
+            if (this.size == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                this.ids = ids;
+            }
+            ids[this.size] = id;
+            this.size++;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package commit.viewer.git;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import commit.viewer.model.CommitModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of Github API message bodies.
+ * <p>
+ * Commits are pulled straight from the response stream: only {@code sha}, {@code parents[].sha},
+ * {@code commit.message} and {@code commit.committer.{name,date}} are read, everything else of the payload (author and committer objects, tree,
+ * verification, URLs, ...) is skipped by the tokenizer without being materialized.
+ * <p>
+ * GraphQL responses are pulled the same way, see {@link #parseHistory(InputStream)}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitParser {
+
+    /**
+     * The value of a field missing on the payload.
+     */
+    private static final String NOT_AVAILABLE = "n/a";
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private static final ObjectMapper mapper = new ObjectMapper(factory);
+
+    private CommitParser() {
+    }
+
+    /**
+     * Parses the given message body as {@link List} of {@link CommitModel}.
+     *
+     * @param body The message body, it is closed once parsed.
+     * @return {@link List} of {@link CommitModel}.
+     * @throws UncheckedIOException If message body is not a JSON array of commits.
+     */
+    static List<CommitModel> parseCommits(final InputStream body) {
+        try (final JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("The message body is not a JSON array of commits.");
+            }
+
+            final List<CommitModel> commits = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                commits.add(parseCommit(parser));
+            }
+            return commits;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the given GraphQL message body as {@link List} of {@link CommitModel}, i.e., the {@code nodes} of the
+     * first {@code history} connection of the response. Dates are normalized to UTC like REST API ones, since GraphQL
+     * API keeps the time zone of the committer.
+     *
+     * @param body The message body, it is closed once parsed.
+     * @return {@link List} of {@link CommitModel}.
+     * @throws UncheckedIOException If message body has errors or no commit history.
+     */
+    static List<CommitModel> parseHistory(final InputStream body) {
+        try (final JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("The message body is not a JSON object.");
+            }
+            final List<CommitModel> commits = findHistory(parser);
+            if (commits == null) {
+                throw new IOException("The message body has no commit history.");
+            }
+            return commits;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Finds the {@code history} connection within the object the parser is on, and parses its {@code nodes}.
+     *
+     * @return {@link List} of {@link CommitModel}, or {@code null} if there is no history within the object.
+     * @throws IOException If the object has GraphQL {@code errors}.
+     */
+    private static List<CommitModel> findHistory(final JsonParser parser) throws IOException {
+        List<CommitModel> commits = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("errors".equals(field) && value == JsonToken.START_ARRAY) {
+                throw new IOException("GraphQL errors: " + mapper.readTree(parser));
+            } else if (commits == null && "history".equals(field) && value == JsonToken.START_OBJECT) {
+                commits = parseNodes(parser);
+            } else if (commits == null && value == JsonToken.START_OBJECT) {
+                commits = findHistory(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Parses the {@code nodes} of a {@code history} connection, the parser is on the start of the connection.
+     */
+    private static List<CommitModel> parseNodes(final JsonParser parser) throws IOException {
+        final List<CommitModel> commits = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("nodes".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    commits.add(parseNode(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Parses a commit node, the parser is on its start.
+     */
+    private static CommitModel parseNode(final JsonParser parser) throws IOException {
+        final CommitModel.Builder builder = new CommitModel.Builder()
+                .sha(NOT_AVAILABLE)
+                .message(NOT_AVAILABLE)
+                .author(NOT_AVAILABLE)
+                .date(NOT_AVAILABLE);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("oid".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.sha(parser.getText());
+            } else if ("message".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.message(parser.getText());
+            } else if ("committer".equals(field) && value == JsonToken.START_OBJECT) {
+                parseCommitter(parser, builder);
+            } else if ("parents".equals(field) && value == JsonToken.START_OBJECT) {
+                builder.parents(parseParentNodes(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses the {@code parents} connection, the parser is on its start.
+     */
+    private static List<String> parseParentNodes(final JsonParser parser) throws IOException {
+        final List<String> parents = new ArrayList<>(2);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("nodes".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String parentField = parser.getCurrentName();
+                        final JsonToken parentValue = parser.nextToken();
+                        if ("oid".equals(parentField) && parentValue == JsonToken.VALUE_STRING) {
+                            parents.add(parser.getText());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Parses the given message body as a JSON object.
+     *
+     * @param body The message body, it is closed once parsed.
+     * @return The {@link JsonNode} of the object.
+     * @throws UncheckedIOException If message body is not a JSON object.
+     */
+    static JsonNode parseObject(final InputStream body) {
+        try (final InputStream input = body) {
+            final JsonNode node = mapper.readTree(input);
+            if (node == null || !node.isObject()) {
+                throw new IOException("The message body is not a JSON object.");
+            }
+            return node;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a commit, the parser is on the start of the commit object.
+     */
+    private static CommitModel parseCommit(final JsonParser parser) throws IOException {
+        final CommitModel.Builder builder = new CommitModel.Builder()
+                .sha(NOT_AVAILABLE)
+                .message(NOT_AVAILABLE)
+                .author(NOT_AVAILABLE)
+                .date(NOT_AVAILABLE);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("sha".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.sha(parser.getText());
+            } else if ("commit".equals(field) && value == JsonToken.START_OBJECT) {
+                parseCommitDetails(parser, builder);
+            } else if ("parents".equals(field) && value == JsonToken.START_ARRAY) {
+                builder.parents(parseParents(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses the {@code parents} array, the parser is on its start.
+     */
+    private static List<String> parseParents(final JsonParser parser) throws IOException {
+        final List<String> parents = new ArrayList<>(2);
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("sha".equals(field) && value == JsonToken.VALUE_STRING) {
+                    parents.add(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Parses the {@code commit} object, the parser is on its start.
+     */
+    private static void parseCommitDetails(final JsonParser parser, final CommitModel.Builder builder)
+            throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("message".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.message(parser.getText());
+            } else if ("committer".equals(field) && value == JsonToken.START_OBJECT) {
+                parseCommitter(parser, builder);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code commit.committer} object, the parser is on its start.
+     */
+    private static void parseCommitter(final JsonParser parser, final CommitModel.Builder builder)
+            throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if ("name".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.author(parser.getText());
+            } else if ("date".equals(field) && value == JsonToken.VALUE_STRING) {
+                builder.date(normalizeDate(parser.getText()));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Normalizes the given date to UTC, e.g., {@code 2020-09-13T16:23:20+02:00} is {@code 2020-09-13T14:23:20Z}. A
+     * date already in UTC is kept as is.
+     */
+    private static String normalizeDate(final String date) {
+        if (date.endsWith("Z")) {
+            return date;
+        }
+        try {
+            return OffsetDateTime.parse(date).toInstant().toString();
+        } catch (final DateTimeParseException e) {
+            return date;
+        }
+    }
+}
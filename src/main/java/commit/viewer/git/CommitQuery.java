@@ -0,0 +1,172 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A search of commits, every given criterion must match. The query uses builder pattern.
+ * <p>
+ * Messages are matched by terms, i.e., lowercase sequences of letters and digits, see {@link #terms(String)}, so
+ * {@code q=Fix cache} matches a message with both {@code fix} and {@code cache} in any order. Authors are matched
+ * ignoring case, and dates are matched inclusively.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public final class CommitQuery {
+
+    private final String author;
+    private final Set<String> terms;
+    private final Instant since;
+    private final Instant until;
+
+    private CommitQuery(final Builder builder) {
+        this.author = builder.author == null ? null : builder.author.toLowerCase(Locale.ROOT);
+        this.terms = builder.terms;
+        this.since = builder.since;
+        this.until = builder.until;
+    }
+
+    /**
+     * Gets the author, in lowercase.
+     *
+     * @return The author, or {@code null} if any author matches.
+     */
+    String getAuthor() {
+        return this.author;
+    }
+
+    /**
+     * Gets the terms the message must have.
+     *
+     * @return {@link Set} of terms, empty if any message matches.
+     */
+    Set<String> getTerms() {
+        return this.terms;
+    }
+
+    /**
+     * Gets the oldest date.
+     *
+     * @return The date, or {@code null} if there is no lower bound.
+     */
+    Instant getSince() {
+        return this.since;
+    }
+
+    /**
+     * Gets the newest date.
+     *
+     * @return The date, or {@code null} if there is no upper bound.
+     */
+    Instant getUntil() {
+        return this.until;
+    }
+
+    /**
+     * Checks whether the query has no criterion, i.e., every commit matches.
+     *
+     * @return {@code true} if every commit matches.
+     */
+    boolean isEmpty() {
+        return this.author == null && this.terms.isEmpty() && this.since == null && this.until == null;
+    }
+
+    /**
+     * Checks whether the given commit matches the query.
+     *
+     * @param commit The commit.
+     * @return {@code true} if the commit matches every criterion.
+     */
+    boolean matches(final CommitModel commit) {
+        if (this.author != null
+                && (commit.getAuthor() == null || !this.author.equals(commit.getAuthor().toLowerCase(Locale.ROOT)))) {
+            return false;
+        }
+        if (!this.terms.isEmpty() && (commit.getMessage() == null
+                || !terms(commit.getMessage()).containsAll(this.terms))) {
+            return false;
+        }
+        if (this.since != null || this.until != null) {
+            final Instant date = parseDate(commit.getDate());
+            if (date == null || (this.since != null && date.isBefore(this.since))
+                    || (this.until != null && date.isAfter(this.until))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits the given text into terms, i.e., lowercase sequences of letters and digits.
+     *
+     * @param text The text.
+     * @return Ordered {@link Set} of terms.
+     */
+    static Set<String> terms(final String text) {
+        final Set<String> terms = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean termCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termCharacter && start < 0) {
+                start = i;
+            } else if (!termCharacter && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Parses the given ISO-8601 date, e.g., {@code 2020-09-13T12:26:40Z}.
+     *
+     * @param date The date.
+     * @return The {@link Instant}, or {@code null} if the date is not ISO-8601.
+     */
+    static Instant parseDate(final String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(date);
+        } catch (final DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public static class Builder {
+        private String author;
+        private Set<String> terms = Set.of();
+        private Instant since;
+        private Instant until;
+
+        public Builder() {
+
+        }
+
+        public Builder author(final String val) {
+            author = val;
+            return this;
+        }
+        public Builder text(final String val) {
+            terms = val == null ? Set.of() : terms(val);
+            return this;
+        }
+        public Builder since(final Instant val) {
+            since = val;
+            return this;
+        }
+        public Builder until(final Instant val) {
+            until = val;
+            return this;
+        }
+        public CommitQuery build() {
+            return new CommitQuery(this);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only file that persists the commits of a branch, so the cache survives restarts.
+ * <p>
+ * Each change of the branch cache is appended as records: a commit record has the position of the commit and its
+ * fields, positions follow {@link CommitStore}, i.e., prepended commits get decreasing negative positions and appended
+ * commits get increasing positions from zero. Each field is written as its length and its UTF-8 bytes, a
+ * {@code null} field as the length {@code -1}, so a loaded commit is the same as the fetched one. A reset record drops
+ * every commit written before it.
+ * <p>
+ * The file is only read when loading: it is memory-mapped, a position index of the live records is built in a single
+ * scan and commits are decoded in order straight from the mapped region. A torn record at the end of the file, e.g.,
+ * left by a crash, is truncated, and records dropped by a reset are compacted away.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitSegment implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitSegment.class);
+
+    /**
+     * The file name extension of segments.
+     */
+    static final String EXTENSION = ".seg";
+
+    private static final byte COMMIT = 1;
+
+    private static final byte RESET = 2;
+
+    /**
+     * The length of a {@code null} field.
+     */
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * The file of the segment.
+     */
+    private final Path file;
+
+    /**
+     * The channel used to append records, opened once the segment is loaded.
+     */
+    private FileChannel channel;
+
+    /**
+     * The number of prepended commits since the last reset.
+     */
+    private int frontSize;
+
+    /**
+     * The number of appended commits since the last reset.
+     */
+    private int backSize;
+
+    private CommitSegment(final Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the segment of the given file and loads its commits.
+     *
+     * @param file  The file of the segment, it is created if it does not exist.
+     * @param store The empty store where the persisted commits are loaded.
+     * @return The opened segment.
+     * @throws IOException If the file cannot be read or written.
+     */
+    static CommitSegment open(final Path file, final CommitStore store) throws IOException {
+        Files.createDirectories(file.getParent());
+        final CommitSegment segment = new CommitSegment(file);
+        segment.load(store);
+        segment.channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+        return segment;
+    }
+
+    /**
+     * Persists newer commits, see {@link CommitStore#prepend(List)}.
+     *
+     * @param newest The newer commits, newest first.
+     * @throws IOException If the file cannot be written.
+     */
+    void prepend(final List<CommitModel> newest) throws IOException {
+        final List<byte[]> records = new ArrayList<>(newest.size());
+        // Positions follow the store, the newest commit has the lowest position.
+        for (int i = newest.size() - 1; i >= 0; i--) {
+            records.add(commitRecord(-(++this.frontSize), newest.get(i)));
+        }
+        write(records);
+    }
+
+    /**
+     * Persists older commits, see {@link CommitStore#append(List)}.
+     *
+     * @param oldest The older commits, newest first.
+     * @throws IOException If the file cannot be written.
+     */
+    void append(final List<CommitModel> oldest) throws IOException {
+        final List<byte[]> records = new ArrayList<>(oldest.size());
+        for (final CommitModel commit : oldest) {
+            records.add(commitRecord(this.backSize++, commit));
+        }
+        write(records);
+    }
+
+    /**
+     * Drops all persisted commits.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    void reset() throws IOException {
+        this.frontSize = 0;
+        this.backSize = 0;
+        write(List.of(new byte[]{RESET}));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+
+    private void write(final List<byte[]> records) throws IOException {
+        int length = 0;
+        for (final byte[] record : records) {
+            length += Integer.BYTES + record.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (final byte[] record : records) {
+            buffer.putInt(record.length).put(record);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+    }
+
+    private static byte[] commitRecord(final int position, final CommitModel commit) {
+        final byte[] sha = bytes(commit.getSha());
+        final byte[] message = bytes(commit.getMessage());
+        final byte[] author = bytes(commit.getAuthor());
+        final byte[] date = bytes(commit.getDate());
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES * 5
+                + size(sha) + size(message) + size(author) + size(date));
+        buffer.put(COMMIT).putInt(position);
+        putField(buffer, sha);
+        putField(buffer, message);
+        putField(buffer, author);
+        putField(buffer, date);
+        return buffer.array();
+    }
+
+    private static byte[] bytes(final String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(final byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putField(final ByteBuffer buffer, final byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+            return;
+        }
+        buffer.putInt(value.length).put(value);
+    }
+
+    /**
+     * Loads the persisted commits into the given store.
+     */
+    private void load(final CommitStore store) throws IOException {
+        if (!Files.exists(this.file)) {
+            return;
+        }
+
+        try (final FileChannel reader = FileChannel.open(this.file, READ, WRITE)) {
+            final long fileSize = reader.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("The segment " + this.file + " is too large to be mapped.");
+            }
+            final MappedByteBuffer mapped = reader.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            // Offsets of the live commit records by position, front for negative and back for positive positions.
+            int[] front = new int[16];
+            int[] back = new int[16];
+            int liveFrom = 0;
+            int offset = 0;
+            while (offset + Integer.BYTES <= fileSize) {
+                final int length = mapped.getInt(offset);
+                if (length <= 0 || offset + Integer.BYTES + (long) length > fileSize) {
+                    break;
+                }
+                final int record = offset + Integer.BYTES;
+                if (mapped.get(record) == RESET) {
+                    this.frontSize = 0;
+                    this.backSize = 0;
+                    liveFrom = offset + Integer.BYTES + length;
+                } else {
+                    final int position = mapped.getInt(record + 1);
+                    if (position < 0) {
+                        front = put(front, -position - 1, record);
+                        this.frontSize = Math.max(this.frontSize, -position);
+                    } else {
+                        back = put(back, position, record);
+                        this.backSize = Math.max(this.backSize, position + 1);
+                    }
+                }
+                offset = record + length;
+            }
+
+            final List<CommitModel> commits = new ArrayList<>(this.frontSize + this.backSize);
+            for (int i = this.frontSize - 1; i >= 0; i--) {
+                commits.add(decode(mapped, front[i]));
+            }
+            for (int i = 0; i < this.backSize; i++) {
+                commits.add(decode(mapped, back[i]));
+            }
+            store.append(commits);
+
+            if (offset < fileSize) {
+                logger.warn("Truncating torn record at {} of segment {}.", offset, this.file);
+                reader.truncate(offset);
+            }
+            if (liveFrom > 0) {
+                logger.debug("Compacting segment {}.", this.file);
+                compact(commits);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file with the given live commits only.
+     */
+    private void compact(final List<CommitModel> commits) throws IOException {
+        final Path compacted = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try (final FileChannel writer = FileChannel.open(compacted, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            this.channel = writer;
+            // Commits are rewritten as appended ones, so the positions start again from zero.
+            this.frontSize = 0;
+            this.backSize = 0;
+            append(commits);
+        } finally {
+            this.channel = null;
+        }
+        Files.move(compacted, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int[] put(final int[] offsets, final int index, final int offset) {
+        final int[] grown = index < offsets.length ? offsets : Arrays.copyOf(offsets, Math.max(index + 1, offsets.length * 2));
+        grown[index] = offset;
+        return grown;
+    }
+
+    /**
+     * Decodes the commit record at the given offset, strings are decoded straight from the mapped region.
+     */
+    private static CommitModel decode(final ByteBuffer mapped, final int record) {
+        final ByteBuffer buffer = mapped.duplicate();
+        buffer.position(record + 1 + Integer.BYTES);
+        return new CommitModel.Builder()
+                .sha(string(buffer))
+                .message(string(buffer))
+                .author(string(buffer))
+                .date(string(buffer))
+                .build();
+    }
+
+    private static String string(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        final ByteBuffer value = buffer.slice();
+        value.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(value).toString();
+    }
+}
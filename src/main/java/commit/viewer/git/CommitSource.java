@@ -0,0 +1,133 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A repository whose commits can be served, either a remote repository read through Github API, see
+ * {@link GitCommitAccess}, or a repository on the local file system, see {@link LocalCommitAccess}.
+ * <p>
+ * Methods return a {@link CompletableFuture}, so callers do not depend on whether commits are read from the network
+ * or from disk.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public interface CommitSource {
+
+    /**
+     * Checks out the given branch, i.e., validates that the branch exists.
+     *
+     * @param branch The branch name.
+     * @return {@code true} if the branch exists, otherwise {@code false}.
+     */
+    CompletableFuture<Boolean> setBranch(String branch);
+
+    /**
+     * Gets the branch checked out by default.
+     *
+     * @return The branch name.
+     */
+    String getDefaultBranch();
+
+    /**
+     * Gets the number of seconds commits are served without checking the repository for new commits, i.e., how
+     * long a page might miss the newest commits.
+     *
+     * @return The number of seconds, {@code 0} if commits are always up to date.
+     */
+    default long getFreshnessSeconds() {
+        return 0;
+    }
+
+    /**
+     * Lists the branches that can be served without further validation.
+     *
+     * @return {@link Set} of branch names.
+     */
+    Set<String> listBranches();
+
+    /**
+     * Gets the first page of commits of the given branch, newest commit first.
+     *
+     * @param branch The branch name.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    CompletableFuture<List<CommitModel>> getCommits(String branch);
+
+    /**
+     * Gets a page of commits of the given branch, newest commit first. The future completes exceptionally with
+     * {@link IllegalArgumentException} if the given branch does not exist.
+     *
+     * @param branch The branch name.
+     * @param page   The page number, starting at 1.
+     * @param size   The number of commits per page.
+     * @return Immutable {@link List} of {@link CommitModel}, it might have less than {@code size} commits on last page.
+     */
+    CompletableFuture<List<CommitModel>> getCommits(String branch, int page, int size);
+
+    /**
+     * Gets the commits of the given branch that are older than the given commit, newest commit first. The future
+     * completes exceptionally with {@link IllegalArgumentException} if the given branch or commit is unknown.
+     *
+     * @param branch The branch name.
+     * @param sha    The sha of the cursor commit, excluded from the result.
+     * @param size   The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    CompletableFuture<List<CommitModel>> getCommitsAfter(String branch, String sha, int size);
+
+    /**
+     * Gets the commits of the given branch that are older than the given commit, like
+     * {@link #getCommitsAfter(String, String, int)}, for a stream of the whole history. A source may read them without
+     * keeping them, so a stream does not hold the history, hence the end of the branch is an empty list rather than a
+     * short one. The stream started from the given head and the cursor is at the given position of its history, so a
+     * source may read the history of the head by position rather than the history of the cursor, which misses the
+     * commits of merged branches listed after the cursor.
+     *
+     * @param branch   The branch name.
+     * @param head     The sha of the newest commit of the stream.
+     * @param sha      The sha of the cursor commit, excluded from the result.
+     * @param position The position of the cursor commit on the history of the head, from {@code 0}.
+     * @param size     The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}, empty at the end of the branch.
+     */
+    default CompletableFuture<List<CommitModel>> streamCommitsAfter(String branch, String head, String sha,
+                                                                    int position, int size) {
+        return getCommitsAfter(branch, sha, size);
+    }
+
+    /**
+     * Gets the commits of the given branch that are newer than the given commit, newest commit first. The future
+     * completes exceptionally with {@link IllegalArgumentException} if the given branch or commit is unknown.
+     *
+     * @param branch The branch name.
+     * @param sha    The sha of the cursor commit, excluded from the result.
+     * @param size   The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    CompletableFuture<List<CommitModel>> getCommitsBefore(String branch, String sha, int size);
+
+    /**
+     * Searches the commits of the given branch that match the given query, newest commit first. The future completes
+     * exceptionally with {@link IllegalArgumentException} if the given branch does not exist.
+     *
+     * @param branch The branch name.
+     * @param query  The query.
+     * @param size   The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    CompletableFuture<List<CommitModel>> searchCommits(String branch, CommitQuery query, int size);
+
+    /**
+     * Gets the statistics of the commits of the given branch, i.e., the number of commits by author, day and week.
+     * The future completes exceptionally with {@link IllegalArgumentException} if the given branch does not exist.
+     *
+     * @param branch The branch name.
+     * @return The {@link CommitStatsModel}.
+     */
+    CompletableFuture<CommitStatsModel> getStats(String branch);
+}
@@ -0,0 +1,125 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates of the commits of a branch, i.e., the number of commits of each author, day and week, and the first
+ * commit of each author. They are updated as commits are added to the branch, see {@link CommitStore}, so reading them
+ * costs the number of buckets rather than the length of the history.
+ * <p>
+ * Commits are only ever added, newer or older, the aggregates are started over with the branch when it is cleared.
+ * Access is synchronized on the instance.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitStats {
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private long commits;
+
+    private long first = Long.MAX_VALUE;
+
+    private long last = Long.MIN_VALUE;
+
+    private final Map<String, Author> authors = new HashMap<>();
+
+    /**
+     * The number of commits by epoch day.
+     */
+    private final TreeMap<Long, Long> days = new TreeMap<>();
+
+    /**
+     * The number of commits by epoch day of the Monday of their week.
+     */
+    private final TreeMap<Long, Long> weeks = new TreeMap<>();
+
+    /**
+     * Adds the given commits.
+     *
+     * @param added The commits, in any order.
+     */
+    synchronized void add(final Collection<CommitModel> added) {
+        for (final CommitModel commit : added) {
+            add(commit);
+        }
+    }
+
+    /**
+     * Adds the given commit.
+     *
+     * @param commit The commit.
+     */
+    synchronized void add(final CommitModel commit) {
+        this.commits++;
+        final Author author = this.authors.computeIfAbsent(
+                commit.getAuthor() != null ? commit.getAuthor() : "", key -> new Author()
+        );
+        author.commits++;
+
+        final Instant date = CommitQuery.parseDate(commit.getDate());
+        if (date == null) {
+            return;
+        }
+        final long millis = date.toEpochMilli();
+        this.first = Math.min(this.first, millis);
+        this.last = Math.max(this.last, millis);
+        author.first = Math.min(author.first, millis);
+
+        final long day = Math.floorDiv(millis, DAY_MILLIS);
+        this.days.merge(day, 1L, Long::sum);
+        // The epoch day 0 is a Thursday.
+        this.weeks.merge(day - Math.floorMod(day + 3, 7), 1L, Long::sum);
+    }
+
+    /**
+     * Gets the current aggregates.
+     *
+     * @return The {@link CommitStatsModel}.
+     */
+    synchronized CommitStatsModel toModel() {
+        final Map<String, Long> authors = new TreeMap<>();
+        final Map<String, Long> timeToFirstCommit = new TreeMap<>();
+        this.authors.forEach((name, author) -> {
+            authors.put(name, author.commits);
+            if (author.first != Long.MAX_VALUE) {
+                timeToFirstCommit.put(name, TimeUnit.MILLISECONDS.toSeconds(author.first - this.first));
+            }
+        });
+        return new CommitStatsModel.Builder()
+                .commits(this.commits)
+                .first(this.first != Long.MAX_VALUE ? Instant.ofEpochMilli(this.first).toString() : null)
+                .last(this.last != Long.MIN_VALUE ? Instant.ofEpochMilli(this.last).toString() : null)
+                .authors(authors)
+                .timeToFirstCommit(timeToFirstCommit)
+                .days(dates(this.days))
+                .weeks(dates(this.weeks))
+                .build();
+    }
+
+    private static Map<String, Long> dates(final TreeMap<Long, Long> buckets) {
+        final Map<String, Long> dates = new LinkedHashMap<>();
+        buckets.forEach((day, commits) -> dates.put(LocalDate.ofEpochDay(day).toString(), commits));
+        return dates;
+    }
+
+    /**
+     * The aggregates of an author.
+     */
+    private static final class Author {
+
+        private long commits;
+
+        private long first = Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,317 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Indexed storage of the commits of a branch, newest commit first.
+ * <p>
+ * Commits themselves are stored once per repository on a {@link CommitGraph}, the store only keeps their ids in fixed
+ * size chunks on two sides: newer commits are prepended on the front side and older commits are appended on the back
+ * side, so both operations only write new slots and never shift existing ones. Any position is reached in O(1) by
+ * chunk arithmetic, hence a deep page costs the same as the first one. {@link CommitModel} is only created as a view
+ * when a commit is read.
+ * <p>
+ * The slot of each id is also indexed on an open addressing table of primitive arrays, so the position of a sha is
+ * found in O(1), see {@link Snapshot#indexOf(String)}, and the commits are aggregated, see {@link CommitStats}.
+ * <p>
+ * Writes are not thread-safe and must be serialized by the caller, see {@link BranchCache}. Since a slot is never
+ * overwritten once written, each {@link #snapshot()} is an immutable view that can be read by any thread without
+ * locking.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class CommitStore {
+
+    /**
+     * The number of bits used to address a commit within a chunk.
+     */
+    private static final int CHUNK_BITS = 10;
+
+    /**
+     * The number of commits per chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The initial capacity of the id index, always a power of two.
+     */
+    private static final int INDEX_CAPACITY = 64;
+
+    /**
+     * The key of an empty entry of the id index.
+     */
+    private static final int EMPTY_KEY = 0;
+
+    /**
+     * The graph where commits are stored.
+     */
+    private final CommitGraph graph;
+
+    /**
+     * The chunks of newer commit ids, the newest commit is the last written slot.
+     */
+    private int[][] front = new int[0][];
+
+    /**
+     * The chunks of older commit ids, the oldest commit is the last written slot.
+     */
+    private int[][] back = new int[0][];
+
+    private int frontSize;
+
+    private int backSize;
+
+    /**
+     * The keys of the id index, i.e., the id plus one.
+     */
+    private int[] indexKeys = new int[INDEX_CAPACITY];
+
+    /**
+     * The slot of each key of the id index, a front slot {@code s} is kept as {@code ~s} and a back slot as is.
+     */
+    private int[] indexSlots = new int[INDEX_CAPACITY];
+
+    /**
+     * The last published snapshot.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * The aggregates of the stored commits, updated as commits are added.
+     */
+    final CommitStats stats = new CommitStats();
+
+    /**
+     * Creates a store with its own graph, i.e., that does not share commits with any other branch.
+     */
+    CommitStore() {
+        this(new CommitGraph());
+    }
+
+    /**
+     * Creates a store whose commits are stored on the given graph.
+     *
+     * @param graph The graph of the repository.
+     */
+    CommitStore(final CommitGraph graph) {
+        this.graph = graph;
+        publish();
+    }
+
+    /**
+     * Gets the current snapshot of commits.
+     *
+     * @return Immutable {@link List} of {@link CommitModel}, newest commit first.
+     */
+    Snapshot snapshot() {
+        return this.snapshot;
+    }
+
+    int size() {
+        return this.frontSize + this.backSize;
+    }
+
+    /**
+     * Adds newer commits before the newest commit of the store.
+     *
+     * @param newest The newer commits, newest first.
+     */
+    void prepend(final List<CommitModel> newest) {
+        // Iterates from the oldest of the given commits, so the newest one ends at the outermost slot.
+        for (int i = newest.size() - 1; i >= 0; i--) {
+            final int chunk = this.frontSize >> CHUNK_BITS;
+            if (chunk == this.front.length) {
+                this.front = grow(this.front);
+            }
+            final int id = this.graph.add(newest.get(i));
+            this.front[chunk][this.frontSize & CHUNK_MASK] = id;
+            index(id, ~this.frontSize);
+            this.frontSize++;
+        }
+        this.stats.add(newest);
+        publish();
+    }
+
+    /**
+     * Adds older commits after the oldest commit of the store.
+     *
+     * @param oldest The older commits, newest first.
+     */
+    void append(final List<CommitModel> oldest) {
+        for (final CommitModel commit : oldest) {
+            final int chunk = this.backSize >> CHUNK_BITS;
+            if (chunk == this.back.length) {
+                this.back = grow(this.back);
+            }
+            final int id = this.graph.add(commit);
+            this.back[chunk][this.backSize & CHUNK_MASK] = id;
+            index(id, this.backSize);
+            this.backSize++;
+        }
+        this.stats.add(oldest);
+        publish();
+    }
+
+    /**
+     * Estimates the heap used by the store, without the commits kept on its graph, assuming compressed references.
+     *
+     * @return The estimated number of bytes.
+     */
+    long estimatedBytes() {
+        long bytes = CommitGraph.array(this.front.length, Integer.BYTES)
+                + CommitGraph.array(this.back.length, Integer.BYTES);
+        bytes += (this.front.length + this.back.length) * CommitGraph.array(CHUNK_SIZE, Integer.BYTES);
+        bytes += CommitGraph.array(this.indexKeys.length, Integer.BYTES)
+                + CommitGraph.array(this.indexSlots.length, Integer.BYTES);
+        return bytes;
+    }
+
+    private void publish() {
+        this.snapshot = new Snapshot(this.graph, this.front, this.back, this.frontSize, this.backSize,
+                this.indexKeys, this.indexSlots);
+    }
+
+    /**
+     * Adds the given id to the index. The table is kept at most four fifths full, it is replaced by a twice larger
+     * one rather than rehashed in place, since published snapshots keep reading the previous one.
+     */
+    private void index(final int id, final int slot) {
+        if ((size() + 1) * 5L > this.indexKeys.length * 4L) {
+            final int[] keys = new int[this.indexKeys.length * 2];
+            final int[] slots = new int[keys.length];
+            for (int i = 0; i < this.indexKeys.length; i++) {
+                if (this.indexKeys[i] != EMPTY_KEY) {
+                    put(keys, slots, this.indexKeys[i], this.indexSlots[i]);
+                }
+            }
+            this.indexKeys = keys;
+            this.indexSlots = slots;
+        }
+        put(this.indexKeys, this.indexSlots, id + 1, slot);
+    }
+
+    private static void put(final int[] keys, final int[] slots, final int key, final int slot) {
+        final int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY_KEY) {
+            i = (i + 1) & mask;
+        }
+        // The slot is written first, a reader seeing the key with an older slot only fails the id check.
+        slots[i] = slot;
+        keys[i] = key;
+    }
+
+    /**
+     * Spreads the given key, since ids of a branch are mostly consecutive.
+     */
+    private static int hash(final int key) {
+        return key * 0x9E3779B9;
+    }
+
+    /**
+     * Adds a new chunk to the given chunks. Only the chunk directory is copied, chunks are shared with older
+     * snapshots.
+     */
+    private static int[][] grow(final int[][] chunks) {
+        final int[][] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = new int[CHUNK_SIZE];
+        return grown;
+    }
+
+    /**
+     * An immutable view of the store at a given time.
+     */
+    static final class Snapshot extends AbstractList<CommitModel> implements RandomAccess {
+
+        private final CommitGraph graph;
+        private final int[][] front;
+        private final int[][] back;
+        private final int frontSize;
+        private final int backSize;
+        private final int[] indexKeys;
+        private final int[] indexSlots;
+
+        private Snapshot(final CommitGraph graph, final int[][] front, final int[][] back, final int frontSize,
+                         final int backSize, final int[] indexKeys, final int[] indexSlots) {
+            this.graph = graph;
+            this.front = front;
+            this.back = back;
+            this.frontSize = frontSize;
+            this.backSize = backSize;
+            this.indexKeys = indexKeys;
+            this.indexSlots = indexSlots;
+        }
+
+        @Override
+        public CommitModel get(final int index) {
+            return this.graph.read(id(index));
+        }
+
+        @Override
+        public int size() {
+            return this.frontSize + this.backSize;
+        }
+
+        /**
+         * Gets the id on the {@link CommitGraph} of the commit at the given position.
+         *
+         * @param index The position.
+         * @return The id.
+         */
+        int id(final int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            if (index < this.frontSize) {
+                final int slot = this.frontSize - 1 - index;
+                return this.front[slot >> CHUNK_BITS][slot & CHUNK_MASK];
+            }
+            final int slot = index - this.frontSize;
+            return this.back[slot >> CHUNK_BITS][slot & CHUNK_MASK];
+        }
+
+        /**
+         * Gets the position of the commit with the given sha in O(1).
+         *
+         * @param sha The commit sha.
+         * @return The position of the commit, or {@code -1} if there is no commit with the given sha.
+         */
+        int indexOf(final String sha) {
+            final int id = this.graph.idOf(sha);
+            return id < 0 ? -1 : positionOf(id);
+        }
+
+        /**
+         * Gets the position of the commit with the given id in O(1). Entries written after this snapshot, or being
+         * written, are skipped since their slot is either out of this snapshot or does not have the given id.
+         *
+         * @param id The id on the {@link CommitGraph}.
+         * @return The position of the commit, or {@code -1} if there is no commit with the given id.
+         */
+        int positionOf(final int id) {
+            final int key = id + 1;
+            final int mask = this.indexKeys.length - 1;
+            for (int i = hash(key) & mask; this.indexKeys[i] != EMPTY_KEY; i = (i + 1) & mask) {
+                if (this.indexKeys[i] != key) {
+                    continue;
+                }
+                final int slot = this.indexSlots[i];
+                if (slot < 0 && ~slot < this.frontSize
+                        && this.front[~slot >> CHUNK_BITS][~slot & CHUNK_MASK] == id) {
+                    return this.frontSize - 1 - ~slot;
+                }
+                if (slot >= 0 && slot < this.backSize && this.back[slot >> CHUNK_BITS][slot & CHUNK_MASK] == id) {
+                    return this.frontSize + slot;
+                }
+            }
+            return -1;
+        }
+    }
+}
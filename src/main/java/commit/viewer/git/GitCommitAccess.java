@@ -1,362 +1,800 @@
 package commit.viewer.git;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import commit.viewer.git.UpstreamScheduler.Priority;
+import commit.viewer.metrics.Metrics;
 import commit.viewer.model.CommitModel;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import commit.viewer.model.CommitStatsModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 import static java.lang.String.format;
-import static java.util.Collections.emptyList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 /**
- * Singleton class to retrieve Commits from remote git repository.
+ * Class to retrieve Commits from a remote git repository. Instances are kept by {@link GitCommitAccessRegistry}, one
+ * per repository.
+ * <p>
+ * All requests to Github API are asynchronous, methods return a {@link CompletableFuture} that completes once the
+ * response is handled, so no thread is blocked while waiting for Github API.
  *
  * @author Sheng Wang (shenggwangg@gmail.com)
  */
-public enum GitCommitAccess {
-
-    INSTANCE;
+public class GitCommitAccess implements CommitSource {
 
     private static final Logger logger = LoggerFactory.getLogger(GitCommitAccess.class);
 
-    final static Pattern regex = Pattern.compile("^http[s]?://github\\.com/([A-Za-z0-9]\\w+)/([A-Za-z0-9]\\w+).git$");
+    /**
+     * The client used to make request to Github API.
+     */
+    final GitHubClient client;
+
+    /**
+     * The base URL of Github REST API, can be set by {@code commit.viewer.githubUrl} system property, e.g., to a
+     * Github Enterprise server or a local stub.
+     */
+    final static String GITHUB_URL = System.getProperty("commit.viewer.githubUrl", "https://api.github.com")
+            .replaceFirst("/+$", "");
+
+    /**
+     * The maximum number of pages of a branch requested at the same time when fetching older commits, can be set by
+     * {@code commit.viewer.maxPagesInFlight} system property.
+     */
+    private final static int MAX_PAGES_IN_FLIGHT = Integer.getInteger("commit.viewer.maxPagesInFlight", 8);
+
+    /**
+     * The number of commits of a page when none is given by the client.
+     */
+    public final static int DEFAULT_PAGE_SIZE = 30;
+
+    /**
+     * The maximum number of commits of a page requested to Github API, i.e., {@code per_page}. Github does not allow
+     * more than 100, it can be lowered by {@code commit.viewer.maxPerPage} system property.
+     */
+    final static int MAX_PER_PAGE = Math.max(1, Math.min(100, Integer.getInteger("commit.viewer.maxPerPage", 100)));
+
+    /**
+     * The minimum number of commits of a page requested to Github API, i.e., Github default {@code per_page}.
+     */
+    private final static int MIN_PER_PAGE = Math.min(30, MAX_PER_PAGE);
+
+    /**
+     * The directory where branch caches are persisted, see {@link CommitSegment}. It is set by
+     * {@code commit.viewer.storeDirectory} system property, if not set caches are only kept in memory.
+     */
+    private final static String STORE_DIRECTORY = System.getProperty("commit.viewer.storeDirectory");
+
+    /**
+     * The number of seconds a refreshed branch is served without asking Github API, can be set by
+     * {@code commit.viewer.freshnessSeconds} system property.
+     */
+    final static long FRESHNESS_SECONDS = Math.max(1, Long.getLong("commit.viewer.freshnessSeconds", 60));
+
+    /**
+     * The number of seconds a branch is kept refreshed in background since its last use, can be set by
+     * {@code commit.viewer.idleSeconds} system property.
+     */
+    private final static long IDLE_SECONDS = Long.getLong("commit.viewer.idleSeconds", 600);
 
     /**
-     * The HTTP client, used to make request to Github API.
+     * The maximum number of pages of newer commits fetched to find the newest cached commit of a branch, can be set by
+     * {@code commit.viewer.maxSyncPages} system property. The cache of a branch further behind is started over.
      */
-    final HttpClient client = HttpClient.newHttpClient();
+    private final static int MAX_SYNC_PAGES = Math.max(1, Integer.getInteger("commit.viewer.maxSyncPages", 10));
 
     /**
-     * The project base URL.
+     * The upstream API commits are fetched from, {@code rest} or {@code graphql}, can be set by
+     * {@code commit.viewer.upstream} system property. GraphQL API requires {@code commit.viewer.githubToken}.
      */
-    private final static String BASE_URL = "https://api.github.com/repos";
+    private final static String UPSTREAM = System.getProperty("commit.viewer.upstream", "rest");
+
+    private static final Metrics.Counter cacheRequests = Metrics.INSTANCE.counter(
+            "commit_viewer_cache_requests_total",
+            "Requests of commits by branch, a hit is served from the cache and a miss waits for Github API.",
+            "repo", "branch", "result"
+    );
 
+    /**
+     * The owner name.
+     */
+    private final String owner;
+    /**
+     * The repository name.
+     */
+    private final String repository;
     /**
      * The project url, i.e., it contains owner name and repository name.
      */
-    private String projectUrl;
+    private final String projectUrl;
     /**
-     * The current checked out branch.
+     * The fetcher of commits, see {@link #UPSTREAM}.
      */
-    String branch;
+    private final CommitFetcher fetcher;
+    /**
+     * The default branch of the project.
+     */
+    private volatile String defaultBranch;
 
     /**
-     * The cache that maps branch with corresponded list of commit.
+     * The commits of all branches, each commit is stored once whatever the number of branches that have it.
      */
-    HashMap<String, LinkedList<CommitModel>> cache;
+    final CommitGraph graph = new CommitGraph();
 
-    GitCommitAccess() {
+    /**
+     * The cache that maps branch with corresponded cached commits.
+     */
+    final ConcurrentMap<String, BranchCache> cache = new ConcurrentHashMap<>();
+
+    GitCommitAccess(final GitHubClient client, final String owner, final String repository) {
+        this(client, GITHUB_URL, owner, repository);
+    }
+
+    GitCommitAccess(final GitHubClient client, final String githubUrl, final String owner, final String repository) {
+        this(client, githubUrl, owner, repository, newFetcher(client, githubUrl, owner, repository));
     }
 
-    public boolean startProjectByURL(final String url) {
+    GitCommitAccess(final GitHubClient client, final String owner, final String repository,
+                    final CommitFetcher fetcher) {
+        this(client, GITHUB_URL, owner, repository, fetcher);
+    }
 
-        final Matcher matcher = regex.matcher(url);
-        if (matcher.find()) {
-            final String owner = matcher.group(1);
-            final String repository = matcher.group(2);
-            try {
-                startProject(owner, repository);
-                return true;
-            } catch (final Exception e) {
-                logger.debug("Fail to start project.", e);
+    private GitCommitAccess(final GitHubClient client, final String githubUrl, final String owner,
+                            final String repository, final CommitFetcher fetcher) {
+        this.client = client;
+        this.owner = owner;
+        this.repository = repository;
+        this.projectUrl = projectUrl(githubUrl, owner, repository);
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Creates the fetcher of {@link #UPSTREAM}, GraphQL API is only used by authenticated clients.
+     */
+    private static CommitFetcher newFetcher(final GitHubClient client, final String githubUrl, final String owner,
+                                            final String repository) {
+        if ("graphql".equalsIgnoreCase(UPSTREAM)) {
+            if (client.isAuthenticated()) {
+                final URI graphqlUrl = githubUrl.equals(GITHUB_URL)
+                        ? GraphQLCommitFetcher.GRAPHQL_URL
+                        : URI.create(githubUrl + "/graphql");
+                return new GraphQLCommitFetcher(client, graphqlUrl, owner, repository);
             }
+            logger.warn("GraphQL API requires commit.viewer.githubToken, REST API is used instead.");
         }
-        return false;
+        return new RestCommitFetcher(client, projectUrl(githubUrl, owner, repository));
+    }
+
+    private static String projectUrl(final String githubUrl, final String owner, final String repository) {
+        return format("%s/repos/%s/%s", githubUrl, owner, repository);
     }
 
-    public void startProject(final String owner, final String repository)
-            throws IOException, URISyntaxException, ParseException, InterruptedException {
+    /**
+     * Validates the project against Github API and checks out its default branch.
+     *
+     * @return {@code true} if the project exists, otherwise {@code false}.
+     */
+    CompletableFuture<Boolean> start() {
+
+        return getJsonObjectByUrl(URI.create(this.projectUrl)).thenApply(object -> {
+            if (object.path("name").asText("null").equals(this.repository)) {
+                logger.debug("Cloned to owner {} and repository {} project.", this.owner, this.repository);
+                final JsonNode default_branch = object.get("default_branch");
+                loadPersistedBranches();
+                if (default_branch != null && !default_branch.isNull()) {
+                    this.defaultBranch = default_branch.asText();
+                    this.cache.computeIfAbsent(this.defaultBranch, this::newBranchCache);
+                }
+                return true;
+            }
+
+            logger.debug("The given owner {} and repository {} does not exist.", this.owner, this.repository);
+            return false;
+        });
+    }
 
-        final String projectUrl = format("%s/%s/%s", BASE_URL, owner, repository);
-        if (isProjectStarted() && this.projectUrl.equals(projectUrl)) {
-            logger.debug("The current project is already owner {} with repository {}.", owner, repository);
-            return;
+    /**
+     * Creates the cache of the given branch, persisted on {@link #STORE_DIRECTORY} if set.
+     *
+     * @param branch The branch name.
+     * @return The {@link BranchCache}.
+     */
+    private BranchCache newBranchCache(final String branch) {
+        final Path directory = storeDirectory();
+        if (directory == null) {
+            return new BranchCache(this.graph);
         }
+        return new BranchCache(this.graph, directory.resolve(URLEncoder.encode(branch, UTF_8) + CommitSegment.EXTENSION));
+    }
 
-        final JSONObject object = getJsonObjectByUrl(new URL(projectUrl));
-        if (String.valueOf(object.getOrDefault("name", "null")).equals(repository)) {
-            this.projectUrl = projectUrl;
-            this.cache = new HashMap<>();
-            logger.debug("Cloned to owner {} and repository {} project.", owner, repository);
-            final String default_branch = String.valueOf(object.get("default_branch"));
-            if (default_branch != null) {
-                setBranch(default_branch);
-                this.cache.put(default_branch, new LinkedList<>());
-            }
+    /**
+     * Loads the branches persisted by a previous run, so only commits newer than the persisted ones are fetched.
+     */
+    private void loadPersistedBranches() {
+        final Path directory = storeDirectory();
+        if (directory == null || !Files.isDirectory(directory)) {
             return;
         }
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + CommitSegment.EXTENSION)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final String branch = URLDecoder.decode(
+                        name.substring(0, name.length() - CommitSegment.EXTENSION.length()),
+                        UTF_8
+                );
+                this.cache.computeIfAbsent(branch, this::newBranchCache);
+            }
+        } catch (final IOException e) {
+            logger.warn("Fail to load persisted branches of {}.", directory, e);
+        }
+    }
+
+    /**
+     * Gets the directory where branches of this project are persisted.
+     *
+     * @return The {@link Path}, or {@code null} if caches are only kept in memory.
+     */
+    private Path storeDirectory() {
+        if (STORE_DIRECTORY == null) {
+            return null;
+        }
+        return Paths.get(STORE_DIRECTORY, this.owner, this.repository);
+    }
 
-        logger.debug("The given owner {} and repository {} does not exist.", owner, repository);
+    public String getOwner() {
+        return this.owner;
     }
 
-    public boolean setBranch(final String branch) {
-        if (!isProjectStarted()) {
-            logger.debug("There is no project url set yet.");
-            return false;
+    public String getRepository() {
+        return this.repository;
+    }
+
+    /**
+     * Checks out the given branch, i.e., validates that the branch exists and starts caching its commits.
+     *
+     * @param branch The branch name.
+     * @return {@code true} if the branch exists, otherwise {@code false}.
+     */
+    @Override
+    public CompletableFuture<Boolean> setBranch(final String branch) {
+        if (this.cache.containsKey(branch)) {
+            logger.debug("Branch {} is already checked out.", branch);
+            return completedFuture(true);
         }
 
-        try {
-            final URL url = new URL(format(
-                    "%s/branches/%s",
-                    this.projectUrl,
-                    branch
-            ));
-            final JSONObject object = getJsonObjectByUrl(url);
-            if (String.valueOf(object.getOrDefault("name", "null")).equals(branch)) {
+        final URI uri = URI.create(format(
+                "%s/branches/%s",
+                this.projectUrl,
+                branch
+        ));
+        return getJsonObjectByUrl(uri).handle((object, e) -> {
+            if (e != null) {
+                logger.debug("Fail to set branch.", e);
+                return false;
+            }
+            if (object.path("name").asText("null").equals(branch)) {
                 logger.debug("Checkout to branch {}.", branch);
-                this.branch = branch;
-                if (!this.cache.containsKey(branch)) {
-                    this.cache.put(branch, new LinkedList<>());
-                }
+                this.cache.computeIfAbsent(branch, this::newBranchCache);
                 return true;
             }
 
             logger.debug("The given branch {} does not exists.", branch);
             return false;
-        } catch (final Exception e) {
-            logger.debug("Fail to set branch.", e);
-            return false;
-        }
+        });
     }
 
-    public boolean isProjectStarted() {
-        return this.projectUrl != null;
+    @Override
+    public String getDefaultBranch() {
+        return this.defaultBranch;
     }
 
-    public String getCurrentBranch() {
-        return this.branch;
+    @Override
+    public long getFreshnessSeconds() {
+        return FRESHNESS_SECONDS;
     }
 
+    @Override
     public Set<String> listBranches() {
         return this.cache.keySet();
     }
 
-    public List<CommitModel> getCommits()
-            throws IOException, InterruptedException, URISyntaxException, ParseException {
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommits(final String branch) {
+        // default page and size.
+        return getCommits(branch, 1, DEFAULT_PAGE_SIZE);
+    }
 
-        final long startTime = System.nanoTime();
+    /**
+     * Gets a page of commits of the given branch, newest commit first. The future completes exceptionally with
+     * {@link IllegalArgumentException} if the given branch does not exist.
+     *
+     * @param branch The branch name.
+     * @param page   The page number, starting at 1.
+     * @param size   The number of commits per page.
+     * @return Immutable {@link List} of {@link CommitModel}, it might have less than {@code size} commits on last page.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommits(final String branch, final int page, final int size) {
+        return getCommits(branch, size, commits -> Math.multiplyExact(page, size));
+    }
 
-        // default page and size.
-        final List<CommitModel> commits = getCommits(1, 30);
+    /**
+     * Gets the commits of the given branch that are older than the given commit, newest commit first. Unlike pages,
+     * the result does not shift when new commits are pushed, and the cursor is resolved by the sha index of the cache
+     * so a deep scan costs the same as the first page. The future completes exceptionally with
+     * {@link IllegalArgumentException} if the given branch does not exist, or the given commit is not cached.
+     *
+     * @param branch The branch name.
+     * @param sha    The sha of the cursor commit, excluded from the result.
+     * @param size   The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}, it might have less than {@code size} commits at the end of
+     * the branch.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommitsAfter(final String branch, final String sha,
+                                                                final int size) {
+        return getCommits(branch, size, commits -> {
+            final int cursor = commits.indexOf(sha);
+            return cursor < 0 ? -1 : Math.addExact(cursor + 1, size);
+        });
+    }
 
-        final long endTime = System.nanoTime();
-        final long durationInMillisecond = (endTime - startTime) / 1000000;
-        logger.debug("Retrieved commits within {}ms.", durationInMillisecond);
+    /**
+     * Gets the commits of the given branch that are older than the given commit for a stream. Commits are read from
+     * the cache while it has the head of the stream and the commits after the cursor, and otherwise the pages of the
+     * history of the head are fetched by position without being cached, so streaming a whole history only keeps the
+     * pages already cached, and commits pushed meanwhile neither shift the stream nor are streamed. Such fetches are
+     * background requests, see {@link UpstreamScheduler}, since a stream is bulk work that should not delay pages.
+     *
+     * @param branch   The branch name.
+     * @param head     The sha of the newest commit of the stream.
+     * @param sha      The sha of the cursor commit, excluded from the result.
+     * @param position The position of the cursor commit on the history of the head, from {@code 0}.
+     * @param size     The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}, empty at the end of the branch.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> streamCommitsAfter(final String branch, final String head,
+                                                                   final String sha, final int position,
+                                                                   final int size) {
+        final BranchCache branchCache = this.cache.get(branch);
+        if (branchCache == null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException(format("The branch %s is not checked out.", branch)));
+        }
+        // Commits pushed since the stream started are before its head on the cache.
+        final CommitStore.Snapshot commits = branchCache.snapshot();
+        final int offset = commits.indexOf(head);
+        if (offset >= 0 && position < commits.size() - 1 - offset
+                && commits.get(offset + position).getSha().equals(sha)) {
+            final int cursor = offset + position;
+            final int end = cursor + 1 + Math.min(size, commits.size() - cursor - 1);
+            return completedFuture(commits.subList(cursor + 1, end));
+        }
 
-        return commits;
+        // e.g., after the cursor at position 44, the next 100 commits are on pages 1 and 2 of 73 commits of the head.
+        final int from = Math.addExact(position, 1);
+        final int until = Math.addExact(from, size);
+        final int perPage = perPage(from, until);
+        final int firstPage = from / perPage + 1;
+        final int lastPage = (int) (((long) until + perPage - 1) / perPage);
+        final IntFunction<CompletableFuture<List<CommitModel>>> fetcher =
+                page -> this.fetcher.fetchHistory(head, page, perPage);
+        return PageFanOut.fetch(firstPage, lastPage, perPage, MAX_PAGES_IN_FLIGHT, fetcher).thenApply(pages -> {
+            final List<CommitModel> fetched = new ArrayList<>();
+            pages.forEach(fetched::addAll);
+            final int skip = from % perPage;
+            return List.copyOf(fetched.subList(Math.min(skip, fetched.size()), Math.min(fetched.size(), skip + size)));
+        });
     }
 
-    public List<CommitModel> getCommits(final int page, final int size)
-            throws IOException, InterruptedException, URISyntaxException, ParseException {
+    /**
+     * Gets the commits of the given branch that are newer than the given commit, newest commit first, i.e., the
+     * commits just before the cursor. See {@link #getCommitsAfter(String, String, int)}.
+     *
+     * @param branch The branch name.
+     * @param sha    The sha of the cursor commit, excluded from the result.
+     * @param size   The maximum number of commits.
+     * @return Immutable {@link List} of {@link CommitModel}, it might have less than {@code size} commits at the
+     * beginning of the branch.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommitsBefore(final String branch, final String sha,
+                                                                 final int size) {
+        return getCommits(branch, size, commits -> commits.indexOf(sha));
+    }
 
-        if (!isProjectStarted()) {
-            logger.debug("There is no project url set yet.");
-            return emptyList();
-        }
+    /**
+     * Searches the cached commits of the given branch, by the indexes of {@link #graph}, see {@link CommitIndex}. The
+     * branch is refreshed like for its first page, but older commits are not fetched, so only commits already cached
+     * are found.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> searchCommits(final String branch, final CommitQuery query,
+                                                              final int size) {
+        return getCommits(branch, 1, 1).thenApply(ignored -> {
+            final CommitStore.Snapshot commits = this.cache.get(branch).snapshot();
+            final List<CommitModel> found = new ArrayList<>();
+            for (final int position : this.graph.search.search(query, commits, size)) {
+                found.add(commits.get(position));
+            }
+            return List.copyOf(found);
+        });
+    }
 
-        // TODO this is used when executing git fetch, we should add git fetch commands to update cache.
-        updateCache();
+    /**
+     * Gets the statistics of the cached commits of the given branch, they are aggregated as commits are cached, see
+     * {@link CommitStats}. The branch is refreshed like for its first page, but older commits are not fetched, so
+     * only commits already cached are counted.
+     */
+    @Override
+    public CompletableFuture<CommitStatsModel> getStats(final String branch) {
+        return getCommits(branch, 1, 1).thenApply(ignored -> this.cache.get(branch).stats());
+    }
+
+    /**
+     * Gets the commits of the given branch until the given position, at most {@code size} of them, newest commit
+     * first. The position is resolved on the snapshot of the cache, before and after the cache is updated, since
+     * commits might be prepended meanwhile.
+     *
+     * @param branch      The branch name.
+     * @param size        The maximum number of commits.
+     * @param untilCommit The resolver of the position after the last commit, {@code -1} if the cursor is not cached.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    private CompletableFuture<List<CommitModel>> getCommits(final String branch, final int size,
+                                                            final ToIntFunction<CommitStore.Snapshot> untilCommit) {
+        return setBranch(branch).thenCompose(exists -> {
+            if (!exists) {
+                throw new IllegalArgumentException(format("The branch %s does not exist.", branch));
+            }
+            final BranchCache branchCache = this.cache.get(branch);
+            branchCache.use();
+
+            // TODO this is used when executing git fetch, we should add git fetch commands to update cache.
+            // Concurrent callers share the refresh, and only the first one that misses commits fetches them.
+            final int cachedUntil = untilCommit.applyAsInt(branchCache.snapshot());
+            final boolean cached = cachedUntil >= 0 && branchCache.size() >= cachedUntil;
+            cacheRequests.inc(this.owner + '/' + this.repository, branch, cached ? "hit" : "miss");
+            final CompletableFuture<Void> refreshed;
+            if (branchCache.isFresh(TimeUnit.SECONDS.toNanos(FRESHNESS_SECONDS))) {
+                refreshed = completedFuture(null);
+            } else if (cached) {
+                // Stale while revalidate, the cached page is served while the branch is refreshed.
+                revalidate(branch, branchCache);
+                refreshed = completedFuture(null);
+            } else {
+                // A refresh refused for the rate limit is skipped, older pages are still fetched or served.
+                refreshed = refresh(branch, branchCache).exceptionally(e -> {
+                    if (RateLimitedException.causeOf(e) == null) {
+                        throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                    }
+                    logger.debug("Branch {} is not refreshed, the rate limit is exhausted.", branch);
+                    return null;
+                });
+            }
+            return refreshed.thenCompose(ignored -> {
+                final int until = untilCommit.applyAsInt(branchCache.snapshot());
+                if (until < 0 || branchCache.size() >= until) {
+                    return completedFuture(null);
+                }
+                return branchCache.update(() -> {
+                    final int updatedUntil = untilCommit.applyAsInt(branchCache.snapshot());
+                    if (branchCache.size() < updatedUntil) {
+                        return fetchOldestCommits(branch, branchCache, updatedUntil);
+                    }
+                    return completedFuture(null);
+                });
+            }).thenApply(ignored -> {
+                final CommitStore.Snapshot commits = branchCache.snapshot();
+                final int until = untilCommit.applyAsInt(commits);
+                if (until < 0) {
+                    throw new IllegalArgumentException(format("The cursor is not cached on branch %s.", branch));
+                }
+                return commits.subList(
+                        Math.min(Math.max(0, until - size), commits.size()),
+                        Math.min(until, commits.size())
+                );
+            });
+        });
+    }
 
-        final int untilCommit = page * size;
-        if (this.cache.get(this.branch).size() < untilCommit) {
-            fetchOldestCommits(untilCommit);
+    /**
+     * Estimates the heap used by the cached commits of all branches, including their search indexes.
+     *
+     * @return The estimated number of bytes.
+     */
+    long estimatedBytes() {
+        long bytes = this.graph.estimatedBytes() + this.graph.search.estimatedBytes();
+        for (final BranchCache branchCache : this.cache.values()) {
+            bytes += branchCache.estimatedBytes();
         }
-        return this.cache.get(this.branch).subList(untilCommit - size, untilCommit);
+        return bytes;
+    }
+
+    /**
+     * Refreshes the given branch, i.e., fetches its newest commits. A refresh already scheduled is shared.
+     *
+     * @param branch The branch name.
+     * @return The completion of the refresh.
+     */
+    CompletableFuture<Void> refresh(final String branch) {
+        return refresh(branch, this.cache.get(branch));
+    }
+
+    /**
+     * Refreshes in background the branches used within {@link #IDLE_SECONDS}, once they are half way to stale, so
+     * refreshes run every half {@link #FRESHNESS_SECONDS} keep them fresh. Called by {@link GitCommitAccessRegistry}.
+     */
+    void refreshUsedBranches() {
+        final long halfFreshness = TimeUnit.SECONDS.toNanos(FRESHNESS_SECONDS) / 2;
+        final long idle = TimeUnit.SECONDS.toNanos(IDLE_SECONDS);
+        this.cache.forEach((branch, branchCache) -> {
+            if (branchCache.isUsedWithin(idle) && !branchCache.isFresh(halfFreshness)) {
+                revalidate(branch, branchCache);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> refresh(final String branch, final BranchCache branchCache) {
+        return branchCache.refresh(() -> updateCache(branch, branchCache));
+    }
+
+    /**
+     * Refreshes the given branch without waiting for it, a failure is only logged since the cache is still served.
+     */
+    private void revalidate(final String branch, final BranchCache branchCache) {
+        refresh(branch, branchCache).whenComplete((ignored, e) -> {
+            if (e != null) {
+                logger.debug("Fail to refresh branch {}.", branch, e);
+            }
+        });
     }
 
     /**
      * Fetches the newest commits.
      * The strategy used here is the following:
      * <ol>
-     *     <li>Retrieve the first/newest 30 commits in a list.</li>
-     *     <li>Iterate the list of commit and see if there is any commit that equals to the first commit on the cache.</li>
-     *     <li>Count number of commit that cache doesn't contain and add it at the beginning of the cache list</li>
+     *     <li>Retrieve the first/newest {@link #MAX_PER_PAGE} commits in a list.</li>
+     *     <li>Look up each commit on the sha index of the cache, see {@link CommitStore.Snapshot#indexOf(String)},
+     *     until one of them is cached.</li>
+     *     <li>If it is the first commit on the cache, add the commits before it at the beginning of the cache list.</li>
+     *     <li>If none is cached, retrieve the next page of {@link #MAX_PER_PAGE} commits of the newest commit, i.e.,
+     *     of the head rather than of the branch, so commits pushed meanwhile do not shift the pages. Pages are not
+     *     fetched from the oldest commit of the previous page, since a branch is listed by commit date across merges,
+     *     so the history of a commit in the middle of the list is not the rest of the list.</li>
      * </ol>
-     * Note, if none of 30 commits already exists in cache, we are assuming the cache is way too old, so we just delete
-     * the cache for the current branch and start over.
+     * Note, if the first commit on the cache is not found within {@link #MAX_SYNC_PAGES} pages, we are assuming the
+     * cache is way too old, and if another cached commit is found first, the history was rewritten, so in both cases
+     * we just delete the cache for the given branch and start over.
+     * Must be called from an update of the branch, see {@link BranchCache#update}.
      *
-     * @throws IOException          If http request fails sending data.
-     * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
+     * @param branch      The branch name.
+     * @param branchCache The cache of the branch.
+     * @return The completion of the update.
      */
-    private void updateCache() throws URISyntaxException, ParseException, InterruptedException, IOException {
-        if (this.cache.get(this.branch).size() == 0) {
+    private CompletableFuture<Void> updateCache(final String branch, final BranchCache branchCache) {
+        if (branchCache.size() == 0) {
             logger.debug("There is no cache to update");
-            return;
+            return completedFuture(null);
         }
-        final URL url = new URL(format(
-                "%s/commits?sha=%s",
-                this.projectUrl,
-                this.branch
-        ));
-
-        final List<CommitModel> commits = getCommitsByUrl(url);
+        return this.fetcher.fetchNewest(branch)
+                .thenCompose(commits -> syncNewest(branchCache, commits.isEmpty() ? null : commits.get(0).getSha(),
+                        commits, 1, new ArrayList<>()));
+    }
 
-        int i = 0;
-        // I'm avoiding for (int i = 0) to avoid list.get(i), because the get is expansive on linked list.
-        for (final CommitModel commit : commits) {
-            if (commit.equals(this.cache.get(this.branch).get(0))) {
-                if (i == 0) {
-                    logger.debug("Cache is updated.");
-                    return;
-                }
-                break;
+    /**
+     * Looks up the given page of newest commits on the cache, and either prepends the new commits or fetches the next
+     * page, see {@link #updateCache(String, BranchCache)}.
+     *
+     * @param branchCache The cache of the branch.
+     * @param head        The sha of the newest commit of the first page, the following pages are pages of its history.
+     * @param commits     The page of commits, newest first.
+     * @param pages       The number of pages fetched so far.
+     * @param newest      The new commits of the previous pages, newest first.
+     * @return The completion of the sync.
+     */
+    private CompletableFuture<Void> syncNewest(final BranchCache branchCache, final String head,
+                                               final List<CommitModel> commits, final int pages,
+                                               final List<CommitModel> newest) {
+        final CommitStore.Snapshot cached = branchCache.snapshot();
+        for (int i = 0; i < commits.size(); i++) {
+            final int position = cached.indexOf(commits.get(i).getSha());
+            if (position < 0) {
+                continue;
+            }
+            if (position > 0) {
+                logger.debug("History is rewritten, let's remove cache and start again");
+                branchCache.clear();
+                return completedFuture(null);
+            }
+            newest.addAll(commits.subList(0, i));
+            if (newest.isEmpty()) {
+                logger.debug("Cache is updated.");
+                return completedFuture(null);
             }
-            i++;
+            logger.debug("Synced {} new commits within {} pages.", newest.size(), pages);
+            branchCache.prepend(newest);
+            return completedFuture(null);
         }
+        newest.addAll(commits);
 
-        if (i == 30) {
+        if (commits.size() < MAX_PER_PAGE || pages == MAX_SYNC_PAGES) {
             logger.debug("Cache is too old, let's remove cache and start again");
-            this.cache.put(this.branch, new LinkedList<>());
-            return;
+            branchCache.clear();
+            return completedFuture(null);
         }
 
-        this.cache.get(this.branch).addAll(0, commits.subList(0, i));
+        return this.fetcher.fetchHistory(head, pages + 1, MAX_PER_PAGE)
+                .thenCompose(next -> syncNewest(branchCache, head, next, pages + 1, newest));
     }
 
     /**
      * Fetches the older commits until the given number of commit.
      * The strategy used here is the following:
      * <ol>
+     *     <li>Copy the commits the branch shares with another cached branch, see {@link #shareHistory}, they might
+     *     be enough.</li>
      *     <li>Retrieve the size of updated list of commits of the current branch.</li>
-     *     <li>Each page has 30 commits (except the last one that can be less), we can calculate in which page we are.</li>
-     *     <li>Subtract the page on the number of commits we want to get by the page of number of commit we already have
-     *     on the cache, we get the number of page of commit we want to fetch.</li>
-     *     <li>After that, we calculate the number of page we have to fetch to get the number of commits that we want.</li>
-     *     <li>Then, by knowing with page we have fetched and until which page we want to fetch, we have the list we wanted.</li>
+     *     <li>Choose the number of commits per page that needs the fewest pages, see {@link #perPage(int, int)}.</li>
+     *     <li>Each page has that number of commits (except the last one that can be less), so the page of the next
+     *     commit to fetch is the first page to fetch, and the page of the commit we are looking for is the last one.</li>
+     *     <li>The commits of the first page that already exist on the cache are skipped.</li>
+     *     <li>The missing pages are fetched concurrently and appended in order, see {@link PageFanOut}.</li>
+     *     <li>Copy the commits the branch now shares with another cached branch.</li>
      * </ol>
+     * Must be called from an update of the branch, see {@link BranchCache#update}.
      *
+     * @param branch      The branch name.
+     * @param branchCache The cache of the branch.
      * @param untilCommit The number of commit that we are looking for.
-     * @throws IOException          If http request fails sending data.
-     * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
+     * @return The completion of the fetch.
      */
-    private void fetchOldestCommits(final int untilCommit)
-            throws InterruptedException, URISyntaxException, ParseException, IOException {
-        final int commitsFetched = this.cache.get(this.branch).size();
-        final int currentPage = (int) Math.ceil((float) commitsFetched / 30);
+    private CompletableFuture<Void> fetchOldestCommits(final String branch, final BranchCache branchCache,
+                                                       final int untilCommit) {
+        shareHistory(branch, branchCache);
+        final int commitsFetched = branchCache.size();
+        if (commitsFetched >= untilCommit) {
+            return completedFuture(null);
+        }
+        final int perPage = perPage(commitsFetched, untilCommit);
 
-        final int pageAway = (int) Math.ceil((float) untilCommit / 30) - (int) Math.ceil((float) commitsFetched / 30);
+        // e.g., there are 37 on cache with 30 per page, so the first page to fetch is page 2.
+        final int firstPage = commitsFetched / perPage + 1;
+        final int lastPage = (int) (((long) untilCommit + perPage - 1) / perPage);
 
         // n elements that already exists on the cache, e.g., there are 37 on cache, so 7 elements of page 2 should be skipped.
-        int nElementsToSkip = commitsFetched % 30;
+        final int nElementsToSkip = commitsFetched % perPage;
 
-        int page = currentPage == 0 ? 1 : currentPage;
-        // if the current page is already full, i.e., 30, 60, 90, ..., we can just skip the current page
-        if (currentPage != 0 && commitsFetched % 30 == 0) {
-            page++;
-        }
-        for (; page <= currentPage + pageAway; page++) {
-            final URL url = new URL(
-                    format(
-                            "%s/commits?sha=%s&page=%d",
-                            this.projectUrl,
-                            this.branch,
-                            page
-                    )
-            );
-            final List<CommitModel> commits = getCommitsByUrl(url);
-            if (commits.size() == 0) {
-                logger.debug("No more commits for page {}", page);
-                return;
-            }
+        return fetchOldestPages(branch, branchCache, firstPage, lastPage, perPage, nElementsToSkip)
+                .thenRun(() -> shareHistory(branch, branchCache));
+    }
 
-            for (final CommitModel commit: commits) {
-                if (nElementsToSkip != 0) {
-                    nElementsToSkip--;
+    /**
+     * Copies the older commits that the given branch shares with another cached branch, so they are not fetched.
+     * The deepest position of the branch whose following commits are exactly the history of its commit is looked up
+     * on the other branches, see {@link CommitGraph#historyPositions}. When another branch has that commit on such a
+     * position too, both branches have the same commits from there, and the commits the other branch has beyond the
+     * end of this branch are appended. Only commit ids are copied, commits are stored once on {@link #graph}.
+     * Must be called from an update of the branch, see {@link BranchCache#update}.
+     *
+     * @param branch      The branch name.
+     * @param branchCache The cache of the branch.
+     */
+    private void shareHistory(final String branch, final BranchCache branchCache) {
+        final CommitStore.Snapshot commits = branchCache.snapshot();
+        final List<Integer> positions = this.graph.historyPositions(commits, commits.size());
+        for (int i = positions.size() - 1; i >= 0; i--) {
+            final int position = positions.get(i);
+            final int id = commits.id(position);
+            for (final Map.Entry<String, BranchCache> other : this.cache.entrySet()) {
+                if (other.getValue() == branchCache) {
+                    continue;
+                }
+                final CommitStore.Snapshot shared = other.getValue().snapshot();
+                final int sharedPosition = shared.positionOf(id);
+                final int from = sharedPosition + commits.size() - position;
+                if (sharedPosition < 0 || from >= shared.size()
+                        || !this.graph.isHistoryPosition(shared, sharedPosition)) {
                     continue;
                 }
-                this.cache.get(this.branch).add(commit);
+                logger.debug("Branch {} shares {} commits with branch {}.", branch, shared.size() - from,
+                        other.getKey());
+                branchCache.append(shared.subList(from, shared.size()));
+                return;
             }
         }
     }
 
     /**
-     * Retrieves {@link List} of {@link CommitModel}. The list will be 30 Commits, unless there is less than 30 commits
-     * or the given page has less than 30 commits which is the last page.
+     * Chooses the number of commits per page to fetch the commits from {@code commitsFetched} until
+     * {@code untilCommit}. It is the one that needs the fewest pages, i.e., round trips and rate limit, and then the
+     * one that transfers the fewest commits. E.g., from 0 until 37 is a single page of 37 commits, from 55 until 65 is
+     * page 2 of 33 commits, and from 195 until 205 is page 7 of 30 commits rather than pages 2 and 3 of 100 commits.
      *
-     * @param url The {@link URL} used for the request.
-     * @return {@link List} of {@link CommitModel}.
-     * @throws IOException          If http request fails sending data.
-     * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
+     * @param commitsFetched The number of commits on the cache.
+     * @param untilCommit    The number of commit that we are looking for.
+     * @return The number of commits per page, between 30 and {@link #MAX_PER_PAGE}.
      */
-    private List<CommitModel> getCommitsByUrl(final URL url)
-            throws IOException, InterruptedException, URISyntaxException, ParseException {
-
-        final List<CommitModel> list = new LinkedList<>();
-
-        final HttpRequest request = HttpRequest.newBuilder()
-                .uri(url.toURI())
-                .build();
-
-        final HttpResponse<String> response = client.send(request,
-                HttpResponse.BodyHandlers.ofString());
-        final JSONParser parser = new JSONParser();
-
-        logger.debug("Parsing the message body: {}", response.body());
-        final JSONArray array = (JSONArray) parser.parse(response.body());
-
-        for (final Object object: array){
-            final JSONObject obj = (JSONObject) object;
-            logger.debug("Creating for object: {}", obj.toJSONString());
-
-            final CommitModel.Builder builder = new CommitModel.Builder();
-            builder.sha((String) obj.getOrDefault("sha", "n/a"));
-
-            final JSONObject commit = (JSONObject) obj.get("commit");
-            builder.message((String) commit.getOrDefault("message", "n/a"));
-            final JSONObject committer = (JSONObject) commit.get("committer");
-
-            builder.author((String) committer.getOrDefault("name", "n/a"));
-            builder.date((String) committer.getOrDefault("date", "n/a"));
-
-            list.add(builder.build());
+    static int perPage(final int commitsFetched, final int untilCommit) {
+        int bestPerPage = MAX_PER_PAGE;
+        long bestPages = Long.MAX_VALUE;
+        long bestTransferred = Long.MAX_VALUE;
+        for (int perPage = MAX_PER_PAGE; perPage >= MIN_PER_PAGE; perPage--) {
+            final long pages = ((long) untilCommit + perPage - 1) / perPage - commitsFetched / perPage;
+            final long transferred = pages * perPage;
+            if (pages < bestPages || (pages == bestPages && transferred <= bestTransferred)) {
+                bestPerPage = perPage;
+                bestPages = pages;
+                bestTransferred = transferred;
+            }
         }
-
-        return list;
+        return bestPerPage;
     }
 
     /**
-     * Gets the {@link JSONObject} from the given URL.
+     * Fetches the given range of pages concurrently, then appends them in order to the cache of the branch.
      *
-     * @param url The {@link URL} used for the request.
-     * @return The {@link JSONObject} form request.
-     * @throws IOException          If http request fails sending data.
-     * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
+     * @param branch          The branch name.
+     * @param branchCache     The cache of the branch.
+     * @param firstPage       The first page to fetch.
+     * @param lastPage        The last page to fetch.
+     * @param perPage         The number of commits per page.
+     * @param nElementsToSkip The number of elements of the first page that already exist on the cache.
+     * @return The completion of the fetch.
      */
-    private JSONObject getJsonObjectByUrl(final URL url)
-            throws IOException, InterruptedException, URISyntaxException, ParseException {
-
-        final HttpRequest request = HttpRequest.newBuilder()
-                .uri(url.toURI())
-                .build();
+    private CompletableFuture<Void> fetchOldestPages(final String branch, final BranchCache branchCache,
+                                                     final int firstPage, final int lastPage, final int perPage,
+                                                     final int nElementsToSkip) {
+        final CommitStore.Snapshot cached = branchCache.snapshot();
+        final String head = cached.isEmpty() ? null : cached.get(0).getSha();
+        final IntFunction<CompletableFuture<List<CommitModel>>> fetcher =
+                page -> this.fetcher.fetchPage(branch, head, page, perPage);
+
+        return PageFanOut.fetch(firstPage, lastPage, perPage, MAX_PAGES_IN_FLIGHT, fetcher).thenAccept(pages -> {
+            if (pages.size() < lastPage - firstPage + 1) {
+                logger.debug("No more commits after page {}", firstPage + pages.size() - 1);
+            }
 
-        final HttpResponse<String> response = this.client.send(request,
-                HttpResponse.BodyHandlers.ofString());
-        final JSONParser parser = new JSONParser();
+            final List<CommitModel> commits = new ArrayList<>();
+            int skip = nElementsToSkip;
+            for (final List<CommitModel> page : pages) {
+                commits.addAll(page.subList(Math.min(skip, page.size()), page.size()));
+                skip = 0;
+            }
+            // Publishes all pages at once, readers see either all pages or none of them.
+            branchCache.append(commits);
+        });
+    }
 
-        return (JSONObject) parser.parse(response.body());
+    /**
+     * Gets the JSON object from the given URL, the request is conditional since projects and branches seldom change.
+     * The future completes exceptionally if the message body is not a JSON object.
+     *
+     * @param uri The {@link URI} used for the request.
+     * @return The {@link JsonNode} form request.
+     */
+    private CompletableFuture<JsonNode> getJsonObjectByUrl(final URI uri) {
+        return this.client.getConditional(uri, Priority.INTERACTIVE, CommitParser::parseObject);
     }
 }
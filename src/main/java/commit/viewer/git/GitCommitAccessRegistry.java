@@ -0,0 +1,254 @@
+package commit.viewer.git;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import commit.viewer.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Singleton registry that keeps one {@link GitCommitAccess} per remote repository, so that several repositories
+ * can be served at the same time without evicting each other caches. Repositories on the local file system, given by
+ * a {@code file:} URL, are kept as {@link LocalCommitAccess}. HTTP clients may only read local repositories under
+ * {@link #LOCAL_ROOT}, while the command line may read any of them.
+ * <p>
+ * A single background thread keeps the branches used recently fresh, see {@link GitCommitAccess#refreshUsedBranches()},
+ * so requests of those branches are answered from the cache without waiting for Github API.
+ * <p>
+ * The size of the caches of the started projects is read on each scrape of {@link Metrics}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public enum GitCommitAccessRegistry {
+
+    INSTANCE;
+
+    private static final Logger logger = LoggerFactory.getLogger(GitCommitAccessRegistry.class);
+
+    private static final Metrics.Gauge cachedCommits = Metrics.INSTANCE.gauge(
+            "commit_viewer_cached_commits",
+            "Commits held by the cache of each branch.",
+            "repo", "branch"
+    );
+
+    private static final Metrics.Gauge cacheBytes = Metrics.INSTANCE.gauge(
+            "commit_viewer_cache_bytes",
+            "Estimated heap used by the cached commits of each repository.",
+            "repo"
+    );
+
+    /**
+     * The directory local repositories given by HTTP clients must be in, set by {@code commit.viewer.localRoot}
+     * system property. If not set, HTTP clients cannot read local repositories.
+     */
+    private final static String LOCAL_ROOT = System.getProperty("commit.viewer.localRoot");
+
+    final static Pattern regex = Pattern.compile("^http[s]?://github\\.com/([A-Za-z0-9]\\w+)/([A-Za-z0-9]\\w+).git$");
+
+    /**
+     * The client shared by all repositories, used to make request to Github API.
+     */
+    private final GitHubClient client = new GitHubClient(HttpClient.newHttpClient(), GitHubClient.TOKEN);
+
+    /**
+     * The started projects, keyed by {@code owner/repository}. A project that is being started is also kept, so
+     * concurrent requests of the same project share a single validation.
+     */
+    private final ConcurrentMap<String, CompletableFuture<GitCommitAccess>> projects = new ConcurrentHashMap<>();
+
+    /**
+     * The opened local repositories, keyed by their absolute path.
+     */
+    private final ConcurrentMap<Path, LocalCommitAccess> localProjects = new ConcurrentHashMap<>();
+
+    /**
+     * The scheduler of background refreshes.
+     */
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("commit-viewer-refresher").setDaemon(true).build()
+    );
+
+    GitCommitAccessRegistry() {
+        final long period = TimeUnit.SECONDS.toMillis(GitCommitAccess.FRESHNESS_SECONDS) / 2;
+        this.refresher.scheduleWithFixedDelay(this::refreshProjects, period, period, TimeUnit.MILLISECONDS);
+        Metrics.INSTANCE.onScrape(this::collectMetrics);
+    }
+
+    /**
+     * Sets the cache gauges of the started projects.
+     */
+    private void collectMetrics() {
+        cachedCommits.clear();
+        cacheBytes.clear();
+        this.projects.forEach((key, started) -> {
+            if (!started.isDone() || started.isCompletedExceptionally() || started.join() == null) {
+                return;
+            }
+            final GitCommitAccess project = started.join();
+            project.cache.forEach((branch, branchCache) -> cachedCommits.set(branchCache.size(), key, branch));
+            cacheBytes.set(project.estimatedBytes(), key);
+        });
+    }
+
+    /**
+     * Refreshes the branches used recently of every started project.
+     */
+    private void refreshProjects() {
+        for (final CompletableFuture<GitCommitAccess> started : this.projects.values()) {
+            if (!started.isDone() || started.isCompletedExceptionally()) {
+                continue;
+            }
+            final GitCommitAccess project = started.join();
+            if (project == null) {
+                continue;
+            }
+            try {
+                project.refreshUsedBranches();
+            } catch (final RuntimeException e) {
+                // An exception would cancel next refreshes.
+                logger.warn("Fail to refresh project {}/{}.", project.getOwner(), project.getRepository(), e);
+            }
+        }
+    }
+
+    /**
+     * Gets the project of the given clone URL, e.g., {@code https://github.com/shenggwang/commit_viewer.git}, or of the
+     * given local repository under {@link #LOCAL_ROOT}, e.g., {@code file:///home/user/commit_viewer}.
+     *
+     * @param url The clone URL.
+     * @return The started {@link CommitSource}, or {@code null} if the URL is invalid or the project does not exist. It
+     * fails with {@link RateLimitedException} if the project cannot be validated for the rate limit of Github API.
+     */
+    public CompletableFuture<CommitSource> getProjectByURL(final String url) {
+        return getProjectByURL(url, false);
+    }
+
+    /**
+     * Gets the project of the given clone URL, see {@link #getProjectByURL(String)}.
+     *
+     * @param url          The clone URL.
+     * @param anyLocalPath Whether a local repository may be anywhere on the file system, i.e., the URL is given by the
+     *                     user running the server rather than by an HTTP client.
+     * @return The started {@link CommitSource}, or {@code null} if the URL is invalid or the project does not exist.
+     */
+    public CompletableFuture<CommitSource> getProjectByURL(final String url, final boolean anyLocalPath) {
+        if (url == null) {
+            return completedFuture(null);
+        }
+
+        if (url.startsWith("file:")) {
+            return completedFuture(getLocalProject(url, anyLocalPath));
+        }
+
+        final Matcher matcher = regex.matcher(url);
+        if (matcher.find()) {
+            final String owner = matcher.group(1);
+            final String repository = matcher.group(2);
+            return getProject(owner, repository).<CommitSource>thenApply(project -> project).exceptionally(e -> {
+                final RateLimitedException limited = RateLimitedException.causeOf(e);
+                if (limited != null) {
+                    throw limited;
+                }
+                logger.debug("Fail to start project.", e);
+                return null;
+            });
+        }
+        return completedFuture(null);
+    }
+
+    /**
+     * Gets the local repository of the given {@code file:} URL. Opening a repository only reads its {@code HEAD} and
+     * lists its packs, so it is done on the calling thread. Paths are compared once symbolic links are resolved, so a
+     * link under {@link #LOCAL_ROOT} does not give access to another directory.
+     *
+     * @param url          The {@code file:} URL.
+     * @param anyLocalPath Whether the repository may be outside of {@link #LOCAL_ROOT}.
+     * @return The {@link LocalCommitAccess}, or {@code null} if the URL is not a git repository or is not allowed.
+     */
+    private LocalCommitAccess getLocalProject(final String url, final boolean anyLocalPath) {
+        if (!anyLocalPath && LOCAL_ROOT == null) {
+            logger.debug("Local project {} is refused, commit.viewer.localRoot is not set.", url);
+            return null;
+        }
+        try {
+            final Path path = Paths.get(URI.create(url)).toRealPath();
+            if (!anyLocalPath && !path.startsWith(Paths.get(LOCAL_ROOT).toRealPath())) {
+                logger.debug("Local project {} is refused, it is not under commit.viewer.localRoot.", url);
+                return null;
+            }
+            final LocalCommitAccess existing = this.localProjects.get(path);
+            if (existing != null) {
+                return existing;
+            }
+            final LocalCommitAccess opened = LocalCommitAccess.open(path);
+            final LocalCommitAccess previous = this.localProjects.putIfAbsent(path, opened);
+            return previous != null ? previous : opened;
+        } catch (final IOException | IllegalArgumentException e) {
+            logger.debug("Fail to open local project {}.", url, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the project of the given owner and repository. The repository is only validated against Github API the
+     * first time it is requested, later calls are served from the registry.
+     *
+     * @param owner      The owner name.
+     * @param repository The repository name.
+     * @return The started {@link GitCommitAccess}, or {@code null} if the project does not exist.
+     */
+    public CompletableFuture<GitCommitAccess> getProject(final String owner, final String repository) {
+        final String key = format("%s/%s", owner, repository);
+        final CompletableFuture<GitCommitAccess> existing = this.projects.get(key);
+        if (existing != null) {
+            logger.debug("The project of owner {} with repository {} is already started.", owner, repository);
+            return existing;
+        }
+
+        final CompletableFuture<GitCommitAccess> started = new CompletableFuture<>();
+        final CompletableFuture<GitCommitAccess> previous = this.projects.putIfAbsent(key, started);
+        if (previous != null) {
+            return previous;
+        }
+
+        final GitCommitAccess project = new GitCommitAccess(this.client, owner, repository);
+        project.start().whenComplete((exists, e) -> {
+            if (e != null || !exists) {
+                // Does not keep failures, so the project can be requested again.
+                this.projects.remove(key, started);
+            }
+            if (e != null) {
+                started.completeExceptionally(e);
+                return;
+            }
+            started.complete(exists ? project : null);
+        });
+        return started;
+    }
+
+    /**
+     * Lists the started Github projects.
+     *
+     * @return {@link Set} of {@code owner/repository}.
+     */
+    public Set<String> listProjects() {
+        return this.projects.keySet();
+    }
+}
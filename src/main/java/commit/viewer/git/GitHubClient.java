@@ -0,0 +1,343 @@
+package commit.viewer.git;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import commit.viewer.git.UpstreamScheduler.Priority;
+import commit.viewer.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * The client used to make requests to Github API.
+ * <p>
+ * Conditional requests keep the {@code ETag} and {@code Last-Modified} of each response together with its parsed
+ * body, and send them back on the next request of the same URL. When Github answers {@code 304 Not Modified} the
+ * kept body is returned without parsing anything, and the request does not count against the rate limit.
+ * <p>
+ * Requests are single-flight: while a request of a URL is in flight, any other request of the same URL and priority
+ * shares its pending response instead of sending a new one, so concurrent callers cost a single request to Github API.
+ * Posts, i.e., GraphQL queries, are shared by URL and body.
+ * <p>
+ * Requests are authenticated when a token is given, which GraphQL API requires. Several tokens can be given, their
+ * budgets are pooled.
+ * <p>
+ * Requests are sent by {@link UpstreamScheduler}, within the rate limits of Github API and by priority, and a request
+ * refused by Github for its rate limit fails with {@link RateLimitedException}. Requests of the same URL only share
+ * their response if they have the same priority, so an interactive request neither waits behind background ones nor
+ * is refused to keep the reserve of the rate limit.
+ * <p>
+ * The latency of each request is recorded by call type, see {@link #callType(URI)}, and the rate limit left by each
+ * response, see {@link Metrics}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class GitHubClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubClient.class);
+
+    /**
+     * The maximum number of responses kept for conditional requests, can be set by
+     * {@code commit.viewer.maxConditionalResponses} system property.
+     */
+    private static final int MAX_CONDITIONAL_RESPONSES = Integer.getInteger("commit.viewer.maxConditionalResponses", 10000);
+
+    private static final int NOT_MODIFIED = 304;
+
+    /**
+     * The token sent on every request, can be set by {@code commit.viewer.githubToken} system property, several tokens
+     * are separated by commas.
+     */
+    static final String TOKEN = System.getProperty("commit.viewer.githubToken");
+
+    private static final Metrics.Histogram upstreamLatency = Metrics.INSTANCE.histogram(
+            "commit_viewer_upstream_request_seconds",
+            "Latency of Github API requests until the response headers, by call type and status.",
+            "type", "status"
+    );
+
+    private static final Metrics.Gauge rateLimitRemaining = Metrics.INSTANCE.gauge(
+            "commit_viewer_github_rate_limit_remaining",
+            "Requests left in the current Github API rate limit window, as of the last response.",
+            "resource"
+    );
+
+    /**
+     * The HTTP client, used to make request to Github API.
+     */
+    private final HttpClient client;
+
+    /**
+     * The scheduler of requests, which also holds the tokens.
+     */
+    private final UpstreamScheduler scheduler;
+
+    /**
+     * The last validated response of each URL requested conditionally.
+     */
+    private final Cache<URI, Validated> validated = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CONDITIONAL_RESPONSES)
+            .build();
+
+    /**
+     * The pending response of each URL in flight, or of each URL and body for posts, by priority, removed once the
+     * response is handled. An interactive request never joins a background one, which may wait behind the throttling
+     * of background requests or be refused to keep the reserve of the rate limit.
+     */
+    private final ConcurrentMap<Object, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    GitHubClient(final HttpClient client) {
+        this(client, (String) null);
+    }
+
+    GitHubClient(final HttpClient client, final String tokens) {
+        this(client, new UpstreamScheduler(tokens == null ? List.of() : Arrays.stream(tokens.split(","))
+                .map(String::trim)
+                .filter(token -> !token.isEmpty())
+                .collect(Collectors.toList())));
+    }
+
+    GitHubClient(final HttpClient client, final UpstreamScheduler scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Checks whether requests are authenticated.
+     *
+     * @return {@code true} if a token is sent on every request.
+     */
+    boolean isAuthenticated() {
+        return this.scheduler.isAuthenticated();
+    }
+
+    /**
+     * Requests the given URL. The given parser must always be the same for the same URL, since the parsed body is
+     * shared with concurrent requests of the URL.
+     *
+     * @param uri      The {@link URI} used for the request.
+     * @param priority The priority of the request.
+     * @param parser   The parser of the message body stream.
+     * @param <T>      The type of the parsed body.
+     * @return The parsed body.
+     */
+    <T> CompletableFuture<T> get(final URI uri, final Priority priority, final Function<InputStream, T> parser) {
+        return singleFlight(List.of(priority, uri), () -> send(uri, HttpRequest.newBuilder(uri), priority)
+                .thenApply(response -> parser.apply(response.body())));
+    }
+
+    /**
+     * Posts the given JSON body to the given URL. The given parser must always be the same for the same URL and body.
+     *
+     * @param uri      The {@link URI} used for the request.
+     * @param body     The JSON message body.
+     * @param priority The priority of the request.
+     * @param parser   The parser of the response message body stream.
+     * @param <T>      The type of the parsed body.
+     * @return The parsed body.
+     */
+    <T> CompletableFuture<T> post(final URI uri, final String body, final Priority priority,
+                                  final Function<InputStream, T> parser) {
+        return singleFlight(List.of(priority, uri, body), () -> {
+            final HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body));
+
+            return send(uri, request, priority).thenApply(response -> parser.apply(response.body()));
+        });
+    }
+
+    /**
+     * Sends the given request once the scheduler allows it, with the token it gives, and records its latency and the
+     * rate limit left.
+     *
+     * @param uri      The {@link URI} of the request.
+     * @param request  The request, without authorization.
+     * @param priority The priority of the request.
+     * @return The response, whose body is not read yet, or fails with {@link RateLimitedException}.
+     */
+    private CompletableFuture<HttpResponse<InputStream>> send(final URI uri, final HttpRequest.Builder request,
+                                                              final Priority priority) {
+        final String type = callType(uri);
+        final String resource = UpstreamScheduler.resource(type);
+        return this.scheduler.acquire(priority, resource).thenCompose(credential -> {
+            if (credential.token != null) {
+                request.header("Authorization", "bearer " + credential.token);
+            }
+            final long startTime = System.nanoTime();
+            return this.client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                    .whenComplete((response, e) -> {
+                        final String status = response != null ? Integer.toString(response.statusCode()) : "error";
+                        upstreamLatency.observeNanos(System.nanoTime() - startTime, type, status);
+                        if (response == null) {
+                            return;
+                        }
+                        final String remaining = response.headers().firstValue("X-RateLimit-Remaining").orElse(null);
+                        if (remaining != null) {
+                            try {
+                                rateLimitRemaining.set(Long.parseLong(remaining),
+                                        response.headers().firstValue("X-RateLimit-Resource").orElse("core"));
+                            } catch (final NumberFormatException ignored) {
+                                logger.debug("Invalid rate limit {}.", remaining);
+                            }
+                        }
+                    })
+                    .thenApply(response -> {
+                        final RateLimitedException limited = this.scheduler.onResponse(credential, resource,
+                                response.statusCode(), response.headers());
+                        if (limited != null) {
+                            logger.warn("Github API rate limit exceeded, retry in {} seconds.",
+                                    limited.getRetryAfterSeconds());
+                            close(response.body());
+                            throw limited;
+                        }
+                        return response;
+                    });
+        });
+    }
+
+    /**
+     * Gets the type of call of the given URL, i.e., {@code repo}, {@code branch}, {@code commits} for REST API URLs
+     * under {@code /repos/owner/repository}, {@code graphql} for GraphQL API, or {@code other}.
+     *
+     * @param uri The {@link URI} of the request.
+     * @return The call type.
+     */
+    static String callType(final URI uri) {
+        final String path = uri.getPath() != null ? uri.getPath() : "";
+        if (path.endsWith("/graphql")) {
+            return "graphql";
+        }
+        final String[] segments = path.replaceFirst("^/", "").split("/");
+        if (segments.length < 3 || !segments[0].equals("repos")) {
+            return "other";
+        }
+        if (segments.length == 3) {
+            return "repo";
+        }
+        switch (segments[3]) {
+            case "branches":
+                return "branch";
+            case "commits":
+                return "commits";
+            default:
+                return "other";
+        }
+    }
+
+    /**
+     * Requests the given URL conditionally, i.e., the body of the previous response is returned if it is not modified.
+     * The given parser must always be the same for the same URL.
+     *
+     * @param uri      The {@link URI} used for the request.
+     * @param priority The priority of the request.
+     * @param parser   The parser of the message body stream.
+     * @param <T>      The type of the parsed body.
+     * @return The parsed body.
+     */
+    <T> CompletableFuture<T> getConditional(final URI uri, final Priority priority,
+                                            final Function<InputStream, T> parser) {
+        return singleFlight(List.of(priority, uri), () -> sendConditional(uri, priority, parser));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> sendConditional(final URI uri, final Priority priority,
+                                                     final Function<InputStream, T> parser) {
+        final Validated previous = this.validated.getIfPresent(uri);
+
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+        if (previous != null && previous.etag != null) {
+            builder.header("If-None-Match", previous.etag);
+        } else if (previous != null && previous.lastModified != null) {
+            builder.header("If-Modified-Since", previous.lastModified);
+        }
+
+        return send(uri, builder, priority).thenApply(response -> {
+            if (response.statusCode() == NOT_MODIFIED && previous != null) {
+                logger.debug("Not modified {}.", uri);
+                close(response.body());
+                return (T) previous.body;
+            }
+
+            final T body = parser.apply(response.body());
+            final String etag = response.headers().firstValue("ETag").orElse(null);
+            final String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (etag != null || lastModified != null) {
+                this.validated.put(uri, new Validated(etag, lastModified, body));
+            }
+            return body;
+        });
+    }
+
+    /**
+     * Shares the pending response of the given request if it is in flight, otherwise starts the given request.
+     *
+     * @param key     The key of the request, i.e., its priority and {@link URI}, and its body for posts.
+     * @param request The supplier that starts the request.
+     * @param <T>     The type of the parsed body.
+     * @return The parsed body.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> singleFlight(final Object key, final Supplier<CompletableFuture<T>> request) {
+        final CompletableFuture<T> pending = new CompletableFuture<>();
+        final CompletableFuture<?> existing = this.inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            logger.debug("Joined request in flight {}.", key);
+            return (CompletableFuture<T>) existing;
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (final RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((body, e) -> {
+            // Removed before completing, so a caller woken by the response never joins a finished request.
+            this.inFlight.remove(key, pending);
+            if (e != null) {
+                pending.completeExceptionally(e);
+                return;
+            }
+            pending.complete(body);
+        });
+        return pending;
+    }
+
+    private static void close(final InputStream body) {
+        try {
+            body.close();
+        } catch (final IOException e) {
+            logger.debug("Fail to close message body.", e);
+        }
+    }
+
+    /**
+     * A parsed response together with its validators.
+     */
+    private static final class Validated {
+        private final String etag;
+        private final String lastModified;
+        private final Object body;
+
+        private Validated(final String etag, final String lastModified, final Object body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package commit.viewer.git;
+
+/**
+ * An object of a local repository, i.e., its type and its inflated content without the loose object header.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+class GitObject {
+
+    /**
+     * The object type, i.e., {@code commit}, {@code tree}, {@code blob} or {@code tag}.
+     */
+    final String type;
+
+    final byte[] content;
+
+    GitObject(final String type, final byte[] content) {
+        this.type = type;
+        this.content = content;
+    }
+}
@@ -0,0 +1,146 @@
+package commit.viewer.git;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import commit.viewer.git.UpstreamScheduler.Priority;
+import commit.viewer.model.CommitModel;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.String.format;
+
+/**
+ * {@link CommitFetcher} of Github GraphQL API, i.e., the {@code history} connection of a commit. Queries select only
+ * the fields a {@link CommitModel} is made of, so responses are a fraction of REST API ones and are parsed straight
+ * into commits, see {@link CommitParser#parseHistory}.
+ * <p>
+ * Pages are requested by cursor. The cursor of the history of a commit is the commit sha followed by the position of
+ * the last commit already seen, so the cursor of any page of the newest cached commit is known without fetching the
+ * previous pages, and pages are still fetched concurrently. GraphQL API has no conditional requests, so every refresh
+ * costs a request.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class GraphQLCommitFetcher implements CommitFetcher {
+
+    /**
+     * The GraphQL endpoint, can be set by {@code commit.viewer.graphqlUrl} system property, otherwise it is the one of
+     * {@link GitCommitAccess#GITHUB_URL}.
+     */
+    static final URI GRAPHQL_URL = URI.create(System.getProperty(
+            "commit.viewer.graphqlUrl",
+            GitCommitAccess.GITHUB_URL + "/graphql"
+    ));
+
+    /**
+     * The selected fields of each commit, the parents are used to share history between branches, see
+     * {@link CommitGraph}.
+     */
+    private static final String COMMIT_FIELDS = "nodes{oid message committer{name date} parents(first:100){nodes{oid}}}";
+
+    private static final String BRANCH_HISTORY = "query($owner:String!,$name:String!,$ref:String!,$first:Int!)"
+            + "{repository(owner:$owner,name:$name){ref(qualifiedName:$ref){target{...on Commit"
+            + "{history(first:$first){" + COMMIT_FIELDS + "}}}}}}";
+
+    private static final String COMMIT_HISTORY = "query($owner:String!,$name:String!,$oid:GitObjectID!,$first:Int!,"
+            + "$after:String){repository(owner:$owner,name:$name){object(oid:$oid){...on Commit"
+            + "{history(first:$first,after:$after){" + COMMIT_FIELDS + "}}}}}";
+
+    private static final String BRANCH_HEAD = "query($owner:String!,$name:String!,$ref:String!)"
+            + "{repository(owner:$owner,name:$name){ref(qualifiedName:$ref){target{oid}}}}";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final GitHubClient client;
+
+    private final URI url;
+
+    private final String owner;
+
+    private final String repository;
+
+    GraphQLCommitFetcher(final GitHubClient client, final URI url, final String owner, final String repository) {
+        this.client = client;
+        this.url = url;
+        this.owner = owner;
+        this.repository = repository;
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchNewest(final String branch) {
+        final ObjectNode variables = variables()
+                .put("ref", "refs/heads/" + branch)
+                .put("first", GitCommitAccess.MAX_PER_PAGE);
+        return this.client.post(this.url, body(BRANCH_HISTORY, variables), Priority.BACKGROUND,
+                CommitParser::parseHistory);
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchHistory(final String sha, final int page, final int perPage) {
+        return fetchHistory(sha, (page - 1) * perPage, perPage, Priority.BACKGROUND);
+    }
+
+    /**
+     * Fetches the given page counted from the given head, or from the current head of the branch if the branch is not
+     * cached yet. Concurrent pages share the request of the current head, see {@link GitHubClient#post}.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchPage(final String branch, final String head, final int page,
+                                                          final int perPage) {
+        if (head != null) {
+            return fetchHistory(head, (page - 1) * perPage, perPage, Priority.INTERACTIVE);
+        }
+        if (page == 1) {
+            final ObjectNode variables = variables()
+                    .put("ref", "refs/heads/" + branch)
+                    .put("first", perPage);
+            return this.client.post(this.url, body(BRANCH_HISTORY, variables), Priority.INTERACTIVE,
+                    CommitParser::parseHistory);
+        }
+        final ObjectNode variables = variables().put("ref", "refs/heads/" + branch);
+        return this.client.post(this.url, body(BRANCH_HEAD, variables), Priority.INTERACTIVE, CommitParser::parseObject)
+                .thenCompose(response -> {
+                    final String oid = response.path("data").path("repository").path("ref").path("target")
+                            .path("oid").asText(null);
+                    if (oid == null) {
+                        throw new IllegalArgumentException(format("The branch %s does not exist.", branch));
+                    }
+                    return fetchHistory(oid, (page - 1) * perPage, perPage, Priority.INTERACTIVE);
+                });
+    }
+
+    /**
+     * Fetches the history of the given commit, skipping the given number of commits.
+     *
+     * @param sha      The commit sha.
+     * @param skip     The number of commits skipped, including the given commit.
+     * @param first    The number of commits.
+     * @param priority The priority of the request, see {@link UpstreamScheduler}.
+     * @return {@link List} of {@link CommitModel}.
+     */
+    private CompletableFuture<List<CommitModel>> fetchHistory(final String sha, final int skip, final int first,
+                                                              final Priority priority) {
+        final ObjectNode variables = variables()
+                .put("oid", sha)
+                .put("first", first);
+        if (skip > 0) {
+            // The cursor of a history is the sha of its commit and the position of the last commit seen.
+            variables.put("after", format("%s %d", sha, skip - 1));
+        }
+        return this.client.post(this.url, body(COMMIT_HISTORY, variables), priority, CommitParser::parseHistory);
+    }
+
+    private ObjectNode variables() {
+        return mapper.createObjectNode()
+                .put("owner", this.owner)
+                .put("name", this.repository);
+    }
+
+    private static String body(final String query, final ObjectNode variables) {
+        final ObjectNode body = mapper.createObjectNode().put("query", query);
+        body.set("variables", variables);
+        return body.toString();
+    }
+}
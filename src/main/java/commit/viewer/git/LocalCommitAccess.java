@@ -0,0 +1,475 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+/**
+ * Class to retrieve Commits from a repository on the local file system, by reading its {@code .git} directory, i.e.,
+ * its refs, loose objects and packfiles, see {@link LocalObjects}. Neither Github API nor Git cli is used.
+ * <p>
+ * Commits of a branch are listed like {@code git log}, i.e., newest commit date first among the commits whose
+ * children are listed. The history is walked lazily, only as deep as the requested pages, and the walk is kept for
+ * the following pages until the branch moves.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class LocalCommitAccess implements CommitSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalCommitAccess.class);
+
+    private static final String HEADS = "refs/heads/";
+
+    /**
+     * The {@code .git} directory, or the repository itself if it is bare.
+     */
+    private final Path gitDirectory;
+
+    private final LocalObjects objects;
+
+    private final String defaultBranch;
+
+    /**
+     * The walks of the branches, restarted when the branch moves.
+     */
+    private final ConcurrentMap<String, History> histories = new ConcurrentHashMap<>();
+
+    private LocalCommitAccess(final Path gitDirectory, final LocalObjects objects, final String defaultBranch) {
+        this.gitDirectory = gitDirectory;
+        this.objects = objects;
+        this.defaultBranch = defaultBranch;
+    }
+
+    /**
+     * Opens the repository of the given directory.
+     *
+     * @param directory The working tree with a {@code .git} directory, or a bare repository.
+     * @return The {@link LocalCommitAccess}.
+     * @throws IOException if the directory is not a repository.
+     */
+    public static LocalCommitAccess open(final Path directory) throws IOException {
+        final Path dotGit = directory.resolve(".git");
+        final Path gitDirectory = Files.isDirectory(dotGit) ? dotGit : directory;
+        final Path head = gitDirectory.resolve("HEAD");
+        if (!Files.isRegularFile(head) || !Files.isDirectory(gitDirectory.resolve("objects"))) {
+            throw new IOException(format("%s is not a git repository.", directory));
+        }
+
+        final String target = Files.readString(head, UTF_8).trim();
+        // A detached HEAD is served as a branch named HEAD.
+        final String defaultBranch = target.startsWith("ref: " + HEADS)
+                ? target.substring("ref: ".length() + HEADS.length())
+                : "HEAD";
+        logger.debug("Open repository {} on branch {}.", gitDirectory, defaultBranch);
+        return new LocalCommitAccess(gitDirectory, new LocalObjects(gitDirectory.resolve("objects")), defaultBranch);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setBranch(final String branch) {
+        try {
+            return completedFuture(head(branch) != null);
+        } catch (final IOException e) {
+            logger.debug("Fail to set branch.", e);
+            return completedFuture(false);
+        }
+    }
+
+    @Override
+    public String getDefaultBranch() {
+        return this.defaultBranch;
+    }
+
+    /**
+     * Lists all branches of the repository, since local branches need no validation.
+     *
+     * @return {@link Set} of branch names.
+     */
+    @Override
+    public Set<String> listBranches() {
+        try {
+            return readBranches().keySet();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommits(final String branch) {
+        return getCommits(branch, 1, GitCommitAccess.DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommits(final String branch, final int page, final int size) {
+        return getCommits(branch, size, history -> Math.multiplyExact(page, size));
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommitsAfter(final String branch, final String sha,
+                                                                final int size) {
+        return getCommits(branch, size, history -> {
+            final int cursor = history.positionOf(sha);
+            return cursor < 0 ? -1 : Math.addExact(cursor + 1, size);
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> getCommitsBefore(final String branch, final String sha,
+                                                                 final int size) {
+        return getCommits(branch, size, history -> history.positionOf(sha));
+    }
+
+    /**
+     * Searches the commits of the given branch by scanning its history, since local commits are not indexed. The
+     * history is only walked until enough commits are found.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> searchCommits(final String branch, final CommitQuery query,
+                                                              final int size) {
+        try {
+            final History history = history(branch);
+            synchronized (history) {
+                return completedFuture(history.search(query, size));
+            }
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (final IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Gets the statistics of the whole history of the given branch, which is walked to the end once, the walk
+     * aggregates commits as they are listed, see {@link CommitStats}.
+     */
+    @Override
+    public CompletableFuture<CommitStatsModel> getStats(final String branch) {
+        try {
+            final History history = history(branch);
+            synchronized (history) {
+                history.walk(Integer.MAX_VALUE);
+                return completedFuture(history.stats.toModel());
+            }
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (final IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Gets the commits of the given branch until the given position, at most {@code size} of them, newest commit
+     * first.
+     *
+     * @param branch      The branch name.
+     * @param size        The maximum number of commits.
+     * @param untilCommit The resolver of the position after the last commit, {@code -1} if the cursor is not part of
+     *                    the branch.
+     * @return Immutable {@link List} of {@link CommitModel}.
+     */
+    private CompletableFuture<List<CommitModel>> getCommits(final String branch, final int size,
+                                                            final ToIntFunction<History> untilCommit) {
+        try {
+            final History history = history(branch);
+            synchronized (history) {
+                final int until = untilCommit.applyAsInt(history);
+                if (until < 0) {
+                    throw new IllegalArgumentException(format("The commit is not part of branch %s.", branch));
+                }
+                return completedFuture(history.range(Math.max(0, until - size), until));
+            }
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (final UncheckedIOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Gets the history of the given branch, a new one if the branch moved.
+     *
+     * @param branch The branch name.
+     * @return The {@link History}.
+     * @throws IOException if refs cannot be read.
+     * @throws IllegalArgumentException if the branch does not exist.
+     */
+    private History history(final String branch) throws IOException {
+        final String head = head(branch);
+        if (head == null) {
+            throw new IllegalArgumentException(format("The branch %s does not exist.", branch));
+        }
+        return this.histories.compute(
+                branch,
+                (name, previous) -> previous != null && previous.head.equals(head) ? previous : new History(head)
+        );
+    }
+
+    /**
+     * Resolves the head commit of the given branch, a loose ref wins over a packed one since it is newer.
+     *
+     * @param branch The branch name.
+     * @return The sha of the head commit, or {@code null} if the branch does not exist.
+     * @throws IOException if refs cannot be read.
+     */
+    private String head(final String branch) throws IOException {
+        if ("HEAD".equals(branch) && "HEAD".equals(this.defaultBranch)) {
+            return Files.readString(this.gitDirectory.resolve("HEAD"), UTF_8).trim();
+        }
+        if (branch == null || branch.isEmpty() || branch.contains("..") || branch.startsWith("/")) {
+            return null;
+        }
+        final Path loose = this.gitDirectory.resolve(HEADS + branch);
+        if (Files.isRegularFile(loose)) {
+            return Files.readString(loose, UTF_8).trim();
+        }
+        return readPackedBranches().get(branch);
+    }
+
+    /**
+     * Reads the branches, both loose and packed.
+     *
+     * @return Sorted {@link Map} of branch name to the sha of its head commit.
+     */
+    private Map<String, String> readBranches() throws IOException {
+        final Map<String, String> branches = new TreeMap<>(readPackedBranches());
+        final Path heads = this.gitDirectory.resolve(HEADS);
+        if (Files.isDirectory(heads)) {
+            try (Stream<Path> files = Files.walk(heads)) {
+                for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    final String name = heads.relativize(file).toString();
+                    branches.put(name.replace(file.getFileSystem().getSeparator(), "/"),
+                            Files.readString(file, UTF_8).trim());
+                }
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * Reads the branches of {@code packed-refs}, i.e., lines of sha and ref name, skipping the header and peeled tags.
+     */
+    private Map<String, String> readPackedBranches() throws IOException {
+        final Map<String, String> branches = new HashMap<>();
+        final Path packedRefs = this.gitDirectory.resolve("packed-refs");
+        if (!Files.isRegularFile(packedRefs)) {
+            return branches;
+        }
+        for (final String line : Files.readAllLines(packedRefs, UTF_8)) {
+            if (line.startsWith("#") || line.startsWith("^")) {
+                continue;
+            }
+            final int separator = line.indexOf(' ');
+            if (separator > 0 && line.startsWith(HEADS, separator + 1)) {
+                branches.put(line.substring(separator + 1 + HEADS.length()).trim(), line.substring(0, separator));
+            }
+        }
+        return branches;
+    }
+
+    /**
+     * Reads the given commit, the committer is used as author and date like Github API.
+     *
+     * @param sha The commit sha.
+     * @return The {@link Commit}.
+     * @throws IOException if the object does not exist or is not a commit.
+     */
+    private Commit readCommit(final String sha) throws IOException {
+        final GitObject object = this.objects.read(sha);
+        if (!"commit".equals(object.type)) {
+            throw new IOException(format("Object %s is a %s, not a commit.", sha, object.type));
+        }
+
+        final String content = new String(object.content, UTF_8);
+        final List<String> parents = new ArrayList<>(1);
+        String committer = null;
+        long time = 0;
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                end = content.length();
+            }
+            if (end == start) {
+                // The empty line ends the headers, continuation lines of multi-line headers start with a space.
+                start = end + 1;
+                break;
+            }
+            final String line = content.substring(start, end);
+            if (line.startsWith("parent ")) {
+                parents.add(line.substring("parent ".length()));
+            } else if (line.startsWith("committer ")) {
+                // committer <name> <<email>> <epoch seconds> <timezone>
+                final int email = line.indexOf(" <");
+                final int date = line.lastIndexOf("> ");
+                committer = email < 0 ? null : line.substring("committer ".length(), email);
+                if (date >= 0) {
+                    final String[] fields = line.substring(date + 2).split(" ");
+                    time = Long.parseLong(fields[0]);
+                }
+            }
+            start = end + 1;
+        }
+
+        int end = content.length();
+        while (end > start && content.charAt(end - 1) == '\n') {
+            end--;
+        }
+        final CommitModel commit = new CommitModel.Builder()
+                .sha(sha)
+                .author(committer)
+                .date(Instant.ofEpochSecond(time).toString())
+                .message(start < end ? content.substring(start, end) : "")
+                .parents(parents)
+                .build();
+        return new Commit(commit, time);
+    }
+
+    /**
+     * A commit read but not listed yet, ordered by commit date then by the order it was read.
+     */
+    private static final class Commit {
+
+        private final CommitModel model;
+
+        private final long time;
+
+        private long order;
+
+        private Commit(final CommitModel model, final long time) {
+            this.model = model;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The history of a branch head walked so far, see {@code git log}. Access is synchronized on the instance.
+     */
+    private final class History {
+
+        private final String head;
+
+        private final List<CommitModel> commits = new ArrayList<>();
+
+        private final Map<String, Integer> positions = new HashMap<>();
+
+        /**
+         * The aggregates of the listed commits.
+         */
+        private final CommitStats stats = new CommitStats();
+
+        /**
+         * The commits whose children are listed.
+         */
+        private final PriorityQueue<Commit> pending = new PriorityQueue<>(
+                Comparator.<Commit>comparingLong(commit -> -commit.time).thenComparingLong(commit -> commit.order)
+        );
+
+        /**
+         * The commits listed or pending.
+         */
+        private final Set<String> seen = new HashSet<>();
+
+        private long order;
+
+        private History(final String head) {
+            this.head = head;
+            this.seen.add(head);
+        }
+
+        /**
+         * Walks the history until the given position is listed or the history ends.
+         */
+        private void walk(final int until) throws IOException {
+            if (this.commits.isEmpty() && this.pending.isEmpty()) {
+                push(readCommit(this.head));
+            }
+            while (this.commits.size() < until && !this.pending.isEmpty()) {
+                final CommitModel commit = this.pending.poll().model;
+                this.positions.put(commit.getSha(), this.commits.size());
+                this.commits.add(commit);
+                this.stats.add(commit);
+                for (final String parent : commit.getParents()) {
+                    if (this.seen.add(parent)) {
+                        push(readCommit(parent));
+                    }
+                }
+            }
+        }
+
+        private void push(final Commit commit) {
+            commit.order = this.order++;
+            this.pending.add(commit);
+        }
+
+        /**
+         * Finds the position of the given commit, walking the history until it is listed.
+         *
+         * @param sha The commit sha.
+         * @return The position, or {@code -1} if the commit is not part of the history.
+         */
+        private int positionOf(final String sha) {
+            try {
+                Integer position = this.positions.get(sha);
+                while (position == null && (this.commits.isEmpty() || !this.pending.isEmpty())) {
+                    walk(this.commits.size() + GitCommitAccess.DEFAULT_PAGE_SIZE);
+                    position = this.positions.get(sha);
+                }
+                return position == null ? -1 : position;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Finds the newest commits that match the given query, walking the history as far as needed.
+         */
+        private List<CommitModel> search(final CommitQuery query, final int size) throws IOException {
+            final List<CommitModel> found = new ArrayList<>();
+            for (int i = 0; found.size() < size; i++) {
+                if (i == this.commits.size()) {
+                    walk(i + GitCommitAccess.DEFAULT_PAGE_SIZE);
+                    if (i == this.commits.size()) {
+                        break;
+                    }
+                }
+                if (query.matches(this.commits.get(i))) {
+                    found.add(this.commits.get(i));
+                }
+            }
+            return List.copyOf(found);
+        }
+
+        /**
+         * Gets the listed commits between the given positions, walking the history as far as needed.
+         */
+        private List<CommitModel> range(final int from, final int until) throws IOException {
+            walk(until);
+            final int end = Math.min(until, this.commits.size());
+            return from >= end ? List.of() : List.copyOf(this.commits.subList(from, end));
+        }
+    }
+}
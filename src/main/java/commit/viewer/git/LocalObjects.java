@@ -0,0 +1,154 @@
+package commit.viewer.git;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The object database of a local repository, i.e., its loose objects and its packfiles. Objects are looked up on the
+ * packs first, as most objects of a repository are packed, then as loose objects.
+ * <p>
+ * Packs are listed once, and listed again only when an object is missing and the pack directory was modified since,
+ * as {@code git gc} might have packed it meanwhile. Packs already opened are kept rather than mapped again.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+class LocalObjects {
+
+    static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+    /**
+     * The {@code objects} directory.
+     */
+    private final Path directory;
+
+    /**
+     * The opened packs, keyed by their index file.
+     */
+    private volatile Map<Path, PackFile> packs = Map.of();
+
+    /**
+     * The modification time of the pack directory when packs were listed, {@code null} if it does not exist.
+     */
+    private FileTime packsModified;
+
+    /**
+     * Opens the object database of the given directory.
+     *
+     * @param directory The {@code objects} directory of the repository.
+     * @throws IOException if the packs cannot be opened.
+     */
+    LocalObjects(final Path directory) throws IOException {
+        this.directory = directory;
+        listPacks();
+    }
+
+    /**
+     * Lists the packs again if the pack directory was modified since they were listed. The modification time is read
+     * before listing, so a pack added meanwhile is listed on next call.
+     *
+     * @return {@code true} if packs were listed again.
+     * @throws IOException if a new pack cannot be opened.
+     */
+    private synchronized boolean listPacks() throws IOException {
+        final Path packDirectory = this.directory.resolve("pack");
+        final FileTime modified = Files.isDirectory(packDirectory) ? Files.getLastModifiedTime(packDirectory) : null;
+        if (this.packsModified != null && this.packsModified.equals(modified)) {
+            return false;
+        }
+        final Map<Path, PackFile> packs = new LinkedHashMap<>();
+        if (modified != null) {
+            try (DirectoryStream<Path> indexes = Files.newDirectoryStream(packDirectory, "pack-*.idx")) {
+                for (final Path index : indexes) {
+                    final PackFile opened = this.packs.get(index);
+                    packs.put(index, opened != null ? opened : new PackFile(index, this));
+                }
+            }
+        }
+        this.packs = packs;
+        this.packsModified = modified;
+        return true;
+    }
+
+    /**
+     * Reads the given object.
+     *
+     * @param sha The sha of 40 hexadecimal characters.
+     * @return The {@link GitObject}.
+     * @throws IOException if the object does not exist or cannot be read.
+     */
+    GitObject read(final String sha) throws IOException {
+        if (sha.length() != 40 || !HEX.canDecode(sha)) {
+            throw new IOException(format("Invalid object name %s.", sha));
+        }
+        return read(HEX.decode(sha));
+    }
+
+    /**
+     * Reads the given object.
+     *
+     * @param sha The binary sha.
+     * @return The {@link GitObject}.
+     * @throws IOException if the object does not exist or cannot be read.
+     */
+    GitObject read(final byte[] sha) throws IOException {
+        GitObject object = find(sha);
+        if (object == null && listPacks()) {
+            object = find(sha);
+        }
+        if (object == null) {
+            throw new NoSuchFileException(format("Object %s does not exist.", HEX.encode(sha)));
+        }
+        return object;
+    }
+
+    private GitObject find(final byte[] sha) throws IOException {
+        for (final PackFile pack : this.packs.values()) {
+            final long offset = pack.offsetOf(sha);
+            if (offset >= 0) {
+                return pack.read(offset);
+            }
+        }
+        final String name = HEX.encode(sha);
+        final Path loose = this.directory.resolve(name.substring(0, 2)).resolve(name.substring(2));
+        if (!Files.isRegularFile(loose)) {
+            return null;
+        }
+        return readLoose(loose);
+    }
+
+    /**
+     * Reads a loose object, i.e., a zlib stream of a {@code <type> <length>\0} header followed by the content.
+     */
+    private static GitObject readLoose(final Path loose) throws IOException {
+        try (InputStream input = new InflaterInputStream(Files.newInputStream(loose))) {
+            final byte[] data = input.readAllBytes();
+            int separator = 0;
+            while (separator < data.length && data[separator] != 0) {
+                separator++;
+            }
+            final String[] header = new String(data, 0, separator, US_ASCII).split(" ");
+            if (separator == data.length || header.length != 2
+                    || Integer.parseInt(header[1]) != data.length - separator - 1) {
+                throw new IOException(format("Corrupted loose object %s.", loose));
+            }
+            final byte[] content = new byte[data.length - separator - 1];
+            System.arraycopy(data, separator + 1, content, 0, content.length);
+            return new GitObject(header[0], content);
+        } catch (final NumberFormatException e) {
+            throw new IOException(format("Corrupted loose object %s.", loose), e);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package commit.viewer.git;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.lang.String.format;
+
+/**
+ * A packfile of a local repository with its version 2 index, see {@code gitformat-pack}. Both files are memory
+ * mapped, so objects are read without copying the pack into the heap, and the index is binary searched through its
+ * fan-out table. A single mapping is limited to 2 GiB, so the pack is mapped by windows of {@link #WINDOW_SIZE} and
+ * an object may span two windows. The index is mapped at once, it only reaches 2 GiB with about 70 million objects.
+ * <p>
+ * Deltas are resolved against their base, found by offset or by sha, and recently resolved bases are kept since
+ * consecutive commits are usually delta chains of each other.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+class PackFile {
+
+    /**
+     * The object types, as stored on object headers.
+     */
+    private static final int COMMIT = 1;
+    private static final int OFS_DELTA = 6;
+    private static final int REF_DELTA = 7;
+
+    /**
+     * The names of the object types, indexed by type.
+     */
+    private static final String[] TYPES = {null, "commit", "tree", "blob", "tag"};
+
+    private static final int IDX_MAGIC = 0xff744f63;
+    private static final int FANOUT = 8;
+    private static final int SHAS = FANOUT + 256 * 4;
+
+    /**
+     * The maximum number of resolved objects kept to be used as delta base.
+     */
+    private static final int MAX_BASES = 256;
+
+    /**
+     * The size of the windows the pack is mapped by.
+     */
+    static final int WINDOW_SIZE = 1 << 30;
+
+    private final Path path;
+
+    private final ByteBuffer index;
+
+    /**
+     * The windows of the pack, each of {@link #windowSize} bytes but the last one.
+     */
+    private final ByteBuffer[] windows;
+
+    private final int windowSize;
+
+    /**
+     * The number of objects of the pack.
+     */
+    private final int size;
+
+    /**
+     * The resolver of the bases given by sha, i.e., the objects of the whole repository.
+     */
+    private final LocalObjects objects;
+
+    private final Cache<Long, GitObject> bases = CacheBuilder.newBuilder().maximumSize(MAX_BASES).build();
+
+    /**
+     * Opens the pack of the given index.
+     *
+     * @param index   The {@code .idx} file, the pack is the {@code .pack} file next to it.
+     * @param objects The objects of the repository, used to resolve deltas whose base is given by sha.
+     * @throws IOException if the files cannot be mapped or the index is not a version 2 index.
+     */
+    PackFile(final Path index, final LocalObjects objects) throws IOException {
+        this(index, objects, WINDOW_SIZE);
+    }
+
+    PackFile(final Path index, final LocalObjects objects, final int windowSize) throws IOException {
+        final String name = index.getFileName().toString();
+        this.path = index.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack");
+        this.index = map(index);
+        this.windowSize = windowSize;
+        this.windows = mapWindows(this.path, windowSize);
+        this.objects = objects;
+        if (this.index.getInt(0) != IDX_MAGIC || this.index.getInt(4) != 2) {
+            throw new IOException(format("Unsupported pack index %s.", index));
+        }
+        this.size = this.index.getInt(FANOUT + 255 * 4);
+    }
+
+    private static MappedByteBuffer map(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static ByteBuffer[] mapWindows(final Path file, final int windowSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer[] windows = new ByteBuffer[(int) Math.max(1, (size + windowSize - 1) / windowSize)];
+            for (int i = 0; i < windows.length; i++) {
+                final long start = (long) i * windowSize;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+            }
+            return windows;
+        }
+    }
+
+    /**
+     * Gets the byte of the pack at the given offset.
+     */
+    private int byteAt(final long offset) {
+        return this.windows[(int) (offset / this.windowSize)].get((int) (offset % this.windowSize)) & 0xff;
+    }
+
+    /**
+     * Finds the offset of the given object in the pack.
+     *
+     * @param sha The binary sha.
+     * @return The offset, or {@code -1} if the object is not in this pack.
+     */
+    long offsetOf(final byte[] sha) {
+        final int first = sha[0] & 0xff;
+        int low = first == 0 ? 0 : this.index.getInt(FANOUT + (first - 1) * 4);
+        int high = this.index.getInt(FANOUT + first * 4) - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int compare = compare(SHAS + middle * 20, sha);
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                return offsetAt(middle);
+            }
+        }
+        return -1;
+    }
+
+    private int compare(final int position, final byte[] sha) {
+        for (int i = 0; i < 20; i++) {
+            final int compare = Integer.compare(this.index.get(position + i) & 0xff, sha[i] & 0xff);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the pack offset of the object at the given index position, large offsets are kept on a separate table.
+     */
+    private long offsetAt(final int position) {
+        final int offsets = SHAS + this.size * 24;
+        final int offset = this.index.getInt(offsets + position * 4);
+        if (offset >= 0) {
+            return offset;
+        }
+        return this.index.getLong(offsets + this.size * 4 + (offset & 0x7fffffff) * 8);
+    }
+
+    /**
+     * Reads the object at the given offset, resolving its deltas.
+     *
+     * @param offset The pack offset.
+     * @return The {@link GitObject}.
+     * @throws IOException if the object is corrupted or its base is missing.
+     */
+    GitObject read(final long offset) throws IOException {
+        long position = offset;
+        int header = byteAt(position++);
+        final int type = (header >> 4) & 7;
+        long length = header & 0x0f;
+        for (int shift = 4; (header & 0x80) != 0; shift += 7) {
+            header = byteAt(position++);
+            length |= (long) (header & 0x7f) << shift;
+        }
+
+        if (type == OFS_DELTA || type == REF_DELTA) {
+            final GitObject base;
+            if (type == OFS_DELTA) {
+                int c = byteAt(position++);
+                long distance = c & 0x7f;
+                while ((c & 0x80) != 0) {
+                    c = byteAt(position++);
+                    distance = ((distance + 1) << 7) | (c & 0x7f);
+                }
+                base = base(offset - distance);
+            } else {
+                final byte[] sha = new byte[20];
+                for (int i = 0; i < sha.length; i++) {
+                    sha[i] = (byte) byteAt(position++);
+                }
+                base = this.objects.read(sha);
+            }
+            return new GitObject(base.type, applyDelta(base.content, inflate(position, length)));
+        }
+        if (type < COMMIT || type >= TYPES.length) {
+            throw new IOException(format("Unknown object type %d at %d of %s.", type, offset, this.path));
+        }
+        return new GitObject(TYPES[type], inflate(position, length));
+    }
+
+    private GitObject base(final long offset) throws IOException {
+        try {
+            return this.bases.get(offset, () -> read(offset));
+        } catch (final ExecutionException e) {
+            throw new IOException(format("Fail to read delta base at %d of %s.", offset, this.path), e.getCause());
+        }
+    }
+
+    /**
+     * Inflates the zlib stream starting at the given position, it continues on the next window if needed.
+     */
+    private byte[] inflate(final long position, final long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException(format("Object at %d of %s is too large.", position, this.path));
+        }
+        final byte[] content = new byte[(int) length];
+        final Inflater inflater = new Inflater();
+        try {
+            int window = (int) (position / this.windowSize);
+            inflater.setInput(this.windows[window].duplicate().position((int) (position % this.windowSize)));
+            int inflated = 0;
+            while (inflated < content.length && !inflater.finished()) {
+                final int count = inflater.inflate(content, inflated, content.length - inflated);
+                if (count == 0 && inflater.needsInput() && window + 1 < this.windows.length) {
+                    inflater.setInput(this.windows[++window].duplicate());
+                    continue;
+                }
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != content.length) {
+                throw new IOException(format("Truncated object at %d of %s.", position, this.path));
+            }
+            return content;
+        } catch (final DataFormatException e) {
+            throw new IOException(format("Corrupted object at %d of %s.", position, this.path), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Applies the given delta, i.e., a sequence of copies from the base and inserts of new data.
+     */
+    private byte[] applyDelta(final byte[] base, final byte[] delta) throws IOException {
+        final int[] position = {0};
+        final long baseLength = varint(delta, position);
+        final long length = varint(delta, position);
+        if (baseLength != base.length || length > Integer.MAX_VALUE - 8) {
+            throw new IOException(format("Delta does not match its base on %s.", this.path));
+        }
+        final byte[] result = new byte[(int) length];
+        int written = 0;
+        int i = position[0];
+        try {
+            while (i < delta.length) {
+                final int op = delta[i++] & 0xff;
+                if ((op & 0x80) != 0) {
+                    int offset = 0;
+                    int count = 0;
+                    for (int bit = 0; bit < 4; bit++) {
+                        if ((op & (1 << bit)) != 0) {
+                            offset |= (delta[i++] & 0xff) << (bit * 8);
+                        }
+                    }
+                    for (int bit = 0; bit < 3; bit++) {
+                        if ((op & (0x10 << bit)) != 0) {
+                            count |= (delta[i++] & 0xff) << (bit * 8);
+                        }
+                    }
+                    if (count == 0) {
+                        count = 0x10000;
+                    }
+                    System.arraycopy(base, offset, result, written, count);
+                    written += count;
+                } else if (op != 0) {
+                    System.arraycopy(delta, i, result, written, op);
+                    i += op;
+                    written += op;
+                } else {
+                    throw new IOException(format("Invalid delta instruction on %s.", this.path));
+                }
+            }
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IOException(format("Corrupted delta on %s.", this.path), e);
+        }
+        if (written != result.length) {
+            throw new IOException(format("Truncated delta on %s.", this.path));
+        }
+        return result;
+    }
+
+    /**
+     * Reads the little-endian base 128 length of a delta header.
+     */
+    private static long varint(final byte[] data, final int[] position) {
+        long value = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = data[position[0]++] & 0xff;
+            value |= (long) (c & 0x7f) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return this.path.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package commit.viewer.git;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Fetches a range of pages concurrently, keeping at most a given number of requests in flight.
+ * <p>
+ * Pages are requested in order, a new page is requested as soon as a previous one completes. Once a page has less
+ * elements than the page size, it is the last page, hence no further page is requested. The result has the pages in
+ * order until the first empty or short page, so the caller can stitch them as if they were fetched one after the
+ * other.
+ *
+ * @param <T> The element type of a page.
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class PageFanOut<T> {
+
+    private final int firstPage;
+    private final int pageSize;
+    private final IntFunction<CompletableFuture<List<T>>> fetcher;
+
+    /**
+     * The pending results, one per page of the range.
+     */
+    private final List<CompletableFuture<List<T>>> results;
+
+    /**
+     * The index on {@link #results} of the next page to request.
+     */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Whether the last page of the history was already fetched.
+     */
+    private final AtomicBoolean lastPageFetched = new AtomicBoolean();
+
+    private PageFanOut(final int firstPage, final int lastPage, final int pageSize,
+                       final IntFunction<CompletableFuture<List<T>>> fetcher) {
+        this.firstPage = firstPage;
+        this.pageSize = pageSize;
+        this.fetcher = fetcher;
+        this.results = new ArrayList<>();
+        for (int page = firstPage; page <= lastPage; page++) {
+            this.results.add(new CompletableFuture<>());
+        }
+    }
+
+    /**
+     * Fetches the pages from {@code firstPage} to {@code lastPage}, both inclusive.
+     *
+     * @param firstPage   The first page to fetch.
+     * @param lastPage    The last page to fetch.
+     * @param pageSize    The number of elements of a full page.
+     * @param maxInFlight The maximum number of pages requested at the same time.
+     * @param fetcher     The function that requests a page by its number.
+     * @param <T>         The element type of a page.
+     * @return The fetched pages in order, it completes exceptionally if any needed page fails.
+     */
+    static <T> CompletableFuture<List<List<T>>> fetch(final int firstPage, final int lastPage, final int pageSize,
+                                                      final int maxInFlight,
+                                                      final IntFunction<CompletableFuture<List<T>>> fetcher) {
+        final PageFanOut<T> fanOut = new PageFanOut<>(firstPage, lastPage, pageSize, fetcher);
+        for (int i = 0; i < Math.min(maxInFlight, fanOut.results.size()); i++) {
+            fanOut.requestNext();
+        }
+        return fanOut.stitch();
+    }
+
+    /**
+     * Requests the next page of the range, if any.
+     */
+    private void requestNext() {
+        int index;
+        while ((index = this.next.getAndIncrement()) < this.results.size()) {
+            final CompletableFuture<List<T>> result = this.results.get(index);
+            if (this.lastPageFetched.get()) {
+                // There is nothing after the last page.
+                result.complete(new ArrayList<>());
+                continue;
+            }
+
+            this.fetcher.apply(this.firstPage + index).whenComplete((elements, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    if (elements.size() < this.pageSize) {
+                        this.lastPageFetched.set(true);
+                    }
+                    result.complete(elements);
+                }
+                requestNext();
+            });
+            return;
+        }
+    }
+
+    /**
+     * Joins the pages in order until the first empty or short page.
+     */
+    private CompletableFuture<List<List<T>>> stitch() {
+        return CompletableFuture.allOf(this.results.toArray(new CompletableFuture<?>[0])).handle((ignored, e) -> {
+            final List<List<T>> pages = new ArrayList<>();
+            for (final CompletableFuture<List<T>> result : this.results) {
+                // Pages after the last page are not needed, so their failures are ignored.
+                final List<T> page = result.join();
+                if (page.isEmpty()) {
+                    break;
+                }
+                pages.add(page);
+                if (page.size() < this.pageSize) {
+                    break;
+                }
+            }
+            return pages;
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package commit.viewer.git;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown when a request to Github API is not sent, or is refused by Github, since the rate limit of every token is
+ * exhausted, see {@link UpstreamScheduler}. Cached commits are still served, only requests that need Github API fail.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class RateLimitedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    RateLimitedException(final long retryAfterMillis) {
+        super("The rate limit of Github API is exhausted.");
+        this.retryAfterSeconds = Math.max(1, (retryAfterMillis + TimeUnit.SECONDS.toMillis(1) - 1)
+                / TimeUnit.SECONDS.toMillis(1));
+    }
+
+    /**
+     * Gets the number of seconds until a request may be sent again.
+     *
+     * @return The number of seconds, at least 1.
+     */
+    public long getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    /**
+     * Finds the {@link RateLimitedException} that caused the given exception, e.g., the exception of a
+     * {@link java.util.concurrent.CompletableFuture}.
+     *
+     * @param e The exception.
+     * @return The {@link RateLimitedException}, or {@code null} if the exception has another cause.
+     */
+    public static RateLimitedException causeOf(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitedException) {
+                return (RateLimitedException) cause;
+            }
+        }
+        return null;
+    }
+}
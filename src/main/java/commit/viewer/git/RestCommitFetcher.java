@@ -0,0 +1,74 @@
+package commit.viewer.git;
+
+import commit.viewer.git.UpstreamScheduler.Priority;
+import commit.viewer.model.CommitModel;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.String.format;
+
+/**
+ * {@link CommitFetcher} of Github REST API, i.e., the {@code /commits} endpoint of the repository. The newest commits
+ * are requested conditionally, hence an unchanged branch costs neither parsing nor rate limit. Pages are interactive
+ * requests while the newest commits and histories, which refresh branches, are background ones, see
+ * {@link UpstreamScheduler}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class RestCommitFetcher implements CommitFetcher {
+
+    private final GitHubClient client;
+
+    /**
+     * The project url, i.e., it contains owner name and repository name.
+     */
+    private final String projectUrl;
+
+    RestCommitFetcher(final GitHubClient client, final String projectUrl) {
+        this.client = client;
+        this.projectUrl = projectUrl;
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchNewest(final String branch) {
+        final URI uri = URI.create(format(
+                "%s/commits?sha=%s&per_page=%d",
+                this.projectUrl,
+                branch,
+                GitCommitAccess.MAX_PER_PAGE
+        ));
+        return this.client.getConditional(uri, Priority.BACKGROUND, CommitParser::parseCommits);
+    }
+
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchHistory(final String sha, final int page, final int perPage) {
+        final URI uri = URI.create(format(
+                "%s/commits?sha=%s&per_page=%d&page=%d",
+                this.projectUrl,
+                sha,
+                perPage,
+                page
+        ));
+        return this.client.get(uri, Priority.BACKGROUND, CommitParser::parseCommits);
+    }
+
+    /**
+     * Fetches the given page counted from the given head, since the {@code sha} parameter of the REST API accepts a
+     * commit sha, or from the current head of the branch if the branch is not cached yet. Pages of a cached branch
+     * hence do not shift when commits are pushed before the branch is refreshed.
+     */
+    @Override
+    public CompletableFuture<List<CommitModel>> fetchPage(final String branch, final String head, final int page,
+                                                          final int perPage) {
+        final URI uri = URI.create(format(
+                "%s/commits?sha=%s&per_page=%d&page=%d",
+                this.projectUrl,
+                head != null ? head : branch,
+                perPage,
+                page
+        ));
+        return this.client.get(uri, Priority.INTERACTIVE, CommitParser::parseCommits);
+    }
+}
@@ -0,0 +1,376 @@
+package commit.viewer.git;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import commit.viewer.metrics.Metrics;
+
+import java.net.http.HttpHeaders;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the requests to Github API within its rate limits, so running out of budget degrades into serving cached
+ * commits rather than into failing every request.
+ * <p>
+ * Requests are throttled by a token bucket of {@link #RATE} requests per second, with bursts of up to {@link #BURST}
+ * requests, after Github secondary rate limit of 900 points per minute. Requests waiting for the bucket are sent by
+ * priority, {@link Priority#INTERACTIVE} ones, which a client waits for, before {@link Priority#BACKGROUND} ones.
+ * <p>
+ * The budget left of each token and rate limit resource, i.e., {@code core} or {@code graphql}, is tracked from the
+ * {@code X-RateLimit-*} headers of the responses, several tokens are pooled by sending each request with the token
+ * that has the most requests left. Background requests are not sent once the budget left is below
+ * {@link #BACKGROUND_RESERVE} of the limit, so it is kept for interactive ones, and no request is sent on an exhausted
+ * budget until its reset. Requests that cannot be sent fail at once with {@link RateLimitedException} instead of
+ * waiting for the reset.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+final class UpstreamScheduler {
+
+    /**
+     * The priority of a request.
+     */
+    enum Priority {
+        /**
+         * A request a client waits for, e.g., a page of commits that is not cached.
+         */
+        INTERACTIVE,
+        /**
+         * A request no client waits for, e.g., the refresh of a cached branch.
+         */
+        BACKGROUND;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The number of requests per second, can be set by {@code commit.viewer.upstreamRate} system property.
+     */
+    static final double RATE = Math.max(0.1, Double.parseDouble(
+            System.getProperty("commit.viewer.upstreamRate", "15")));
+
+    /**
+     * The maximum number of requests sent at once, can be set by {@code commit.viewer.upstreamBurst} system property.
+     */
+    static final int BURST = Math.max(1, Integer.getInteger("commit.viewer.upstreamBurst", 100));
+
+    /**
+     * The part of the rate limit kept for interactive requests, can be set by {@code commit.viewer.backgroundReserve}
+     * system property.
+     */
+    static final double BACKGROUND_RESERVE = Math.max(0, Math.min(1, Double.parseDouble(
+            System.getProperty("commit.viewer.backgroundReserve", "0.2"))));
+
+    private static final int FORBIDDEN = 403;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final Metrics.Counter rejected = Metrics.INSTANCE.counter(
+            "commit_viewer_upstream_rejected_total",
+            "Requests of Github API not sent since the rate limit is exhausted, by priority.",
+            "priority"
+    );
+
+    private static final Metrics.Histogram waits = Metrics.INSTANCE.histogram(
+            "commit_viewer_upstream_wait_seconds",
+            "Time requests of Github API wait for the token bucket, by priority.",
+            "priority"
+    );
+
+    /**
+     * The timer of the requests waiting for the bucket, shared by all schedulers.
+     */
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("commit-viewer-upstream").setDaemon(true).build()
+    );
+
+    private final List<Credential> credentials = new ArrayList<>();
+
+    /**
+     * The tokens added to the bucket per nanosecond.
+     */
+    private final double ratePerNano;
+
+    private final int burst;
+
+    private final double backgroundReserve;
+
+    /**
+     * The requests waiting for the bucket, by priority.
+     */
+    private final Map<Priority, Deque<Waiter>> waiting = new EnumMap<>(Priority.class);
+
+    private double tokens;
+
+    private long refilledAt = System.nanoTime();
+
+    private boolean drainScheduled;
+
+    UpstreamScheduler(final Collection<String> tokens) {
+        this(tokens, RATE, BURST, BACKGROUND_RESERVE);
+    }
+
+    UpstreamScheduler(final Collection<String> tokens, final double rate, final int burst,
+                      final double backgroundReserve) {
+        for (final String token : tokens) {
+            this.credentials.add(new Credential(token));
+        }
+        if (this.credentials.isEmpty()) {
+            this.credentials.add(new Credential(null));
+        }
+        this.ratePerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.backgroundReserve = backgroundReserve;
+        this.tokens = burst;
+        for (final Priority priority : Priority.values()) {
+            this.waiting.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Checks whether requests are authenticated.
+     *
+     * @return {@code true} if a token is sent on every request.
+     */
+    boolean isAuthenticated() {
+        return this.credentials.get(0).token != null;
+    }
+
+    /**
+     * Waits for the turn of a request.
+     *
+     * @param priority The priority of the request.
+     * @param resource The rate limit resource of the request, see {@link #resource(String)}.
+     * @return The credential to send the request with, or fails with {@link RateLimitedException} if the budget of
+     * every token is exhausted.
+     */
+    CompletableFuture<Credential> acquire(final Priority priority, final String resource) {
+        final Waiter waiter = new Waiter(priority, resource);
+        synchronized (this) {
+            this.waiting.get(priority).add(waiter);
+        }
+        drain();
+        return waiter.acquired;
+    }
+
+    /**
+     * Updates the budget of the given credential from the given response.
+     *
+     * @param credential The credential the request was sent with.
+     * @param resource   The rate limit resource of the request.
+     * @param status     The status of the response.
+     * @param headers    The headers of the response.
+     * @return The {@link RateLimitedException} if Github refused the request because of a rate limit, otherwise
+     * {@code null}.
+     */
+    RateLimitedException onResponse(final Credential credential, final String resource, final int status,
+                                    final HttpHeaders headers) {
+        final OptionalLong limit = number(headers, "X-RateLimit-Limit");
+        final OptionalLong remaining = number(headers, "X-RateLimit-Remaining");
+        final OptionalLong reset = number(headers, "X-RateLimit-Reset");
+        final OptionalLong retryAfter = number(headers, "Retry-After");
+        final long now = System.currentTimeMillis();
+
+        final boolean limited = (status == FORBIDDEN || status == TOO_MANY_REQUESTS)
+                && (retryAfter.isPresent() || (remaining.isPresent() && remaining.getAsLong() == 0));
+        synchronized (this) {
+            final Budget budget = credential.budget(resource);
+            limit.ifPresent(value -> budget.limit = value);
+            remaining.ifPresent(value -> budget.remaining = value);
+            reset.ifPresent(value -> budget.resetAt = TimeUnit.SECONDS.toMillis(value));
+            if (limited && retryAfter.isPresent()) {
+                // Secondary rate limit, the token is paused whatever its budget.
+                budget.pausedUntil = now + TimeUnit.SECONDS.toMillis(retryAfter.getAsLong());
+            } else if (limited && !reset.isPresent()) {
+                budget.resetAt = now + TimeUnit.MINUTES.toMillis(1);
+            }
+        }
+        // Requests rejected meanwhile are not retried, the ones still waiting are sent with another token if any.
+        drain();
+        return limited ? new RateLimitedException(retryAfter(resource, now)) : null;
+    }
+
+    /**
+     * Gets the rate limit resource of the given call type, see {@link GitHubClient#callType}.
+     *
+     * @param callType The call type.
+     * @return {@code graphql} for GraphQL API, otherwise {@code core}.
+     */
+    static String resource(final String callType) {
+        return callType.equals("graphql") ? "graphql" : "core";
+    }
+
+    /**
+     * Sends the waiting requests the bucket allows, interactive ones first, and rejects the ones whose budget is
+     * exhausted. Futures are completed out of the lock, since completing them sends the requests.
+     */
+    private void drain() {
+        final List<Runnable> completions = new ArrayList<>();
+        synchronized (this) {
+            final long now = System.nanoTime();
+            this.tokens = Math.min(this.burst, this.tokens + (now - this.refilledAt) * this.ratePerNano);
+            this.refilledAt = now;
+            final long nowMillis = System.currentTimeMillis();
+
+            boolean throttled = false;
+            for (final Priority priority : Priority.values()) {
+                final Deque<Waiter> queue = this.waiting.get(priority);
+                while (!queue.isEmpty() && !throttled) {
+                    final Waiter waiter = queue.peek();
+                    final Credential credential = pick(waiter, nowMillis);
+                    if (credential == null) {
+                        queue.poll();
+                        rejected.inc(priority.label);
+                        final RateLimitedException e = new RateLimitedException(retryAfter(waiter.resource, nowMillis));
+                        completions.add(() -> waiter.acquired.completeExceptionally(e));
+                    } else if (this.tokens >= 1) {
+                        queue.poll();
+                        this.tokens--;
+                        credential.budget(waiter.resource).remaining--;
+                        waits.observeNanos(now - waiter.queuedAt, priority.label);
+                        completions.add(() -> waiter.acquired.complete(credential));
+                    } else {
+                        // Lower priorities wait for the ones before them.
+                        throttled = true;
+                    }
+                }
+            }
+
+            if (throttled && !this.drainScheduled) {
+                this.drainScheduled = true;
+                final long delay = (long) Math.ceil((1 - this.tokens) / this.ratePerNano);
+                timer.schedule(() -> {
+                    synchronized (this) {
+                        this.drainScheduled = false;
+                    }
+                    drain();
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    /**
+     * Picks the credential with the most requests left for the given request, {@code null} if none may send it.
+     */
+    private Credential pick(final Waiter waiter, final long now) {
+        Credential best = null;
+        long bestRemaining = Long.MIN_VALUE;
+        for (final Credential credential : this.credentials) {
+            final Budget budget = credential.budget(waiter.resource);
+            if (budget.allows(waiter.priority, now, this.backgroundReserve) && budget.remaining > bestRemaining) {
+                best = credential;
+                bestRemaining = budget.remaining;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the time until a credential may send a request of the given resource again.
+     */
+    private synchronized long retryAfter(final String resource, final long now) {
+        long retryAt = Long.MAX_VALUE;
+        for (final Credential credential : this.credentials) {
+            final Budget budget = credential.budget(resource);
+            retryAt = Math.min(retryAt, Math.max(budget.pausedUntil, budget.remaining > 0 ? now : budget.resetAt));
+        }
+        return Math.max(0, retryAt - now);
+    }
+
+    private static OptionalLong number(final HttpHeaders headers, final String name) {
+        final String value = headers.firstValue(name).orElse(null);
+        if (value == null) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(value.trim()));
+        } catch (final NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * A token, or none for unauthenticated requests, with its budget by rate limit resource.
+     */
+    static final class Credential {
+
+        final String token;
+
+        private final Map<String, Budget> budgets = new HashMap<>();
+
+        private Credential(final String token) {
+            this.token = token;
+        }
+
+        private Budget budget(final String resource) {
+            return this.budgets.computeIfAbsent(resource, key -> new Budget());
+        }
+    }
+
+    /**
+     * The rate limit of a token on a resource, as of its last response. It is unknown until the first response.
+     */
+    private static final class Budget {
+
+        private long limit = -1;
+
+        private long remaining = Long.MAX_VALUE;
+
+        /**
+         * When the budget is renewed, in epoch milliseconds.
+         */
+        private long resetAt;
+
+        /**
+         * Until when no request is sent, in epoch milliseconds, after a secondary rate limit.
+         */
+        private long pausedUntil;
+
+        private boolean allows(final Priority priority, final long now, final double backgroundReserve) {
+            if (now < this.pausedUntil) {
+                return false;
+            }
+            if (this.resetAt > 0 && this.resetAt <= now) {
+                // The window is over, the budget is renewed.
+                this.remaining = this.limit >= 0 ? this.limit : Long.MAX_VALUE;
+                this.resetAt = 0;
+            }
+            if (this.remaining <= 0) {
+                return false;
+            }
+            return priority != Priority.BACKGROUND || this.limit < 0
+                    || this.remaining > this.limit * backgroundReserve;
+        }
+    }
+
+    /**
+     * A request waiting for its turn.
+     */
+    private static final class Waiter {
+
+        private final Priority priority;
+
+        private final String resource;
+
+        private final long queuedAt = System.nanoTime();
+
+        private final CompletableFuture<Credential> acquired = new CompletableFuture<>();
+
+        private Waiter(final Priority priority, final String resource) {
+            this.priority = priority;
+            this.resource = resource;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package commit.viewer.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Singleton registry of the metrics of the server, written in Prometheus text format by {@link #scrape()}.
+ * <p>
+ * A metric is a family of series, one per combination of label values, created on first use. Counters and histograms
+ * are updated by {@link LongAdder}, so recording from many threads does not contend. Gauges are either set when their
+ * value changes, or set by collectors run on each scrape, see {@link #onScrape(Runnable)}, for values that are cheaper
+ * to read on demand than to keep up to date.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public enum Metrics {
+
+    INSTANCE;
+
+    /**
+     * The upper bounds of latency histograms, in seconds.
+     */
+    public static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    /**
+     * The metrics by name, sorted so scrapes are stable.
+     */
+    private final Map<String, Family<?>> families = new ConcurrentSkipListMap<>();
+
+    private final List<Runnable> collectors = new CopyOnWriteArrayList<>();
+
+    /**
+     * Gets the counter of the given name, registered on first call.
+     *
+     * @param name       The metric name, e.g., {@code commit_viewer_cache_requests_total}.
+     * @param help       The description of the metric.
+     * @param labelNames The label names.
+     * @return The {@link Counter}.
+     */
+    public Counter counter(final String name, final String help, final String... labelNames) {
+        return register(name, Counter.class, () -> new Counter(name, help, labelNames));
+    }
+
+    /**
+     * Gets the gauge of the given name, registered on first call.
+     *
+     * @param name       The metric name.
+     * @param help       The description of the metric.
+     * @param labelNames The label names.
+     * @return The {@link Gauge}.
+     */
+    public Gauge gauge(final String name, final String help, final String... labelNames) {
+        return register(name, Gauge.class, () -> new Gauge(name, help, labelNames));
+    }
+
+    /**
+     * Gets the latency histogram of the given name, registered on first call, see {@link #LATENCY_BUCKETS}.
+     *
+     * @param name       The metric name, e.g., {@code commit_viewer_upstream_request_seconds}.
+     * @param help       The description of the metric.
+     * @param labelNames The label names.
+     * @return The {@link Histogram}.
+     */
+    public Histogram histogram(final String name, final String help, final String... labelNames) {
+        return register(name, Histogram.class, () -> new Histogram(name, help, LATENCY_BUCKETS, labelNames));
+    }
+
+    /**
+     * Adds a collector run before each scrape, i.e., that sets gauges whose values are read on demand.
+     *
+     * @param collector The collector.
+     */
+    public void onScrape(final Runnable collector) {
+        this.collectors.add(collector);
+    }
+
+    /**
+     * Writes every metric in Prometheus text format, version 0.0.4.
+     *
+     * @return The metrics.
+     */
+    public synchronized String scrape() {
+        for (final Runnable collector : this.collectors) {
+            collector.run();
+        }
+        final StringBuilder text = new StringBuilder();
+        for (final Family<?> family : this.families.values()) {
+            family.write(text);
+        }
+        return text.toString();
+    }
+
+    private <T extends Family<?>> T register(final String name, final Class<T> type,
+                                             final Supplier<T> factory) {
+        final Family<?> family = this.families.computeIfAbsent(name, key -> factory.get());
+        if (!type.isInstance(family)) {
+            throw new IllegalArgumentException(format("The metric %s is already registered as %s.", name,
+                    family.type));
+        }
+        return type.cast(family);
+    }
+
+    /**
+     * A metric, i.e., its series by label values.
+     *
+     * @param <T> The type of a series.
+     */
+    private abstract static class Family<T> {
+
+        final String name;
+
+        final String help;
+
+        final String type;
+
+        final String[] labelNames;
+
+        final ConcurrentMap<List<String>, T> series = new ConcurrentHashMap<>();
+
+        private Family(final String name, final String help, final String type, final String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames.clone();
+        }
+
+        /**
+         * Gets the series of the given label values, created on first call.
+         */
+        T series(final String... labelValues) {
+            if (labelValues.length != this.labelNames.length) {
+                throw new IllegalArgumentException(format("The metric %s has %d labels, not %d.", this.name,
+                        this.labelNames.length, labelValues.length));
+            }
+            final T existing = this.series.get(Arrays.asList(labelValues));
+            if (existing != null) {
+                return existing;
+            }
+            final String[] key = new String[labelValues.length];
+            Arrays.setAll(key, i -> labelValues[i] != null ? labelValues[i] : "");
+            return this.series.computeIfAbsent(List.of(key), ignored -> newSeries());
+        }
+
+        abstract T newSeries();
+
+        abstract void write(StringBuilder text, String labels, T series);
+
+        private void write(final StringBuilder text) {
+            text.append("# HELP ").append(this.name).append(' ')
+                    .append(this.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            text.append("# TYPE ").append(this.name).append(' ').append(this.type).append('\n');
+            this.series.forEach((labelValues, series) -> write(text, labels(labelValues), series));
+        }
+
+        /**
+         * Formats the given label values, without braces, since histograms add the {@code le} label.
+         */
+        private String labels(final List<String> labelValues) {
+            final StringBuilder labels = new StringBuilder();
+            for (int i = 0; i < this.labelNames.length; i++) {
+                if (i > 0) {
+                    labels.append(',');
+                }
+                labels.append(this.labelNames[i]).append("=\"")
+                        .append(labelValues.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                        .append('"');
+            }
+            return labels.toString();
+        }
+
+        static void sample(final StringBuilder text, final String name, final String labels, final double value) {
+            text.append(name);
+            if (!labels.isEmpty()) {
+                text.append('{').append(labels).append('}');
+            }
+            text.append(' ').append(number(value)).append('\n');
+        }
+
+        static String number(final double value) {
+            if (value == Double.POSITIVE_INFINITY) {
+                return "+Inf";
+            }
+            return value == Math.rint(value) && Math.abs(value) < 1e15
+                    ? Long.toString((long) value)
+                    : Double.toString(value);
+        }
+    }
+
+    /**
+     * A counter, i.e., a value that only increases.
+     */
+    public static final class Counter extends Family<LongAdder> {
+
+        private Counter(final String name, final String help, final String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        /**
+         * Increments the series of the given label values.
+         *
+         * @param labelValues The label values, in the order of the label names.
+         */
+        public void inc(final String... labelValues) {
+            series(labelValues).increment();
+        }
+
+        @Override
+        LongAdder newSeries() {
+            return new LongAdder();
+        }
+
+        @Override
+        void write(final StringBuilder text, final String labels, final LongAdder series) {
+            sample(text, this.name, labels, series.sum());
+        }
+    }
+
+    /**
+     * A gauge, i.e., a value that is set.
+     */
+    public static final class Gauge extends Family<AtomicLong> {
+
+        private Gauge(final String name, final String help, final String[] labelNames) {
+            super(name, help, "gauge", labelNames);
+        }
+
+        /**
+         * Sets the series of the given label values.
+         *
+         * @param value       The value.
+         * @param labelValues The label values, in the order of the label names.
+         */
+        public void set(final double value, final String... labelValues) {
+            series(labelValues).set(Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * Removes every series, e.g., before a collector sets the series that still exist.
+         */
+        public void clear() {
+            this.series.clear();
+        }
+
+        /**
+         * Creates a series, a value is kept as the bits of a {@code double}.
+         */
+        @Override
+        AtomicLong newSeries() {
+            return new AtomicLong(Double.doubleToRawLongBits(0));
+        }
+
+        @Override
+        void write(final StringBuilder text, final String labels, final AtomicLong series) {
+            sample(text, this.name, labels, Double.longBitsToDouble(series.get()));
+        }
+    }
+
+    /**
+     * A histogram of durations in seconds, with cumulative buckets.
+     */
+    public static final class Histogram extends Family<Histogram.Series> {
+
+        private final double[] buckets;
+
+        private Histogram(final String name, final String help, final double[] buckets, final String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+            this.buckets = buckets.clone();
+        }
+
+        /**
+         * Records a duration on the series of the given label values.
+         *
+         * @param nanos       The duration in nanoseconds, e.g., the difference of two {@link System#nanoTime()}.
+         * @param labelValues The label values, in the order of the label names.
+         */
+        public void observeNanos(final long nanos, final String... labelValues) {
+            final Series series = series(labelValues);
+            final double seconds = nanos / 1e9;
+            for (int i = 0; i < this.buckets.length; i++) {
+                if (seconds <= this.buckets[i]) {
+                    series.counts[i].increment();
+                    break;
+                }
+            }
+            series.sum.add(seconds);
+            series.count.increment();
+        }
+
+        @Override
+        Series newSeries() {
+            return new Series(this.buckets.length);
+        }
+
+        @Override
+        void write(final StringBuilder text, final String labels, final Series series) {
+            final String prefix = labels.isEmpty() ? "" : labels + ',';
+            // The count is read first, so no bucket exceeds the infinite one.
+            final long count = series.count.sum();
+            long cumulative = 0;
+            for (int i = 0; i < this.buckets.length; i++) {
+                cumulative += series.counts[i].sum();
+                sample(text, this.name + "_bucket", prefix + "le=\"" + number(this.buckets[i]) + '"',
+                        Math.min(cumulative, count));
+            }
+            sample(text, this.name + "_bucket", prefix + "le=\"+Inf\"", count);
+            sample(text, this.name + "_sum", labels, series.sum.sum());
+            sample(text, this.name + "_count", labels, count);
+        }
+
+        /**
+         * The counts of a series, each bucket only counts the durations greater than the previous bound.
+         */
+        static final class Series {
+
+            private final LongAdder[] counts;
+
+            private final DoubleAdder sum = new DoubleAdder();
+
+            private final LongAdder count = new LongAdder();
+
+            private Series(final int buckets) {
+                this.counts = new LongAdder[buckets];
+                Arrays.setAll(this.counts, i -> new LongAdder());
+            }
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package commit.viewer.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.common.base.MoreObjects;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
  * Commit Data Model. The model uses builder pattern.
+ * <p>
+ * The parents are only used to link commits of the cache, they are neither serialized nor part of equality.
  *
  * @author Sheng Wang (shenggwangg@gmail.com)
  */
@@ -30,13 +34,25 @@ public class CommitModel {
         return author;
     }
 
+    /**
+     * Gets the sha of the parents.
+     *
+     * @return {@link List} of sha, or {@code null} if the parents are unknown.
+     */
+    @JsonIgnore
+    public List<String> getParents() {
+        return parents;
+    }
+
     private final String author;
+    private final List<String> parents;
 
     private CommitModel(final Builder builder) {
         this.sha = builder.sha;
         this.message = builder.message;
         this.date = builder.date;
         this.author = builder.author;
+        this.parents = builder.parents;
     }
 
     public static class Builder {
@@ -44,6 +60,7 @@ public class CommitModel {
         private String message;
         private String date;
         private String author;
+        private List<String> parents;
         public Builder() {
 
         }
@@ -64,6 +81,10 @@ public class CommitModel {
             author = val;
             return this;
         }
+        public Builder parents(final List<String> val) {
+            parents = val == null ? null : List.copyOf(val);
+            return this;
+        }
         public CommitModel build() {
             return new CommitModel(this);
         }
@@ -0,0 +1,174 @@
+package commit.viewer.model;
+
+import com.google.common.base.MoreObjects;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Commit Statistics Data Model of a branch. The model uses builder pattern.
+ * <p>
+ * Days and weeks are UTC dates, a week is keyed by its Monday. Commits whose date is not ISO-8601
+ * are only counted by author.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitStatsModel {
+    private final long commits;
+    private final String first;
+    private final String last;
+    private final Map<String, Long> authors;
+    private final Map<String, Long> timeToFirstCommit;
+    private final Map<String, Long> days;
+    private final Map<String, Long> weeks;
+
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Gets the date of the oldest commit.
+     *
+     * @return The ISO-8601 date, or {@code null} if no commit is dated.
+     */
+    public String getFirst() {
+        return first;
+    }
+
+    /**
+     * Gets the date of the newest commit.
+     *
+     * @return The ISO-8601 date, or {@code null} if no commit is dated.
+     */
+    public String getLast() {
+        return last;
+    }
+
+    /**
+     * Gets the number of commits of each author.
+     *
+     * @return {@link Map} of number of commits by author name, sorted by name.
+     */
+    public Map<String, Long> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Gets the time from the oldest commit to the first commit of each author.
+     *
+     * @return {@link Map} of seconds by author name, sorted by name.
+     */
+    public Map<String, Long> getTimeToFirstCommit() {
+        return timeToFirstCommit;
+    }
+
+    /**
+     * Gets the number of commits of each day.
+     *
+     * @return {@link Map} of number of commits by date, e.g., {@code 2020-09-13}, oldest first.
+     */
+    public Map<String, Long> getDays() {
+        return days;
+    }
+
+    /**
+     * Gets the number of commits of each week.
+     *
+     * @return {@link Map} of number of commits by the date of the Monday, oldest first.
+     */
+    public Map<String, Long> getWeeks() {
+        return weeks;
+    }
+
+    private CommitStatsModel(final Builder builder) {
+        this.commits = builder.commits;
+        this.first = builder.first;
+        this.last = builder.last;
+        this.authors = builder.authors;
+        this.timeToFirstCommit = builder.timeToFirstCommit;
+        this.days = builder.days;
+        this.weeks = builder.weeks;
+    }
+
+    public static class Builder {
+        private long commits;
+        private String first;
+        private String last;
+        private Map<String, Long> authors = Map.of();
+        private Map<String, Long> timeToFirstCommit = Map.of();
+        private Map<String, Long> days = Map.of();
+        private Map<String, Long> weeks = Map.of();
+        public Builder() {
+
+        }
+
+        public Builder commits(final long val) {
+            commits = val;
+            return this;
+        }
+        public Builder first(final String val) {
+            first = val;
+            return this;
+        }
+        public Builder last(final String val) {
+            last = val;
+            return this;
+        }
+        public Builder authors(final Map<String, Long> val) {
+            authors = val;
+            return this;
+        }
+        public Builder timeToFirstCommit(final Map<String, Long> val) {
+            timeToFirstCommit = val;
+            return this;
+        }
+        public Builder days(final Map<String, Long> val) {
+            days = val;
+            return this;
+        }
+        public Builder weeks(final Map<String, Long> val) {
+            weeks = val;
+            return this;
+        }
+        public CommitStatsModel build() {
+            return new CommitStatsModel(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("commits", commits)
+                .add("first", first)
+                .add("last", last)
+                .add("authors", authors)
+                .add("timeToFirstCommit", timeToFirstCommit)
+                .add("days", days)
+                .add("weeks", weeks)
+                .toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.commits, this.first, this.last, this.authors,
+                this.timeToFirstCommit, this.days, this.weeks);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final CommitStatsModel other = (CommitStatsModel) obj;
+        return this.commits == other.commits
+                && Objects.equals(this.first, other.first)
+                && Objects.equals(this.last, other.last)
+                && Objects.equals(this.authors, other.authors)
+                && Objects.equals(this.timeToFirstCommit, other.timeToFirstCommit)
+                && Objects.equals(this.days, other.days)
+                && Objects.equals(this.weeks, other.weeks);
+    }
+}
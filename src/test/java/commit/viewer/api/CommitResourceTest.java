@@ -1,17 +1,23 @@
 package commit.viewer.api;
 
+import commit.viewer.git.FakeGitHub;
 import commit.viewer.model.CommitModel;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.test.JerseyTest;
 import org.glassfish.jersey.test.TestProperties;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import javax.ws.rs.core.Application;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.URI;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -19,8 +25,9 @@ import java.util.Set;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
- * GitHub API commit access tests via REST API. Note that the tests uses real Github API,
- * which might lead to exceed <i>API rate limit</i>, hence all tests start failing.
+ * GitHub API commit access tests via REST API. They use a local stub of Github API, see {@link FakeGitHub}, on the
+ * port of {@code commit.viewer.githubUrl} system property, which is set by the surefire configuration since the
+ * projects of the REST API are created with it.
  *
  * @author Sheng Wang (shenggwangg@gmail.com)
  */
@@ -31,6 +38,38 @@ public class CommitResourceTest extends JerseyTest {
      */
     private static final int MAX_CLIENTS = 10;
 
+    /**
+     * The Github API the projects are fetched from.
+     */
+    private static FakeGitHub github;
+
+    /**
+     * Before class that starts the stub on the port of {@code commit.viewer.githubUrl}, the tests are skipped if it is
+     * not set, rather than using Github API.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        final String githubUrl = System.getProperty("commit.viewer.githubUrl");
+        Assume.assumeNotNull(githubUrl);
+        github = new FakeGitHub.Builder()
+                .repository("apache", "spark")
+                .commits(100)
+                .port(URI.create(githubUrl).getPort())
+                .build();
+    }
+
+    /**
+     * After class that stops the stub.
+     */
+    @AfterClass
+    public static void afterClass() {
+        if (github != null) {
+            github.close();
+        }
+    }
+
     @Override
     protected Application configure() {
         enable(TestProperties.LOG_TRAFFIC);
@@ -77,5 +116,8 @@ public class CommitResourceTest extends JerseyTest {
         assertThat(commits1)
                 .as("API must be able to retrieve 5 commits.")
                 .hasSize(5);
+        assertThat(github.requests("commits"))
+                .as("Commits should be fetched from the stub.")
+                .isPositive();
     }
 }
@@ -0,0 +1,288 @@
+package commit.viewer.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.glassfish.jersey.test.JerseyTest;
+import org.glassfish.jersey.test.TestProperties;
+import org.junit.Test;
+
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Application;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link CommitResource} tests on the local repository of test resources, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class LocalCommitResourceTest extends JerseyTest {
+
+    @Override
+    protected Application configure() {
+        // Find first available port.
+        forceSet(TestProperties.CONTAINER_PORT, "0");
+        return new Application () {
+            public Set getSingletons() {
+                final Set<Object> set = new HashSet<>();
+                set.add(new CommitResource());
+                set.add(new MetricsResource());
+                set.add(new RequestMetrics());
+                set.add(new JacksonFeature());
+                return set;
+            }
+        };
+    }
+
+    private WebTarget commits() throws URISyntaxException {
+        final String url = Paths.get(getClass().getResource("/local/fixture.git").toURI()).toUri().toString();
+        return target("/commits").queryParam("url", url);
+    }
+
+    /**
+     * Ensures that pages have a strong tag, and a request with the tag of the page is answered without the page.
+     */
+    @Test
+    public void ensureUnmodifiedPagesAreNotSent() throws Exception {
+        final Response response = commits().queryParam("page", 2).queryParam("size", 5).request().get();
+        assertThat(response.getStatus())
+                .as("Http Response should be 200.")
+                .isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.getEntityTag())
+                .as("The page should have a strong tag.")
+                .isNotNull()
+                .matches(tag -> !tag.isWeak());
+        assertThat(response.getHeaderString(HttpHeaders.CACHE_CONTROL))
+                .as("Local pages should be revalidated.")
+                .contains("no-cache");
+        final List<Map<String, String>> page = response.readEntity(List.class);
+        assertThat(page)
+                .as("The page should have 5 commits.")
+                .hasSize(5);
+
+        final Response notModified = commits().queryParam("page", 2).queryParam("size", 5).request()
+                .header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + response.getEntityTag())
+                .get();
+        assertThat(notModified.getStatus())
+                .as("Http Response should be 304.")
+                .isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        assertThat(notModified.getEntityTag())
+                .as("The tag should be sent again.")
+                .isEqualTo(response.getEntityTag());
+
+        final Response cursor = commits().queryParam("after", page.get(0).get("sha")).queryParam("size", 4).request()
+                .header(HttpHeaders.IF_NONE_MATCH, response.getEntityTag().toString())
+                .get();
+        assertThat(cursor.getStatus())
+                .as("Another page should be sent.")
+                .isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(cursor.getEntityTag())
+                .as("Another page should have another tag.")
+                .isNotEqualTo(response.getEntityTag());
+    }
+
+    /**
+     * Ensures that pages and sizes below 1, or whose position overflows, are rejected rather than served.
+     */
+    @Test
+    public void ensureInvalidPagesAreRejected() throws Exception {
+        final int[][] invalid = {{0, 5}, {-1, 5}, {1, 0}, {1, -5}, {Integer.MAX_VALUE, 100}, {2, Integer.MAX_VALUE}};
+        for (final int[] pageAndSize : invalid) {
+            final Response response = commits().queryParam("page", pageAndSize[0])
+                    .queryParam("size", pageAndSize[1]).request().get();
+            assertThat(response.getStatus())
+                    .as("Page %d of size %d should be rejected.", pageAndSize[0], pageAndSize[1])
+                    .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        }
+        final Response cursor = commits().queryParam("page", 1).queryParam("size", 1).request().get();
+        final List<Map<String, String>> page = cursor.readEntity(List.class);
+        final Response overflow = commits().queryParam("after", page.get(0).get("sha"))
+                .queryParam("size", Integer.MAX_VALUE).request().get();
+        assertThat(overflow.getStatus())
+                .as("A cursor whose position overflows should be rejected.")
+                .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Ensures that the whole history of a branch is streamed as newline-delimited JSON, like {@code git log}.
+     */
+    @Test
+    public void ensureHistoryIsStreamed() throws Exception {
+        final List<String> expected = Files.readAllLines(
+                Paths.get(getClass().getResource("/local/master.log").toURI()), UTF_8
+        ).stream().map(line -> line.split(" ")[0]).collect(Collectors.toList());
+
+        final Response response = stream().queryParam("branch", "master").queryParam("size", 4).request().get();
+        assertThat(response.getStatus())
+                .as("Http Response should be 200.")
+                .isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_TYPE))
+                .as("Http Content-Type should be NDJSON.")
+                .isEqualTo(CommitResource.APPLICATION_NDJSON);
+
+        final ObjectMapper mapper = new ObjectMapper();
+        final List<String> shas = new ArrayList<>();
+        for (final String line : response.readEntity(String.class).split("\n")) {
+            shas.add(mapper.readTree(line).path("sha").asText());
+        }
+        assertThat(shas)
+                .as("All commits should be streamed in order, one per line.")
+                .isEqualTo(expected);
+
+        assertThat(stream().queryParam("branch", "missing").request().get().getStatus())
+                .as("A missing branch should be rejected.")
+                .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Ensures that commits are searched by author, message and date, newest commit first.
+     */
+    @Test
+    public void ensureCommitsAreSearched() throws Exception {
+        final List<Map<String, String>> byAuthor = search().queryParam("branch", "master")
+                .queryParam("author", "grace hopper").request().get(List.class);
+        assertThat(byAuthor)
+                .as("Only the commit of Grace Hopper should be found.")
+                .extracting(commit -> commit.get("sha"))
+                .containsExactly("e1a31cb622155eb1e4b16885e36bbb7999c6cf1f");
+
+        final List<Map<String, String>> byText = search().queryParam("branch", "master")
+                .queryParam("q", "commit master").queryParam("until", "2020-09-13T14:03:20Z")
+                .queryParam("size", 2).request().get(List.class);
+        assertThat(byText)
+                .as("The newest matching commits until the date should be found.")
+                .extracting(commit -> commit.get("sha"))
+                .containsExactly("541bfc433901e0d99afb29c90a861f3996f1ef12", "67f80f11b5076d33f6f21f3924a151cae5419db1");
+
+        assertThat(search().queryParam("since", "yesterday").request().get().getStatus())
+                .as("An invalid date should be rejected.")
+                .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        for (final int size : new int[]{0, -1}) {
+            assertThat(search().queryParam("size", size).request().get().getStatus())
+                    .as("A search of size %d should be rejected.", size)
+                    .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        }
+        assertThat(search().queryParam("size", Integer.MAX_VALUE).request().get(List.class))
+                .as("A large size should be accepted and capped.")
+                .hasSize(25);
+    }
+
+    /**
+     * Ensures that statistics count the whole history of a branch.
+     */
+    @Test
+    public void ensureStatsCountHistory() throws Exception {
+        final Response response = stats().queryParam("branch", "master").request().get();
+        assertThat(response.getStatus())
+                .as("Http Response should be 200.")
+                .isEqualTo(Response.Status.OK.getStatusCode());
+
+        final JsonNode stats = new ObjectMapper().readTree(response.readEntity(String.class));
+        assertThat(stats.path("commits").asLong())
+                .as("Every commit of the branch should be counted.")
+                .isEqualTo(25);
+        assertThat(stats.path("authors").path("Ada Lovelace").asLong())
+                .as("Commits should be counted by author.")
+                .isEqualTo(24);
+        assertThat(stats.path("timeToFirstCommit").path("Grace Hopper").asLong())
+                .as("The first commit of an author should be timed from the oldest commit.")
+                .isEqualTo(1600006000 - 1600000100);
+        assertThat(stats.path("days").path("2020-09-13").asLong())
+                .as("Commits should be counted by day.")
+                .isEqualTo(25);
+        assertThat(stats.path("weeks").path("2020-09-07").asLong())
+                .as("Commits should be counted by week, starting on Monday.")
+                .isEqualTo(25);
+    }
+
+    /**
+     * Ensures that HTTP clients cannot read local repositories outside of {@code commit.viewer.localRoot}, which is the
+     * directory of the test repository, see the surefire configuration.
+     */
+    @Test
+    public void ensureLocalRepositoriesOutsideOfRootAreRefused() throws Exception {
+        final Path fixture = Paths.get(getClass().getResource("/local/fixture.git").toURI());
+        final Path outside = Files.createTempDirectory("commit-viewer");
+        try {
+            try (Stream<Path> files = Files.walk(fixture)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, outside.resolve(fixture.relativize(file).toString()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            final Response response = target("/commits").queryParam("url", outside.toUri().toString())
+                    .request().get();
+            assertThat(response.getStatus())
+                    .as("A repository outside of the root should be refused.")
+                    .isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+            assertThat(commits().request().get().getStatus())
+                    .as("A repository under the root should be served.")
+                    .isEqualTo(Response.Status.OK.getStatusCode());
+        } finally {
+            try (Stream<Path> files = Files.walk(outside)) {
+                for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensures that the latency of requests is exposed by resource method on the metrics endpoint.
+     */
+    @Test
+    public void ensureRequestsAreMeasured() throws Exception {
+        commits().queryParam("page", 1).request().get().close();
+
+        final Response response = target("/metrics").request().get();
+        assertThat(response.getStatus())
+                .as("Http Response should be 200.")
+                .isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(response.getHeaderString(HttpHeaders.CONTENT_TYPE))
+                .as("Http Content-Type should be Prometheus text format.")
+                .startsWith("text/plain");
+
+        // The request is recorded once its response is written, which the client might not wait for.
+        String metrics = response.readEntity(String.class);
+        for (int i = 0; i < 50 && !metrics.contains("resource=\"CommitResource.getCommits\""); i++) {
+            Thread.sleep(100);
+            metrics = target("/metrics").request().get(String.class);
+        }
+        assertThat(metrics)
+                .as("The request should be recorded by resource method and status.")
+                .containsPattern("commit_viewer_request_seconds_count\\{resource=\"CommitResource.getCommits\","
+                        + "status=\"200\"} [1-9]");
+    }
+
+    private WebTarget stats() throws URISyntaxException {
+        final String url = Paths.get(getClass().getResource("/local/fixture.git").toURI()).toUri().toString();
+        return target("/commits/stats").queryParam("url", url);
+    }
+
+    private WebTarget search() throws URISyntaxException {
+        final String url = Paths.get(getClass().getResource("/local/fixture.git").toURI()).toUri().toString();
+        return target("/commits/search").queryParam("url", url);
+    }
+
+    private WebTarget stream() throws URISyntaxException {
+        final String url = Paths.get(getClass().getResource("/local/fixture.git").toURI()).toUri().toString();
+        return target("/commits/stream").queryParam("url", url);
+    }
+}
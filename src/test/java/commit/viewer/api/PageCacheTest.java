@@ -0,0 +1,76 @@
+package commit.viewer.api;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Test;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link PageCache} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class PageCacheTest {
+
+    private static CommitModel commit(final String sha) {
+        return new CommitModel.Builder()
+                .sha(sha)
+                .author("author")
+                .date("2020-09-13T12:26:40Z")
+                .message("message of " + sha)
+                .build();
+    }
+
+    /**
+     * Ensures that the tag of a page only depends on its commits.
+     */
+    @Test
+    public void ensureTagsIdentifyPages() {
+        final EntityTag tag = PageCache.tag(List.of(commit("a"), commit("b")));
+
+        assertThat(PageCache.tag(List.of(commit("a"), commit("b"))))
+                .as("The same commits should have the same tag.")
+                .isEqualTo(tag);
+        assertThat(PageCache.tag(List.of(commit("b"), commit("a"))))
+                .as("The order of commits should change the tag.")
+                .isNotEqualTo(tag);
+        assertThat(PageCache.tag(List.of(commit("a"))))
+                .as("Another page should have another tag.")
+                .isNotEqualTo(tag);
+        assertThat(CommitResource.matches("W/\"x\", " + tag, tag))
+                .as("A header with the tag should match.")
+                .isTrue();
+        assertThat(CommitResource.matches("\"x\"", tag))
+                .as("A header without the tag should not match.")
+                .isFalse();
+    }
+
+    /**
+     * Ensures that pages are serialized once, and evicted once they exceed the maximum bytes.
+     */
+    @Test
+    public void ensurePagesAreSerializedOnce() {
+        final List<CommitModel> page = List.of(commit("a"), commit("b"));
+        final EntityTag tag = PageCache.tag(page);
+        final PageCache pages = new PageCache(1024);
+
+        final byte[] bytes = pages.serialize(tag, page);
+        assertThat(new String(bytes, UTF_8))
+                .as("The page should be serialized as JSON without parents.")
+                .startsWith("[{\"sha\":\"a\"")
+                .doesNotContain("parents");
+        assertThat(pages.serialize(tag, page))
+                .as("The serialized page should be kept.")
+                .isSameAs(bytes);
+
+        final List<CommitModel> large = List.of(commit("x".repeat(2048)));
+        final EntityTag largeTag = PageCache.tag(large);
+        assertThat(pages.serialize(largeTag, large))
+                .as("A page larger than the cache should still be serialized.")
+                .isNotSameAs(pages.serialize(largeTag, large));
+    }
+}
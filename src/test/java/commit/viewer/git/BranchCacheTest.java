@@ -0,0 +1,87 @@
+package commit.viewer.git;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link BranchCache} tests, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class BranchCacheTest {
+
+    /**
+     * Ensures that refreshes scheduled while a refresh waits for its turn are coalesced into it.
+     */
+    @Test
+    public void ensureWaitingRefreshesAreCoalesced() {
+        final BranchCache cache = new BranchCache(new CommitGraph());
+        final CompletableFuture<Void> blocker = new CompletableFuture<>();
+        final AtomicInteger refreshes = new AtomicInteger();
+
+        cache.update(() -> blocker);
+        final CompletableFuture<Void> first = cache.refresh(() -> {
+            refreshes.incrementAndGet();
+            return completedFuture(null);
+        });
+        final CompletableFuture<Void> second = cache.refresh(() -> {
+            refreshes.incrementAndGet();
+            return completedFuture(null);
+        });
+        blocker.complete(null);
+        CompletableFuture.allOf(first, second).join();
+
+        assertThat(refreshes.get())
+                .as("A single refresh should run.")
+                .isEqualTo(1);
+
+        cache.refresh(() -> {
+            refreshes.incrementAndGet();
+            return completedFuture(null);
+        }).join();
+        assertThat(refreshes.get())
+                .as("A refresh scheduled after the previous one started should run.")
+                .isEqualTo(2);
+    }
+
+    /**
+     * Ensures that the cache is fresh after a successful refresh only, and keeps when it was used.
+     */
+    @Test
+    public void ensureFreshnessFollowsRefreshes() {
+        final BranchCache cache = new BranchCache(new CommitGraph());
+        final long minute = TimeUnit.MINUTES.toNanos(1);
+
+        assertThat(cache.isFresh(minute))
+                .as("A cache never refreshed should be stale.")
+                .isFalse();
+        assertThat(cache.isUsedWithin(minute))
+                .as("A cache never used should not be used recently.")
+                .isFalse();
+
+        cache.refresh(() -> CompletableFuture.failedFuture(new IllegalStateException("unavailable")))
+                .exceptionally(e -> null)
+                .join();
+        assertThat(cache.isFresh(minute))
+                .as("A failed refresh should keep the cache stale.")
+                .isFalse();
+
+        cache.refresh(() -> completedFuture(null)).join();
+        cache.use();
+        assertThat(cache.isFresh(minute))
+                .as("A refreshed cache should be fresh.")
+                .isTrue();
+        assertThat(cache.isFresh(0))
+                .as("A refreshed cache should be stale after the freshness time.")
+                .isFalse();
+        assertThat(cache.isUsedWithin(minute))
+                .as("A used cache should be used recently.")
+                .isTrue();
+    }
+}
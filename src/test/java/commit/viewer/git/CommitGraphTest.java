@@ -0,0 +1,94 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link CommitGraph} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitGraphTest {
+
+    /**
+     * Ensures that a parent stored before the commit itself gets the same id once the commit is stored.
+     */
+    @Test
+    public void ensureParentsAreLinkedBeforeBeingStored() {
+        final CommitGraph graph = new CommitGraph();
+        final int child = graph.add(commit(2, 1));
+        final int parent = graph.parents(child)[0];
+
+        assertThat(graph.sha(parent))
+                .as("Parent should be known by sha.")
+                .isEqualTo(sha(1));
+        assertThat(graph.add(commit(1)))
+                .as("Stored parent should keep its id.")
+                .isEqualTo(parent);
+        assertThat(graph.read(parent))
+                .as("Stored parent should be read.")
+                .isEqualTo(commit(1));
+        assertThat(graph.parents(parent))
+                .as("Root should have no parents.")
+                .isEmpty();
+    }
+
+    /**
+     * Ensures that history positions are found on a linear history, and after a merge only once merged commits are
+     * passed.
+     */
+    @Test
+    public void ensureHistoryPositionsFollowMerges() {
+        // 5 merges 4 and 3, both children of 2, then 1 and 0 are linear.
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore linear = new CommitStore(graph);
+        linear.append(List.of(commit(5, 4, 3), commit(4, 2), commit(3, 2), commit(2, 1), commit(1, 0), commit(0)));
+
+        assertThat(graph.historyPositions(linear.snapshot(), linear.size()))
+                .as("Positions between the merge and the fork point should not be history positions.")
+                .containsExactly(0, 3, 4, 5);
+        assertThat(graph.isHistoryPosition(linear.snapshot(), 1))
+                .as("A merged commit should not be a history position.")
+                .isFalse();
+    }
+
+    /**
+     * Ensures that the scan stops at commits whose parents are unknown.
+     */
+    @Test
+    public void ensureUnknownParentsStopHistory() {
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore store = new CommitStore(graph);
+        final List<CommitModel> commits = new ArrayList<>(List.of(commit(3, 2)));
+        commits.add(new CommitModel.Builder().sha(sha(2)).message("m").author("a").date("n/a").build());
+        commits.add(commit(1, 0));
+        store.append(commits);
+
+        assertThat(graph.historyPositions(store.snapshot(), store.size()))
+                .as("Positions after unknown parents should not be history positions.")
+                .containsExactly(0, 1);
+    }
+
+    private static CommitModel commit(final int i, final int... parents) {
+        final List<String> shas = new ArrayList<>();
+        for (final int parent : parents) {
+            shas.add(sha(parent));
+        }
+        return new CommitModel.Builder()
+                .sha(sha(i))
+                .message("message " + i)
+                .author("author")
+                .date("2020-01-01T00:00:00Z")
+                .parents(shas)
+                .build();
+    }
+
+    private static String sha(final int i) {
+        return String.format("%040x", i);
+    }
+}
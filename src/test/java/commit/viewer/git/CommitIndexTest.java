@@ -0,0 +1,106 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link CommitIndex} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitIndexTest {
+
+    /**
+     * Ensures that each criterion is matched, alone and combined, and that matches are newest first.
+     */
+    @Test
+    public void ensureQueriesMatchEveryCriterion() {
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore store = new CommitStore(graph);
+        store.append(List.of(
+                commit(4, "Ada", "Fix cache eviction", "2020-09-14T10:00:00Z"),
+                commit(3, "Grace", "Fix parser", "2020-09-13T23:59:59Z"),
+                commit(2, "ada", "Add cache", "2020-09-13T00:00:00Z"),
+                commit(1, "Grace", "Initial commit", "2020-09-12T12:00:00Z")
+        ));
+
+        assertThat(search(graph, store, new CommitQuery.Builder().author("ADA").build(), 10))
+                .as("Author should be matched ignoring case.")
+                .containsExactly(sha(4), sha(2));
+        assertThat(search(graph, store, new CommitQuery.Builder().text("cache FIX").build(), 10))
+                .as("Every term should be matched in any order.")
+                .containsExactly(sha(4));
+        assertThat(search(graph, store, new CommitQuery.Builder().text("cach").build(), 10))
+                .as("Terms should be matched whole.")
+                .isEmpty();
+        assertThat(search(graph, store, new CommitQuery.Builder()
+                .since(Instant.parse("2020-09-13T00:00:00Z"))
+                .until(Instant.parse("2020-09-13T23:59:59Z"))
+                .build(), 10))
+                .as("Dates should be matched inclusively.")
+                .containsExactly(sha(3), sha(2));
+        assertThat(search(graph, store, new CommitQuery.Builder()
+                .author("grace")
+                .since(Instant.parse("2020-09-13T12:00:00Z"))
+                .build(), 10))
+                .as("Criteria should be combined.")
+                .containsExactly(sha(3));
+        assertThat(search(graph, store, new CommitQuery.Builder().text("fix").build(), 1))
+                .as("Only the newest matches should be found.")
+                .containsExactly(sha(4));
+        assertThat(search(graph, store, new CommitQuery.Builder().author("Linus").build(), 10))
+                .as("An unknown author should match nothing.")
+                .isEmpty();
+    }
+
+    /**
+     * Ensures that commits shared by branches are indexed once, and found only on the branches that have them.
+     */
+    @Test
+    public void ensureSearchIsRestrictedToBranch() {
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore master = new CommitStore(graph);
+        final CommitStore feature = new CommitStore(graph);
+        master.append(List.of(commit(3, "Ada", "Release", "2020-09-14T00:00:00Z"),
+                commit(1, "Ada", "Initial release", "2020-09-12T00:00:00Z")));
+        feature.append(List.of(commit(2, "Ada", "Feature release", "2020-09-13T00:00:00Z"),
+                commit(1, "Ada", "Initial release", "2020-09-12T00:00:00Z")));
+        final long bytes = graph.search.estimatedBytes();
+
+        assertThat(search(graph, master, new CommitQuery.Builder().text("release").build(), 10))
+                .as("Commits of other branches should not be found.")
+                .containsExactly(sha(3), sha(1));
+        assertThat(search(graph, feature, new CommitQuery.Builder().text("release").build(), 10))
+                .as("Shared commits should be found on every branch.")
+                .containsExactly(sha(2), sha(1));
+
+        feature.append(List.of(commit(1, "Ada", "Initial release", "2020-09-12T00:00:00Z")));
+        assertThat(graph.search.estimatedBytes())
+                .as("A commit already stored should not be indexed again.")
+                .isEqualTo(bytes);
+    }
+
+    private static List<String> search(final CommitGraph graph, final CommitStore store, final CommitQuery query,
+                                       final int size) {
+        final CommitStore.Snapshot commits = store.snapshot();
+        final List<String> shas = new ArrayList<>();
+        for (final int position : graph.search.search(query, commits, size)) {
+            shas.add(commits.get(position).getSha());
+        }
+        return shas;
+    }
+
+    private static CommitModel commit(final int i, final String author, final String message, final String date) {
+        return new CommitModel.Builder().sha(sha(i)).author(author).message(message).date(date).build();
+    }
+
+    private static String sha(final int i) {
+        return String.format("%040d", i);
+    }
+}
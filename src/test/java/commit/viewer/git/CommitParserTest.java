@@ -0,0 +1,87 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link CommitParser} tests against recorded Github API message bodies, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitParserTest {
+
+    /**
+     * Ensures that only the needed fields are pulled from a commits message body.
+     */
+    @Test
+    public void ensureCommitsAreParsed() {
+        final List<CommitModel> commits = CommitParser.parseCommits(resource("/github/commits.json"));
+
+        assertThat(commits)
+                .as("Both commits should be parsed.")
+                .containsExactly(
+                        new CommitModel.Builder()
+                                .sha("6dcb09b5b57875f334f61aebed695e2e4193db5e")
+                                .message("Fix all the bugs")
+                                .author("The Octocat")
+                                .date("2011-04-14T16:00:49Z")
+                                .build(),
+                        new CommitModel.Builder()
+                                .sha("553c2077f0edc3d5dc5d17262f6aa498e69d6f8e")
+                                .message("Initial commit\n\nWith a body of \"quoted\" text.")
+                                .author("The Octocat")
+                                .date("2011-04-13T10:30:00Z")
+                                .build()
+                );
+        assertThat(commits.get(0).getParents())
+                .as("Parents should be parsed.")
+                .containsExactly("553c2077f0edc3d5dc5d17262f6aa498e69d6f8e");
+        assertThat(commits.get(1).getParents())
+                .as("Root commit should have no parents.")
+                .isEmpty();
+    }
+
+    /**
+     * Ensures that missing fields are filled with {@code n/a}.
+     */
+    @Test
+    public void ensureMissingFieldsAreNotAvailable() {
+        final List<CommitModel> commits = CommitParser.parseCommits(stream("[{\"sha\": \"abc\", \"commit\": {}}]"));
+
+        assertThat(commits)
+                .as("Missing fields should be n/a.")
+                .containsExactly(new CommitModel.Builder()
+                        .sha("abc")
+                        .message("n/a")
+                        .author("n/a")
+                        .date("n/a")
+                        .build());
+    }
+
+    /**
+     * Ensures that an error message body, e.g., when rate limit is exceeded, is not parsed as commits.
+     */
+    @Test
+    public void ensureErrorMessageIsRejected() {
+        assertThatThrownBy(() -> CommitParser.parseCommits(stream("{\"message\": \"API rate limit exceeded\"}")))
+                .as("A JSON object is not a list of commits.")
+                .isInstanceOf(UncheckedIOException.class);
+    }
+
+    private static InputStream resource(final String name) {
+        return CommitParserTest.class.getResourceAsStream(name);
+    }
+
+    private static InputStream stream(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,158 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link CommitSegment} tests, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitSegmentTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Ensures that prepended and appended commits are loaded in order after reopening the segment.
+     *
+     * @throws IOException If the segment cannot be used.
+     */
+    @Test
+    public void ensureCommitsAreLoadedInOrder() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("repository/master.seg");
+        try (final CommitSegment segment = CommitSegment.open(file, new CommitStore())) {
+            segment.append(commits(10, 20));
+            segment.prepend(commits(5, 10));
+            segment.append(commits(20, 25));
+            segment.prepend(commits(0, 5));
+        }
+
+        final CommitStore store = new CommitStore();
+        try (final CommitSegment segment = CommitSegment.open(file, store)) {
+            assertThat(store.snapshot())
+                    .as("All commits should be loaded newest first.")
+                    .containsExactlyElementsOf(commits(0, 25));
+
+            segment.prepend(commits(-3, 0));
+        }
+
+        final CommitStore reopened = new CommitStore();
+        CommitSegment.open(file, reopened).close();
+        assertThat(reopened.snapshot())
+                .as("Commits prepended after loading should be loaded too.")
+                .containsExactlyElementsOf(commits(-3, 25));
+    }
+
+    /**
+     * Ensures that a reset drops previous commits and the segment is compacted when loading.
+     *
+     * @throws IOException If the segment cannot be used.
+     */
+    @Test
+    public void ensureResetDropsCommits() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("master.seg");
+        try (final CommitSegment segment = CommitSegment.open(file, new CommitStore())) {
+            segment.append(commits(0, 100));
+            segment.reset();
+            segment.append(commits(200, 210));
+        }
+        final long sizeBeforeCompaction = Files.size(file);
+
+        final CommitStore store = new CommitStore();
+        CommitSegment.open(file, store).close();
+
+        assertThat(store.snapshot())
+                .as("Only commits after reset should be loaded.")
+                .containsExactlyElementsOf(commits(200, 210));
+        assertThat(Files.size(file))
+                .as("Dropped commits should be compacted away.")
+                .isLessThan(sizeBeforeCompaction);
+    }
+
+    /**
+     * Ensures that a torn record at the end of the segment is ignored and truncated.
+     *
+     * @throws IOException If the segment cannot be used.
+     */
+    @Test
+    public void ensureTornRecordIsTruncated() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("master.seg");
+        try (final CommitSegment segment = CommitSegment.open(file, new CommitStore())) {
+            segment.append(commits(0, 10));
+        }
+        final long size = Files.size(file);
+        try (final CommitSegment segment = CommitSegment.open(file, new CommitStore())) {
+            segment.append(commits(10, 11));
+        }
+        // Simulates a crash in the middle of writing the last record.
+        try (final FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        final CommitStore store = new CommitStore();
+        CommitSegment.open(file, store).close();
+
+        assertThat(store.snapshot())
+                .as("Only complete records should be loaded.")
+                .containsExactlyElementsOf(commits(0, 10));
+        assertThat(Files.size(file))
+                .as("The torn record should be truncated.")
+                .isEqualTo(size);
+    }
+
+    /**
+     * Ensures that missing fields are loaded as missing rather than empty, so a loaded commit equals the fetched one.
+     *
+     * @throws IOException If the segment cannot be used.
+     */
+    @Test
+    public void ensureNullFieldsRoundTrip() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("master.seg");
+        final List<CommitModel> commits = List.of(
+                new CommitModel.Builder().sha(String.format("%040x", 1)).message("").date("2020-01-01T00:00:00Z")
+                        .build(),
+                new CommitModel.Builder().sha(String.format("%040x", 2)).build()
+        );
+        try (final CommitSegment segment = CommitSegment.open(file, new CommitStore())) {
+            segment.append(commits);
+        }
+
+        final CommitStore store = new CommitStore();
+        CommitSegment.open(file, store).close();
+        assertThat(store.snapshot())
+                .as("Commits with missing fields should be loaded as they were written.")
+                .containsExactlyElementsOf(commits);
+        assertThat(store.snapshot().get(0).getAuthor())
+                .as("A missing author should be loaded as missing.")
+                .isNull();
+        assertThat(store.snapshot().get(0).getMessage())
+                .as("An empty message should be loaded as empty.")
+                .isEmpty();
+    }
+
+    private static List<CommitModel> commits(final int from, final int to) {
+        final List<CommitModel> commits = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            commits.add(new CommitModel.Builder()
+                    .sha(String.format("%040x", i + 1000))
+                    .message("message " + i + " é中")
+                    .author("author " + (i % 3))
+                    .date("2020-01-01T00:00:00Z")
+                    .build());
+        }
+        return commits;
+    }
+}
@@ -0,0 +1,67 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import commit.viewer.model.CommitStatsModel;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link CommitStats} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitStatsTest {
+
+    /**
+     * Ensures that commits prepended and appended to a branch are aggregated, and that clearing the branch starts the
+     * aggregates over.
+     */
+    @Test
+    public void ensureStatsFollowBranch() {
+        final BranchCache cache = new BranchCache(new CommitGraph());
+        cache.append(List.of(
+                commit(3, "Ada", "2020-09-14T10:00:00Z"),
+                commit(2, "Grace", "2020-09-13T23:59:59Z")
+        ));
+        cache.prepend(List.of(commit(4, "Grace", "2020-09-21T00:00:00Z")));
+        cache.append(List.of(commit(1, "Ada", "2020-09-13T00:00:00Z"), commit(0, "Linus", "n/a")));
+
+        final CommitStatsModel stats = cache.stats();
+        assertThat(stats.getCommits())
+                .as("Every commit should be counted.")
+                .isEqualTo(5);
+        assertThat(stats.getFirst())
+                .as("The oldest date should be kept.")
+                .isEqualTo("2020-09-13T00:00:00Z");
+        assertThat(stats.getLast())
+                .as("The newest date should be kept.")
+                .isEqualTo("2020-09-21T00:00:00Z");
+        assertThat(stats.getAuthors())
+                .as("Commits should be counted by author, undated commits too.")
+                .isEqualTo(Map.of("Ada", 2L, "Grace", 2L, "Linus", 1L));
+        assertThat(stats.getTimeToFirstCommit())
+                .as("The first commit of each dated author should be timed from the oldest commit.")
+                .isEqualTo(Map.of("Ada", 0L, "Grace", 86399L));
+        assertThat(stats.getDays())
+                .as("Commits should be counted by UTC day, oldest first.")
+                .containsExactly(Map.entry("2020-09-13", 2L), Map.entry("2020-09-14", 1L),
+                        Map.entry("2020-09-21", 1L));
+        assertThat(stats.getWeeks())
+                .as("Commits should be counted by week starting on Monday, oldest first.")
+                .containsExactly(Map.entry("2020-09-07", 2L), Map.entry("2020-09-14", 1L),
+                        Map.entry("2020-09-21", 1L));
+
+        cache.clear();
+        assertThat(cache.stats().getCommits())
+                .as("A cleared branch should have no commits.")
+                .isZero();
+    }
+
+    private static CommitModel commit(final int i, final String author, final String date) {
+        return new CommitModel.Builder().sha(String.format("%040d", i)).author(author).message("m").date(date).build();
+    }
+}
@@ -0,0 +1,215 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link CommitStore} tests, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class CommitStoreTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitStoreTest.class);
+
+    /**
+     * Ensures that prepended and appended commits keep the newest first order across chunks.
+     */
+    @Test
+    public void ensurePrependAndAppendKeepOrder() {
+        final CommitStore store = new CommitStore();
+        store.append(commits(3000, 5000));
+        store.prepend(commits(1000, 3000));
+        store.append(commits(5000, 5001));
+        store.prepend(commits(0, 1000));
+
+        final List<CommitModel> snapshot = store.snapshot();
+        assertThat(snapshot)
+                .as("Store should have 5001 commits.")
+                .hasSize(5001);
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertThat(snapshot.get(i).getSha())
+                    .as("Commit at position %d should be in order.", i)
+                    .isEqualTo(sha(i));
+        }
+        assertThat(snapshot.subList(4000, 4003))
+                .as("Deep page should have the expected commits.")
+                .containsExactlyElementsOf(commits(4000, 4003));
+    }
+
+    /**
+     * Ensures that a published snapshot never changes after later writes.
+     */
+    @Test
+    public void ensureSnapshotIsImmutable() {
+        final CommitStore store = new CommitStore();
+        store.append(commits(10, 20));
+        final List<CommitModel> before = store.snapshot();
+
+        store.prepend(commits(0, 10));
+        store.append(commits(20, 30));
+
+        assertThat(before)
+                .as("Older snapshot should not see later writes.")
+                .containsExactlyElementsOf(commits(10, 20));
+        assertThat(store.snapshot())
+                .as("Newer snapshot should see all writes.")
+                .containsExactlyElementsOf(commits(0, 30));
+        assertThatThrownBy(() -> before.add(commits(30, 31).get(0)))
+                .as("Snapshot should not be modifiable.")
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    /**
+     * Ensures that the position of a sha is found on the snapshot it was written to and later ones only.
+     */
+    @Test
+    public void ensureShaIndexFindsPositions() {
+        final CommitStore store = new CommitStore();
+        store.append(commits(3000, 5000));
+        final CommitStore.Snapshot before = store.snapshot();
+        store.prepend(commits(0, 3000));
+        store.append(List.of(new CommitModel.Builder().sha("n/a").message("m").author("a").date("n/a").build()));
+
+        final CommitStore.Snapshot snapshot = store.snapshot();
+        for (int i = 0; i < 5000; i++) {
+            assertThat(snapshot.indexOf(sha(i)))
+                    .as("Sha %d should be at its position.", i)
+                    .isEqualTo(i);
+        }
+        assertThat(snapshot.indexOf("n/a"))
+                .as("Raw sha should be indexed.")
+                .isEqualTo(5000);
+        assertThat(snapshot.indexOf(sha(5001)))
+                .as("Unknown sha should not be found.")
+                .isEqualTo(-1);
+        assertThat(before.indexOf(sha(3000)))
+                .as("Older snapshot should have positions of its time.")
+                .isEqualTo(0);
+        assertThat(before.indexOf(sha(0)))
+                .as("Older snapshot should not see later writes.")
+                .isEqualTo(-1);
+    }
+
+    /**
+     * Ensures that values which do not fit the compact encoding are kept as they were given.
+     */
+    @Test
+    public void ensureRawValuesRoundTrip() {
+        final List<CommitModel> commits = List.of(
+                new CommitModel.Builder().sha("n/a").message(null).author(null).date("n/a").build(),
+                new CommitModel.Builder().sha(sha(1).toUpperCase()).message("m").author("a")
+                        .date("2020-01-01T00:00:00.123456Z").build(),
+                new CommitModel.Builder().sha(sha(2)).message("m").author("a").date("2020-01-01T10:00:00+01:00").build(),
+                new CommitModel.Builder().sha(sha(3)).message("m").author("a").date("2020-01-01T00:00:00.500Z").build());
+        final CommitStore store = new CommitStore();
+        store.append(commits);
+
+        assertThat(store.snapshot())
+                .as("Raw values should round trip.")
+                .containsExactlyElementsOf(commits);
+    }
+
+    /**
+     * Ensures that the compact encoding uses less than half the heap of plain {@link CommitModel} objects, and reports
+     * both sizes.
+     */
+    @Test
+    public void ensureCompactEncodingReducesHeap() {
+        final int count = 100_000;
+        final List<CommitModel> commits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            commits.add(new CommitModel.Builder()
+                    .sha(String.format("%040x", i * 2654435761L))
+                    .message("Fix the issue number " + i)
+                    .author("author " + (i % 50))
+                    .date(Instant.ofEpochSecond(1_500_000_000L + i * 60L).toString())
+                    .build());
+        }
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore store = new CommitStore(graph);
+        store.append(commits);
+
+        final long plain = plainBytes(commits);
+        final long compact = graph.estimatedBytes() + store.estimatedBytes();
+        logger.info("{} commits use {} bytes as CommitModel and {} bytes compact ({}% less).",
+                count, plain, compact, 100 - compact * 100 / plain);
+        assertThat(compact)
+                .as("Compact encoding should use less than half the heap.")
+                .isLessThan(plain / 2);
+        assertThat(store.snapshot())
+                .as("Compact encoding should round trip.")
+                .isEqualTo(commits);
+    }
+
+    /**
+     * Ensures that branches sharing their history store each commit once on the graph, and reports the size of a
+     * branch.
+     */
+    @Test
+    public void ensureBranchesShareCommits() {
+        final CommitGraph graph = new CommitGraph();
+        final CommitStore master = new CommitStore(graph);
+        master.append(commits(0, 10_000));
+        final long graphBytes = graph.estimatedBytes();
+
+        final CommitStore feature = new CommitStore(graph);
+        feature.prepend(commits(20_000, 20_010));
+        feature.append(commits(0, 10_000));
+
+        logger.info("10000 shared commits use {} bytes on the graph and {} bytes per branch.", graphBytes,
+                feature.estimatedBytes());
+        assertThat(graph.estimatedBytes() - graphBytes)
+                .as("Shared commits should not be stored again.")
+                .isLessThan(feature.estimatedBytes());
+        assertThat(feature.snapshot().id(10))
+                .as("Shared commits should have the same id.")
+                .isEqualTo(master.snapshot().id(0));
+        assertThat(feature.snapshot().subList(10, 10_010))
+                .as("Shared commits should be read from the graph.")
+                .isEqualTo(master.snapshot());
+    }
+
+    /**
+     * Estimates the heap of the given commits held in a list, with the same assumptions as
+     * {@link CommitStore#estimatedBytes()}: compressed references and compact Latin-1 strings.
+     */
+    private static long plainBytes(final List<CommitModel> commits) {
+        long bytes = 16 + commits.size() * 4L;
+        for (final CommitModel commit : commits) {
+            bytes += 32 + string(commit.getSha()) + string(commit.getMessage()) + string(commit.getAuthor())
+                    + string(commit.getDate());
+        }
+        return bytes;
+    }
+
+    private static long string(final String value) {
+        return 24 + ((16 + value.length() + 7) & ~7L);
+    }
+
+    private static List<CommitModel> commits(final int from, final int to) {
+        final List<CommitModel> commits = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            commits.add(new CommitModel.Builder()
+                    .sha(sha(i))
+                    .message("message " + i)
+                    .author("author")
+                    .date("2020-01-01T00:00:00Z")
+                    .build());
+        }
+        return commits;
+    }
+
+    private static String sha(final int i) {
+        return String.format("%040x", i);
+    }
+}
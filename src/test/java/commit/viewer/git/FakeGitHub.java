@@ -0,0 +1,629 @@
+package commit.viewer.git;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Local stub of Github REST API, serving a synthetic repository, so tests and load tests neither need network nor
+ * count against Github rate limit.
+ * <p>
+ * The repository has a history of the given number of commits on its default branch {@code master}, commit
+ * {@code 1} being the oldest, see {@link #sha(long)}, and other branches pointing to older commits of that history.
+ * Commits are pushed to {@code master} by {@link #push(int)}. The history is linear unless some commits of
+ * {@code master} merge a side branch, see {@link Builder#merge(long, long)}, whose commits alternate by date with the
+ * ones of {@code master}, so they are listed interleaved like Github lists a branch, i.e., newest commit date first. The repository, branch and commits endpoints are served
+ * in the shape of Github, with the given latency, strong {@code ETag}s answered by {@code 304 Not Modified}, and a
+ * rate limit whose window is reset every hour. Like Github, a {@code 304} does not count against the rate limit and a
+ * request beyond it is answered by {@code 403 Forbidden}. GraphQL API is not served.
+ * <p>
+ * Requests are counted by call type, see {@link GitHubClient#callType}.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public final class FakeGitHub implements AutoCloseable {
+
+    /**
+     * The default branch of the repository.
+     */
+    public static final String DEFAULT_BRANCH = "master";
+
+    private static final Pattern SHA = Pattern.compile("[0-9a-f]{40}");
+
+    /**
+     * The bit set on the number of a commit of a merged branch, the number also has the merge commit and the position
+     * on the merged branch, see {@link #sha(long, long)}.
+     */
+    private static final long SIDE = 1L << 40;
+
+    private static final String[] AUTHORS = {"Ada Lovelace", "Grace Hopper", "Alan Turing"};
+
+    /**
+     * The date of commit {@code 0}, commits are a minute apart.
+     */
+    private static final long EPOCH = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    private static final long RATE_LIMIT_WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String owner;
+
+    private final String repository;
+
+    private final long latencyMillis;
+
+    private final boolean etags;
+
+    private final int rateLimit;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    /**
+     * The head of {@code master}.
+     */
+    private final AtomicLong head;
+
+    /**
+     * The head of each other branch.
+     */
+    private final Map<String, Long> branches;
+
+    /**
+     * The number of commits of the branch merged by each merge commit of {@code master}.
+     */
+    private final Map<Long, Long> merges;
+
+    private final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private final LongAdder notModified = new LongAdder();
+
+    private final LongAdder rateLimited = new LongAdder();
+
+    private int remaining;
+
+    private long reset;
+
+    private FakeGitHub(final Builder builder) throws IOException {
+        this.owner = builder.owner;
+        this.repository = builder.repository;
+        this.latencyMillis = builder.latencyMillis;
+        this.etags = builder.etags;
+        this.rateLimit = builder.rateLimit;
+        this.head = new AtomicLong(builder.commits);
+        this.branches = new HashMap<>();
+        builder.behind.forEach((branch, behind) -> this.branches.put(branch, Math.max(0, builder.commits - behind)));
+        this.merges = new TreeMap<>(builder.merges);
+
+        this.executor = Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("fake-github-%d").setDaemon(true).build()
+        );
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Gets the base URL of the API, i.e., the {@code commit.viewer.githubUrl} of a server using it.
+     *
+     * @return The URL, e.g., {@code http://127.0.0.1:41234}.
+     */
+    public String url() {
+        return format("http://%s:%d", this.server.getAddress().getHostString(), this.server.getAddress().getPort());
+    }
+
+    /**
+     * Gets the number of requests received, including the ones answered by {@code 304} or {@code 403}.
+     *
+     * @return The number of requests.
+     */
+    public long requests() {
+        return this.requests.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    /**
+     * Gets the number of requests received of the given call type.
+     *
+     * @param type The call type, e.g., {@code commits}.
+     * @return The number of requests.
+     */
+    public long requests(final String type) {
+        final LongAdder count = this.requests.get(type);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * Gets the number of requests answered by {@code 304 Not Modified}.
+     *
+     * @return The number of requests.
+     */
+    public long notModified() {
+        return this.notModified.sum();
+    }
+
+    /**
+     * Gets the number of requests answered by {@code 403 Forbidden} since the rate limit was exceeded.
+     *
+     * @return The number of requests.
+     */
+    public long rateLimited() {
+        return this.rateLimited.sum();
+    }
+
+    /**
+     * Gets the sha of the newest commit of {@code master}.
+     *
+     * @return The sha.
+     */
+    public String head() {
+        return sha(this.head.get());
+    }
+
+    /**
+     * Pushes the given number of commits to {@code master}.
+     *
+     * @param commits The number of commits.
+     */
+    public void push(final int commits) {
+        this.head.addAndGet(commits);
+    }
+
+    /**
+     * Gets the shas of the newest commits of {@code master}, in the order they are listed.
+     *
+     * @param size The number of commits.
+     * @return {@link List} of shas, newest first.
+     */
+    public List<String> log(final int size) {
+        final List<String> shas = new ArrayList<>();
+        for (final long number : list(this.head.get(), 0, size)) {
+            shas.add(sha(number));
+        }
+        return shas;
+    }
+
+    /**
+     * Gets the sha of the commit of the given number on {@code master}, the first parent of a commit is the commit of
+     * the previous number.
+     *
+     * @param number The number of the commit, from {@code 1}.
+     * @return The sha.
+     */
+    public static String sha(final long number) {
+        return format("%040x", number);
+    }
+
+    /**
+     * Gets the sha of the commit of the given number on the branch merged by the given commit of {@code master}.
+     *
+     * @param merge  The number of the merge commit on {@code master}.
+     * @param number The number of the commit on the merged branch, from {@code 1}.
+     * @return The sha.
+     */
+    public static String sha(final long merge, final long number) {
+        return sha(SIDE | merge << 16 | number);
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            this.requests.computeIfAbsent(GitHubClient.callType(exchange.getRequestURI()), type -> new LongAdder())
+                    .increment();
+            if (this.latencyMillis > 0) {
+                Thread.sleep(this.latencyMillis);
+            }
+            route(exchange);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(final HttpExchange exchange) throws IOException {
+        final String[] segments = exchange.getRequestURI().getPath().replaceFirst("^/", "").split("/");
+        final ObjectNode notFound = mapper.createObjectNode().put("message", "Not Found");
+        if (segments.length < 3 || !segments[0].equals("repos") || !segments[1].equals(this.owner)
+                || !segments[2].equals(this.repository)) {
+            respond(exchange, 404, notFound);
+        } else if (segments.length == 3) {
+            respond(exchange, 200, repository());
+        } else if (segments.length == 5 && segments[3].equals("branches")) {
+            final Long branchHead = SHA.matcher(segments[4]).matches() ? null : resolve(segments[4]);
+            if (branchHead != null) {
+                respond(exchange, 200, branch(segments[4], branchHead));
+            } else {
+                respond(exchange, 404, mapper.createObjectNode().put("message", "Branch not found"));
+            }
+        } else if (segments.length == 4 && segments[3].equals("commits")) {
+            final Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            final Long from = resolve(query.getOrDefault("sha", DEFAULT_BRANCH));
+            final int perPage = Math.max(1, Math.min(100, Integer.parseInt(query.getOrDefault("per_page", "30"))));
+            final int page = Math.max(1, Integer.parseInt(query.getOrDefault("page", "1")));
+            if (from != null) {
+                respond(exchange, 200, commits(from, (long) (page - 1) * perPage, perPage));
+            } else {
+                respond(exchange, 404, notFound);
+            }
+        } else {
+            respond(exchange, 404, notFound);
+        }
+    }
+
+    /**
+     * Answers the given body, or {@code 304} if it has the {@code ETag} of the request, or {@code 403} once the rate
+     * limit is exceeded.
+     */
+    private void respond(final HttpExchange exchange, final int status, final Object body) throws IOException {
+        final byte[] bytes = mapper.writeValueAsBytes(body);
+        final String etag = '"' + Hashing.murmur3_128().hashBytes(bytes).toString() + '"';
+        final boolean matches = this.etags && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"));
+
+        final boolean allowed;
+        final int left;
+        final long resetAt;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (now >= this.reset) {
+                this.remaining = this.rateLimit;
+                this.reset = now + RATE_LIMIT_WINDOW;
+            }
+            allowed = matches || this.remaining > 0;
+            if (!matches && allowed) {
+                this.remaining--;
+            }
+            left = this.remaining;
+            resetAt = this.reset;
+        }
+
+        exchange.getResponseHeaders().set("X-RateLimit-Limit", Integer.toString(this.rateLimit));
+        exchange.getResponseHeaders().set("X-RateLimit-Remaining", Integer.toString(left));
+        exchange.getResponseHeaders().set("X-RateLimit-Used", Integer.toString(this.rateLimit - left));
+        exchange.getResponseHeaders().set("X-RateLimit-Reset", Long.toString(TimeUnit.MILLISECONDS.toSeconds(resetAt)));
+        exchange.getResponseHeaders().set("X-RateLimit-Resource", "core");
+
+        if (!allowed) {
+            this.rateLimited.increment();
+            write(exchange, 403, mapper.writeValueAsBytes(mapper.createObjectNode()
+                    .put("message", "API rate limit exceeded.")));
+            return;
+        }
+        if (matches) {
+            this.notModified.increment();
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if (this.etags && status == 200) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        write(exchange, status, bytes);
+    }
+
+    private static void write(final HttpExchange exchange, final int status, final byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Gets the newest commit number of the given branch or sha.
+     *
+     * @return The number, or {@code null} if there is no such branch or commit.
+     */
+    private Long resolve(final String ref) {
+        final long master = this.head.get();
+        if (ref.equals(DEFAULT_BRANCH)) {
+            return master;
+        }
+        if (SHA.matcher(ref).matches()) {
+            if (!ref.startsWith("000000000000000000000000")) {
+                return null;
+            }
+            final long number = Long.parseUnsignedLong(ref.substring(24), 16);
+            if ((number & SIDE) == 0) {
+                return number >= 1 && number <= master ? number : null;
+            }
+            final long merge = (number & ~SIDE) >>> 16;
+            final long position = number & 0xFFFF;
+            final Long length = this.merges.get(merge);
+            return merge <= master && length != null && position >= 1 && position <= length ? number : null;
+        }
+        return this.branches.get(ref);
+    }
+
+    private ObjectNode repository() {
+        final ObjectNode repository = mapper.createObjectNode()
+                .put("id", 1)
+                .put("name", this.repository)
+                .put("full_name", this.owner + '/' + this.repository)
+                .put("private", false)
+                .put("default_branch", DEFAULT_BRANCH);
+        repository.putObject("owner").put("login", this.owner);
+        return repository;
+    }
+
+    private ObjectNode branch(final String name, final long branchHead) {
+        final ObjectNode branch = mapper.createObjectNode().put("name", name);
+        branch.putObject("commit").put("sha", sha(branchHead));
+        return branch.put("protected", false);
+    }
+
+    /**
+     * Gets the given number of commits of the history of the given one, skipping the given number of commits.
+     */
+    private ArrayNode commits(final long from, final long skip, final int size) {
+        final ArrayNode commits = mapper.createArrayNode();
+        for (final long number : list(from, skip, size)) {
+            commits.add(commit(number));
+        }
+        return commits;
+    }
+
+    /**
+     * Lists the history of the given commit, newest commit date first. A linear history is counted down, otherwise
+     * the history is walked from the given commit.
+     */
+    private List<Long> list(final long from, final long skip, final int size) {
+        final List<Long> numbers = new ArrayList<>(size);
+        if (this.merges.isEmpty()) {
+            for (long number = from - skip; number > Math.max(0, from - skip - size); number--) {
+                numbers.add(number);
+            }
+            return numbers;
+        }
+
+        final PriorityQueue<Long> walk = new PriorityQueue<>(Comparator.comparingLong(this::time).reversed());
+        final Set<Long> seen = new HashSet<>();
+        walk.add(from);
+        seen.add(from);
+        long skipped = 0;
+        while (!walk.isEmpty() && numbers.size() < size) {
+            final long number = walk.poll();
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                numbers.add(number);
+            }
+            for (final long parent : parents(number)) {
+                if (seen.add(parent)) {
+                    walk.add(parent);
+                }
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * Gets the parents of the given commit. The branch merged by a commit of {@code master} is forked from the commit
+     * of {@code master} that is as many commits before the merge as the branch has.
+     */
+    private List<Long> parents(final long number) {
+        final List<Long> parents = new ArrayList<>(2);
+        if ((number & SIDE) != 0) {
+            final long merge = (number & ~SIDE) >>> 16;
+            final long position = number & 0xFFFF;
+            final long fork = merge - 1 - this.merges.get(merge);
+            if (position > 1) {
+                parents.add(number - 1);
+            } else if (fork >= 1) {
+                parents.add(fork);
+            }
+            return parents;
+        }
+        if (number > 1) {
+            parents.add(number - 1);
+        }
+        final Long length = this.merges.get(number);
+        if (length != null && length > 0) {
+            parents.add(SIDE | number << 16 | length);
+        }
+        return parents;
+    }
+
+    /**
+     * Gets the date of the given commit in milliseconds. Commits of {@code master} are a minute apart, and the commits
+     * of a merged branch are half a minute after the commits of {@code master} since the fork.
+     */
+    private long time(final long number) {
+        if ((number & SIDE) == 0) {
+            return EPOCH + TimeUnit.MINUTES.toMillis(number);
+        }
+        final long merge = (number & ~SIDE) >>> 16;
+        final long position = number & 0xFFFF;
+        final long fork = merge - 1 - this.merges.get(merge);
+        return EPOCH + TimeUnit.MINUTES.toMillis(fork + position) + TimeUnit.SECONDS.toMillis(30);
+    }
+
+    private ObjectNode commit(final long number) {
+        final String sha = sha(number);
+        final String commitUrl = format("%s/repos/%s/%s/commits/%s", url(), this.owner, this.repository, sha);
+        final String name = AUTHORS[(int) (number % AUTHORS.length)];
+        final String date = Instant.ofEpochMilli(time(number)).toString();
+
+        final ObjectNode commit = mapper.createObjectNode().put("sha", sha);
+        final ObjectNode details = commit.putObject("commit");
+        details.putObject("author")
+                .put("name", name)
+                .put("email", name.toLowerCase().replace(' ', '.') + "@example.com")
+                .put("date", date);
+        details.putObject("committer")
+                .put("name", name)
+                .put("email", name.toLowerCase().replace(' ', '.') + "@example.com")
+                .put("date", date);
+        final String title = (number & SIDE) == 0
+                ? format("Commit %d", number)
+                : format("Commit %d of the branch merged by commit %d", number & 0xFFFF, (number & ~SIDE) >>> 16);
+        details.put("message", format("%s%n%nSynthetic commit of the fake Github API.", title));
+        details.put("comment_count", 0);
+        commit.put("url", commitUrl);
+        final ArrayNode parents = commit.putArray("parents");
+        for (final long parent : parents(number)) {
+            parents.addObject()
+                    .put("sha", sha(parent))
+                    .put("url", format("%s/repos/%s/%s/commits/%s", url(), this.owner, this.repository,
+                            sha(parent)));
+        }
+        return commit;
+    }
+
+    private static Map<String, String> query(final String rawQuery) {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (final String parameter : rawQuery.split("&")) {
+            final int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(parameter.substring(0, equals), UTF_8),
+                        URLDecoder.decode(parameter.substring(equals + 1), UTF_8));
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Builder of {@link FakeGitHub}.
+     */
+    public static class Builder {
+
+        private String owner = "owner";
+
+        private String repository = "repository";
+
+        private long commits = 1000;
+
+        private final Map<String, Long> behind = new LinkedHashMap<>();
+
+        private final Map<Long, Long> merges = new HashMap<>();
+
+        private long latencyMillis;
+
+        private boolean etags = true;
+
+        private int rateLimit = 5000;
+
+        private int port;
+
+        /**
+         * Sets the repository, {@code owner/repository} by default.
+         */
+        public Builder repository(final String val1, final String val2) {
+            this.owner = val1;
+            this.repository = val2;
+            return this;
+        }
+
+        /**
+         * Sets the number of commits of {@code master}, 1000 by default.
+         */
+        public Builder commits(final long val) {
+            this.commits = val;
+            return this;
+        }
+
+        /**
+         * Adds a branch whose head is the given number of commits behind the head of {@code master}.
+         */
+        public Builder branch(final String val1, final long val2) {
+            this.behind.put(val1, val2);
+            return this;
+        }
+
+        /**
+         * Makes the given commit of {@code master} merge a branch of the given number of commits, which is forked from
+         * the commit of {@code master} that is as many commits before the merge. The merge is only part of the history
+         * once {@code master} has the merge commit.
+         */
+        public Builder merge(final long val1, final long val2) {
+            this.merges.put(val1, val2);
+            return this;
+        }
+
+        /**
+         * Sets the time taken by each response, none by default.
+         */
+        public Builder latencyMillis(final long val) {
+            this.latencyMillis = val;
+            return this;
+        }
+
+        /**
+         * Sets whether responses have an {@code ETag}, they do by default.
+         */
+        public Builder etags(final boolean val) {
+            this.etags = val;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests allowed each hour, 5000 by default as for authenticated requests.
+         */
+        public Builder rateLimit(final int val) {
+            this.rateLimit = val;
+            return this;
+        }
+
+        /**
+         * Sets the port, a free one by default.
+         */
+        public Builder port(final int val) {
+            this.port = val;
+            return this;
+        }
+
+        /**
+         * Starts the server.
+         *
+         * @return The started {@link FakeGitHub}, closed to stop it.
+         * @throws IOException If the port cannot be bound.
+         */
+        public FakeGitHub build() throws IOException {
+            return new FakeGitHub(this);
+        }
+    }
+}
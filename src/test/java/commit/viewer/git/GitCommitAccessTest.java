@@ -1,58 +1,87 @@
 package commit.viewer.git;
 
 import commit.viewer.model.CommitModel;
-import org.json.simple.JSONArray;
-import org.json.simple.parser.ParseException;
+import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
- * GitHub API commit access tests. Note that the tests uses real Github API, which might lead to
- * exceed <i>API rate limit</i>, hence all tests start failing.
+ * GitHub API commit access tests, they use a local stub of Github API, see {@link FakeGitHub}.
  *
  * @author Sheng Wang (shenggwangg@gmail.com)
  */
 public class GitCommitAccessTest {
 
     /**
-     * Before class that starts the singleton {@link GitCommitAccess#INSTANCE} with expected project.
+     * The Github API the project is fetched from.
+     */
+    private static FakeGitHub github;
+
+    /**
+     * The project under test.
+     */
+    private static GitCommitAccess project;
+
+    /**
+     * The branch under test, i.e., the default branch of the project.
+     */
+    private static String branch;
+
+    /**
+     * Before class that starts the expected project on a {@link FakeGitHub}.
      *
-     * @throws IOException          If http request fails sending data.
+     * @throws IOException          If the stub cannot be started.
+     * @throws ExecutionException   If http request fails.
      * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
      */
     @BeforeClass
-    public static void beforeClass() throws IOException, URISyntaxException, ParseException, InterruptedException {
-        final String owner = "apache";
-        final String repository = "spark";
-        GitCommitAccess.INSTANCE.startProject(owner, repository);
+    public static void beforeClass() throws IOException, ExecutionException, InterruptedException {
+        github = new FakeGitHub.Builder()
+                .repository("apache", "spark")
+                .commits(1000)
+                .build();
+        project = new GitCommitAccess(new GitHubClient(HttpClient.newHttpClient()), github.url(), "apache", "spark");
+        assertThat(project.start().get())
+                .as("The project should exist.")
+                .isTrue();
+        branch = project.getDefaultBranch();
+    }
+
+    /**
+     * After class that stops the stub.
+     */
+    @AfterClass
+    public static void afterClass() {
+        github.close();
     }
 
     /**
      * Ensures that request commits works.
      *
-     * @throws IOException          If http request fails sending data.
+     * @throws ExecutionException   If http request fails.
      * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
      */
     @Test
-    public void ensureRequestWorks() throws IOException, URISyntaxException, InterruptedException, ParseException {
+    public void ensureRequestWorks() throws ExecutionException, InterruptedException {
 
-        final List<CommitModel> commits1 = GitCommitAccess.INSTANCE.getCommits();
+        final List<CommitModel> commits1 = project.getCommits(branch).get();
         assertThat(commits1)
                 .as("First get commits must be able to retrieve 30 commits.")
                 .hasSize(30);
 
-        final List<CommitModel> commits2 = GitCommitAccess.INSTANCE.getCommits();
+        final List<CommitModel> commits2 = project.getCommits(branch).get();
         assertThat(commits2)
                 .as("Second get commits must be able to retrieve 30 commits.")
                 .hasSize(30);
@@ -65,110 +94,347 @@ public class GitCommitAccessTest {
     /**
      * Ensures that pagination works.
      *
-     * @throws IOException          If http request fails sending data.
+     * @throws ExecutionException   If http request fails.
      * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
      */
     @Test
-    public void ensureRequestWithPageWorks() throws URISyntaxException, ParseException, InterruptedException, IOException {
-        final List<CommitModel> commitsWithPage1 = GitCommitAccess.INSTANCE.getCommits(2, 5);
-        final List<CommitModel> commitsWithPage2 = GitCommitAccess.INSTANCE.getCommits(3, 5);
+    public void ensureRequestWithPageWorks() throws ExecutionException, InterruptedException {
+        final List<CommitModel> commitsWithPage1 = project.getCommits(branch, 2, 5).get();
+        final List<CommitModel> commitsWithPage2 = project.getCommits(branch, 3, 5).get();
         assertThat(commitsWithPage1)
                 .as("Request page 1 should be different from page 2.")
                 .doesNotContainSequence(commitsWithPage2);
-        final List<CommitModel> commitsWithPage3 = GitCommitAccess.INSTANCE.getCommits(2, 5);
+        final List<CommitModel> commitsWithPage3 = project.getCommits(branch, 2, 5).get();
         assertThat(commitsWithPage1)
                 .as("Request page 1 should be equal to page 3.")
                 .containsSequence(commitsWithPage3);
     }
 
+    /**
+     * Ensures that cursor pagination continues where the previous page ends, in both directions.
+     *
+     * @throws ExecutionException   If http request fails.
+     * @throws InterruptedException If http request is interrupted.
+     */
+    @Test
+    public void ensureRequestWithCursorWorks() throws ExecutionException, InterruptedException {
+        final List<CommitModel> commits = project.getCommits(branch, 1, 15).get();
+
+        final List<CommitModel> after = project.getCommitsAfter(branch, commits.get(4).getSha(), 5).get();
+        assertThat(after)
+                .as("Commits after the cursor should be the following 5 commits.")
+                .containsExactlyElementsOf(commits.subList(5, 10));
+
+        final List<CommitModel> before = project.getCommitsBefore(branch, commits.get(10).getSha(), 5).get();
+        assertThat(before)
+                .as("Commits before the cursor should be the previous 5 commits.")
+                .containsExactlyElementsOf(commits.subList(5, 10));
+
+        final List<CommitModel> first = project.getCommitsBefore(branch, commits.get(2).getSha(), 5).get();
+        assertThat(first)
+                .as("Commits before the cursor should stop at the newest commit.")
+                .containsExactlyElementsOf(commits.subList(0, 2));
+    }
+
     /**
      * Ensures that cache updates correctly with new commits.
      *
-     * @throws IOException          If http request fails sending data.
+     * @throws ExecutionException   If http request fails.
      * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
      */
     @Test
-    public void ensureUpdateCacheWorks() throws URISyntaxException, ParseException, InterruptedException, IOException {
-        final List<CommitModel> commitsWithPage1 = GitCommitAccess.INSTANCE.getCommits();
+    public void ensureUpdateCacheWorks() throws ExecutionException, InterruptedException {
+        final List<CommitModel> commitsWithPage1 = project.getCommits(branch).get();
 
         final CommitModel newestCommit = commitsWithPage1.get(0);
 
         // Removes locally the first/newest commit of the given branch.
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeFirst();
+        removeFirst(project.cache.get(branch));
 
         assertThat(newestCommit)
                 .as("The newest commit is removed.")
-                .isNotEqualTo(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).getFirst());
+                .isNotEqualTo(project.cache.get(branch).getFirst());
+
+        // The cache is fresh, so it is only refreshed on demand or in background.
+        project.refresh(branch).get();
 
-        final List<CommitModel> commitsWithPage2 = GitCommitAccess.INSTANCE.getCommits();
+        final List<CommitModel> commitsWithPage2 = project.getCommits(branch).get();
         assertThat(commitsWithPage2.get(0))
                 .as("Update cache should fetch the newest commit.")
                 .isEqualTo(newestCommit);
     }
 
 
+    /**
+     * Ensures that refreshing an unchanged branch is answered by {@code 304 Not Modified}, and that pushed commits are
+     * fetched by the next refresh.
+     *
+     * @throws ExecutionException   If http request fails.
+     * @throws InterruptedException If http request is interrupted.
+     */
+    @Test
+    public void ensureRefreshFetchesOnlyChanges() throws ExecutionException, InterruptedException {
+        project.getCommits(branch).get();
+        project.refresh(branch).get();
+
+        final long notModified = github.notModified();
+        project.refresh(branch).get();
+        assertThat(github.notModified())
+                .as("Refreshing an unchanged branch should be answered by not modified.")
+                .isEqualTo(notModified + 1);
+
+        github.push(3);
+        project.refresh(branch).get();
+        assertThat(project.getCommits(branch, 1, 1).get().get(0).getSha())
+                .as("Refresh should fetch the pushed commits.")
+                .isEqualTo(github.head());
+    }
+
+    /**
+     * Ensures that a branch is checked out only if it exists.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @Test
+    public void ensureCheckoutOfMissingBranchFails() throws IOException {
+        try (FakeGitHub branches = new FakeGitHub.Builder().branch("feature", 10).build()) {
+            final GitCommitAccess other = new GitCommitAccess(new GitHubClient(HttpClient.newHttpClient()),
+                    branches.url(), "owner", "repository");
+            assertThat(other.start().join())
+                    .as("The project should exist.")
+                    .isTrue();
+            assertThat(other.setBranch("feature").join())
+                    .as("Existing branch should be checked out.")
+                    .isTrue();
+            assertThat(other.getCommits("feature", 1, 1).join().get(0).getSha())
+                    .as("The branch should start at its own head.")
+                    .isEqualTo(FakeGitHub.sha(990));
+            assertThat(other.setBranch("missing").join())
+                    .as("Missing branch should not be checked out.")
+                    .isFalse();
+        }
+    }
+
+    /**
+     * Ensures that older pages do not shift when commits are pushed while the branch is fresh, i.e., they are counted
+     * from the newest cached commit rather than from the current head of the branch.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @Test
+    public void ensurePagesDoNotShiftOnPush() throws IOException {
+        try (FakeGitHub moving = new FakeGitHub.Builder().build()) {
+            final GitCommitAccess other = new GitCommitAccess(new GitHubClient(HttpClient.newHttpClient()),
+                    moving.url(), "owner", "repository");
+            other.start().join();
+            final String master = other.getDefaultBranch();
+            final List<CommitModel> page1 = other.getCommits(master, 1, 30).join();
+
+            // The branch is fresh, so it is not refreshed before page 2 is fetched.
+            moving.push(5);
+            final List<CommitModel> page2 = other.getCommits(master, 2, 30).join();
+            assertThat(page2.get(0).getSha())
+                    .as("Page 2 should follow page 1 of the cache.")
+                    .isEqualTo(FakeGitHub.sha(970));
+            assertThat(other.cache.get(master).snapshot())
+                    .as("The cache should have both pages, without duplicates or gaps.")
+                    .hasSize(60)
+                    .startsWith(page1.toArray(new CommitModel[0]))
+                    .endsWith(page2.toArray(new CommitModel[0]));
+        }
+    }
+
+    /**
+     * Ensures that new commits of several pages are synced in the order the branch is listed when a side branch is
+     * merged, i.e., the commits of both sides that are interleaved by date are neither dropped nor reordered.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @Test
+    public void ensureSyncFollowsMergedHistory() throws IOException {
+        try (FakeGitHub merged = new FakeGitHub.Builder().merge(1150, 60).build()) {
+            final GitCommitAccess other = new GitCommitAccess(new GitHubClient(HttpClient.newHttpClient()),
+                    merged.url(), "owner", "repository");
+            other.start().join();
+            final String master = other.getDefaultBranch();
+            other.getCommits(master, 1, 30).join();
+
+            // 200 commits of master and 60 of the merged branch, i.e., 3 pages.
+            merged.push(200);
+            other.refresh(master).join();
+            assertThat(shas(other.cache.get(master).snapshot()))
+                    .as("The new commits should be prepended in the order of the branch.")
+                    .isEqualTo(merged.log(290))
+                    .as("The commits of the merged branch should be synced.")
+                    .contains(FakeGitHub.sha(1150, 1), FakeGitHub.sha(1150, 60));
+        }
+    }
+
+    /**
+     * Ensures that a whole history with a merged branch is streamed in order without filling the cache beyond the pages
+     * already cached, and that commits pushed meanwhile are not streamed.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @Test
+    public void ensureStreamDoesNotFillCache() throws IOException {
+        try (FakeGitHub streamed = new FakeGitHub.Builder().merge(500, 60).build()) {
+            final GitCommitAccess other = new GitCommitAccess(new GitHubClient(HttpClient.newHttpClient()),
+                    streamed.url(), "owner", "repository");
+            other.start().join();
+            final String master = other.getDefaultBranch();
+            final List<String> expected = streamed.log(1060);
+            List<CommitModel> chunk = other.getCommits(master, 1, 45).join();
+            final String head = chunk.get(0).getSha();
+            streamed.push(5);
+
+            final List<String> history = new ArrayList<>();
+            while (!chunk.isEmpty()) {
+                history.addAll(shas(chunk));
+                chunk = other.streamCommitsAfter(master, head, chunk.get(chunk.size() - 1).getSha(),
+                        history.size() - 1, 100).join();
+            }
+            assertThat(history)
+                    .as("The whole history should be streamed in order, with the commits of the merged branch.")
+                    .isEqualTo(expected);
+            assertThat(other.cache.get(master).size())
+                    .as("Only the cached page should be kept.")
+                    .isEqualTo(45);
+        }
+    }
+
+    /**
+     * Ensures that cached commits are still served once the rate limit is running out, and that no request is sent
+     * once it is exhausted.
+     *
+     * @throws IOException If the stub cannot be started.
+     */
+    @Test
+    public void ensureRateLimitDegradesToCache() throws IOException {
+        try (FakeGitHub limited = new FakeGitHub.Builder().rateLimit(10).build()) {
+            final GitHubClient client = new GitHubClient(HttpClient.newHttpClient(),
+                    new UpstreamScheduler(List.of(), 100, 100, 0.5));
+            final GitCommitAccess other = new GitCommitAccess(client, limited.url(), "owner", "repository");
+            other.start().join();
+            final String master = other.getDefaultBranch();
+            for (int page = 1; page <= 4; page++) {
+                other.getCommits(master, page, 30).join();
+            }
+
+            // Half of the budget is left, so the stale branch is served without being refreshed.
+            final BranchCache stale = new BranchCache(other.graph);
+            stale.append(other.cache.get(master).snapshot());
+            other.cache.put(master, stale);
+            limited.push(1);
+            final long requests = limited.requests();
+            assertThat(other.getCommits(master, 1, 30).join().get(0).getSha())
+                    .as("The cached page should be served.")
+                    .isEqualTo(FakeGitHub.sha(1000));
+            final List<CommitModel> page5 = other.getCommits(master, 5, 30).join();
+            assertThat(page5)
+                    .as("A page that is not cached should still be fetched.")
+                    .hasSize(30);
+            assertThat(page5.get(0).getSha())
+                    .as("The page should follow the cache, although the push is not synced.")
+                    .isEqualTo(FakeGitHub.sha(880));
+            assertThat(limited.requests())
+                    .as("Only the page that is not cached should be requested.")
+                    .isEqualTo(requests + 1);
+
+            for (int page = 6; page <= 9; page++) {
+                other.getCommits(master, page, 30).join();
+            }
+            final CompletableFuture<List<CommitModel>> exhausted = other.getCommits(master, 10, 30);
+            assertThat(exhausted)
+                    .as("A page that is not cached should fail once the rate limit is exhausted.")
+                    .isCompletedExceptionally();
+            assertThat(RateLimitedException.causeOf(exhausted.handle((commits, e) -> e).join()))
+                    .as("The failure should be the rate limit.")
+                    .isNotNull();
+            assertThat(limited.rateLimited())
+                    .as("No request should be sent beyond the rate limit.")
+                    .isZero();
+        }
+    }
+
     /**
      * Ensures that when asking for oldest commits works.
      *
-     * @throws IOException          If http request fails sending data.
+     * @throws ExecutionException   If http request fails.
      * @throws InterruptedException If http request is interrupted.
-     * @throws URISyntaxException   If URL is invalid.
-     * @throws ParseException       If message body is not a {@link JSONArray}.
      */
     @Test
-    public void ensureFetchOldestCommitsWorks() throws URISyntaxException, ParseException, InterruptedException, IOException {
-        final List<CommitModel> commits1 = GitCommitAccess.INSTANCE.getCommits(1, 37);
+    public void ensureFetchOldestCommitsWorks() throws ExecutionException, InterruptedException {
+        // Starts from an empty cache, so the number of commits per page chosen for each request is known.
+        project.cache.put(branch, new BranchCache(project.graph));
+
+        final List<CommitModel> commits1 = project.getCommits(branch, 1, 37).get();
         assertThat(commits1)
                 .as("Request 1 should have 37 commits.")
                 .hasSize(37);
-        assertThat(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch))
-                .as("Cache of current branch should have 60 commits.")
-                .hasSize(60);
+        assertThat(project.cache.get(branch).snapshot())
+                .as("Cache of current branch should have 37 commits, i.e., a single page of 37 commits.")
+                .hasSize(37);
 
         // Removes 3 oldest commits of the commits of current branch on cache.
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
+        removeLast(project.cache.get(branch));
+        removeLast(project.cache.get(branch));
+        removeLast(project.cache.get(branch));
 
-        assertThat(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch))
-                .as("Cache of current branch should have 57 commits.")
-                .hasSize(57);
+        assertThat(project.cache.get(branch).snapshot())
+                .as("Cache of current branch should have 34 commits.")
+                .hasSize(34);
 
-        final List<CommitModel> commits2 = GitCommitAccess.INSTANCE.getCommits(1, 37);
+        final List<CommitModel> commits2 = project.getCommits(branch, 1, 30).get();
         assertThat(commits2)
-                .as("Request 2 should have 37 commits.")
-                .hasSize(37);
+                .as("Request 2 should have 30 commits.")
+                .hasSize(30);
 
-        assertThat(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch))
-                .as("Cache of current branch should have 57 commits.")
-                .hasSize(57);
+        assertThat(project.cache.get(branch).snapshot())
+                .as("Cache of current branch should have 34 commits.")
+                .hasSize(34);
 
-        final List<CommitModel> commits3 = GitCommitAccess.INSTANCE.getCommits(1, 58);
+        final List<CommitModel> commits3 = project.getCommits(branch, 1, 37).get();
 
         assertThat(commits3)
-                .as("Request 3 should have 58 commits.")
-                .hasSize(58);
-        assertThat(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch))
-                .as("Cache of current branch should have 60 commits.")
+                .as("Request 3 should have 37 commits.")
+                .hasSize(37);
+        assertThat(project.cache.get(branch).snapshot())
+                .as("Cache of current branch should have 60 commits, i.e., page 2 of 30 commits.")
                 .hasSize(60);
 
         // Removes 3 oldest commits of the commits of current branch on cache.
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
-        GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch).removeLast();
+        removeLast(project.cache.get(branch));
+        removeLast(project.cache.get(branch));
+        removeLast(project.cache.get(branch));
 
-        final List<CommitModel> commits4 = GitCommitAccess.INSTANCE.getCommits(1, 61);
+        final List<CommitModel> commits4 = project.getCommits(branch, 1, 61).get();
 
         assertThat(commits4)
                 .as("Request 4 should have 61 commits.")
                 .hasSize(61);
-        assertThat(GitCommitAccess.INSTANCE.cache.get(GitCommitAccess.INSTANCE.branch))
-                .as("Cache of current branch should have 90 commits.")
-                .hasSize(90);
+        assertThat(project.cache.get(branch).snapshot())
+                .as("Cache of current branch should have 62 commits, i.e., page 2 of 31 commits.")
+                .hasSize(62);
+    }
+
+    /**
+     * Ensures that the number of commits per page needs the fewest requests to Github API.
+     */
+    @Test
+    public void ensurePerPageNeedsFewestPages() {
+        assertThat(GitCommitAccess.perPage(0, 30))
+                .as("The first 30 commits should be a single page of 30 commits.")
+                .isEqualTo(30);
+        assertThat(GitCommitAccess.perPage(0, 500))
+                .as("The first 500 commits should be pages of 100 commits.")
+                .isEqualTo(100);
+        assertThat(GitCommitAccess.perPage(195, 205))
+                .as("The commits from 195 until 205 should be a single page of 30 commits, i.e., page 7.")
+                .isEqualTo(30);
+        assertThat(GitCommitAccess.perPage(55, 65))
+                .as("The commits from 55 until 65 should be a single page of 33 commits, i.e., page 2.")
+                .isEqualTo(33);
     }
 
     /**
@@ -186,7 +452,7 @@ public class GitCommitAccessTest {
     }
 
     private void assertCorrect(final String url) {
-        final Matcher matcher = GitCommitAccess.regex.matcher(url);
+        final Matcher matcher = GitCommitAccessRegistry.regex.matcher(url);
         if (matcher.find()) {
             final String owner = matcher.group(1);
             final String repository = matcher.group(2);
@@ -200,9 +466,37 @@ public class GitCommitAccessTest {
     }
 
     private void assertIncorrect(final String url) {
-        final Matcher matcher = GitCommitAccess.regex.matcher(url);
+        final Matcher matcher = GitCommitAccessRegistry.regex.matcher(url);
         assertThat(matcher.matches())
             .as("Should not match")
             .isFalse();
     }
+
+    private static List<String> shas(final List<CommitModel> commits) {
+        return commits.stream().map(CommitModel::getSha).collect(Collectors.toList());
+    }
+
+    /**
+     * Removes the newest commit of the given cache, to simulate an outdated cache.
+     */
+    private static void removeFirst(final BranchCache branchCache) {
+        replace(branchCache, commits -> commits.subList(1, commits.size()));
+    }
+
+    /**
+     * Removes the oldest commit of the given cache, to simulate a partially fetched cache.
+     */
+    private static void removeLast(final BranchCache branchCache) {
+        replace(branchCache, commits -> commits.subList(0, commits.size() - 1));
+    }
+
+    private static void replace(final BranchCache branchCache,
+                                final UnaryOperator<List<CommitModel>> replacement) {
+        branchCache.update(() -> {
+            final List<CommitModel> commits = replacement.apply(branchCache.snapshot());
+            branchCache.clear();
+            branchCache.append(commits);
+            return CompletableFuture.completedFuture(null);
+        }).join();
+    }
 }
@@ -0,0 +1,144 @@
+package commit.viewer.git;
+
+import commit.viewer.git.UpstreamScheduler.Priority;
+import commit.viewer.metrics.Metrics;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link GitHubClient} tests, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class GitHubClientTest {
+
+    private static final URI PAGE = URI.create("https://api.github.com/repos/owner/repository/commits?page=3");
+
+    private static final Function<InputStream, String> TEXT = body -> {
+        try (body) {
+            return new String(body.readAllBytes(), UTF_8);
+        } catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+    /**
+     * Ensures that concurrent requests of the same URL share a single request and its parsed body.
+     */
+    @Test
+    public void ensureConcurrentRequestsAreCoalesced() {
+        final HttpClient http = mock(HttpClient.class);
+        final CompletableFuture<HttpResponse<InputStream>> response = new CompletableFuture<>();
+        when(http.<InputStream>sendAsync(any(), any())).thenReturn(response);
+        final GitHubClient client = new GitHubClient(http);
+
+        final CompletableFuture<String> first = client.get(PAGE, Priority.INTERACTIVE, TEXT);
+        final CompletableFuture<String> second = client.get(PAGE, Priority.INTERACTIVE, TEXT);
+        final CompletableFuture<String> conditional = client.getConditional(PAGE, Priority.INTERACTIVE, TEXT);
+        response.complete(response("page 3"));
+
+        verify(http, times(1)).sendAsync(any(), any());
+        assertThat(List.of(first.join(), second.join(), conditional.join()))
+                .as("All callers should get the same body.")
+                .containsOnly("page 3");
+    }
+
+    /**
+     * Ensures that an interactive request does not join a background request of the same URL, which may wait behind
+     * background requests or be refused to keep the reserve of the rate limit.
+     */
+    @Test
+    public void ensureRequestsOfDifferentPrioritiesAreNotCoalesced() {
+        final HttpClient http = mock(HttpClient.class);
+        final CompletableFuture<HttpResponse<InputStream>> backgroundResponse = new CompletableFuture<>();
+        final CompletableFuture<HttpResponse<InputStream>> interactiveResponse = new CompletableFuture<>();
+        when(http.<InputStream>sendAsync(any(), any())).thenReturn(backgroundResponse).thenReturn(interactiveResponse);
+        final GitHubClient client = new GitHubClient(http);
+
+        final CompletableFuture<String> background = client.get(PAGE, Priority.BACKGROUND, TEXT);
+        final CompletableFuture<String> interactive = client.get(PAGE, Priority.INTERACTIVE, TEXT);
+        interactiveResponse.complete(response("page 3"));
+        backgroundResponse.complete(response("page 3"));
+
+        verify(http, times(2)).sendAsync(any(), any());
+        assertThat(List.of(background.join(), interactive.join()))
+                .as("Both callers should get the body.")
+                .containsOnly("page 3");
+    }
+
+    /**
+     * Ensures that a URL is requested again once its previous request is completed, whether it succeeded or not.
+     */
+    @Test
+    public void ensureCompletedRequestsAreNotShared() {
+        final HttpClient http = mock(HttpClient.class);
+        when(http.<InputStream>sendAsync(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(response("page 3")));
+        final GitHubClient client = new GitHubClient(http);
+
+        assertThat(client.get(PAGE, Priority.INTERACTIVE, TEXT))
+                .as("The first request should fail.")
+                .isCompletedExceptionally();
+        assertThat(client.get(PAGE, Priority.INTERACTIVE, TEXT).join())
+                .as("The second request should be sent again.")
+                .isEqualTo("page 3");
+        verify(http, times(2)).sendAsync(any(), any());
+    }
+
+    /**
+     * Ensures that requests are recorded by call type, and the rate limit left by the last response.
+     */
+    @Test
+    public void ensureRequestsAreMeasured() {
+        final HttpClient http = mock(HttpClient.class);
+        final HttpResponse<InputStream> limited = response("page 3");
+        when(limited.headers()).thenReturn(HttpHeaders.of(
+                Map.of("X-RateLimit-Remaining", List.of("4321"), "X-RateLimit-Resource", List.of("core")),
+                (name, value) -> true
+        ));
+        when(http.<InputStream>sendAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(limited));
+        new GitHubClient(http).get(PAGE, Priority.INTERACTIVE, TEXT).join();
+
+        assertThat(Metrics.INSTANCE.scrape())
+                .as("The latency of the request should be recorded by call type and status.")
+                .containsPattern("commit_viewer_upstream_request_seconds_count\\{type=\"commits\",status=\"200\"} [1-9]")
+                .as("The rate limit left should be recorded.")
+                .contains("commit_viewer_github_rate_limit_remaining{resource=\"core\"} 4321\n");
+        assertThat(List.of(
+                GitHubClient.callType(URI.create("https://api.github.com/repos/owner/repository")),
+                GitHubClient.callType(URI.create("https://api.github.com/repos/owner/repository/branches/main")),
+                GitHubClient.callType(PAGE),
+                GitHubClient.callType(URI.create("https://api.github.com/graphql"))
+        ))
+                .as("Calls should be typed by URL.")
+                .containsExactly("repo", "branch", "commits", "graphql");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> response(final String body) {
+        final HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(UTF_8)));
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of(), (name, value) -> true));
+        return response;
+    }
+}
@@ -0,0 +1,246 @@
+package commit.viewer.git;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import commit.viewer.model.CommitModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link GraphQLCommitFetcher} tests, they do not use Github API but a local stub of GraphQL API that serves the
+ * history of a single branch {@code master}, newest commit first.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class GraphQLCommitFetcherTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The commits of the stub, newest first, each commit is the parent of the previous one.
+     */
+    private final List<String> history = new CopyOnWriteArrayList<>();
+
+    /**
+     * The requests received by the stub.
+     */
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+
+    private final List<String> authorizations = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    private GraphQLCommitFetcher fetcher;
+
+    private GitHubClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        IntStream.range(0, 250).mapToObj(GraphQLCommitFetcherTest::sha).forEach(this.history::add);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/graphql", this::handle);
+        this.server.start();
+        this.client = new GitHubClient(HttpClient.newHttpClient(), "secret");
+        this.fetcher = new GraphQLCommitFetcher(
+                this.client,
+                URI.create(format("http://localhost:%d/graphql", this.server.getAddress().getPort())),
+                "owner",
+                "repository"
+        );
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Ensures that commits are parsed from GraphQL nodes like REST API ones, and only needed fields are requested.
+     */
+    @Test
+    public void ensureNewestCommitsAreParsed() {
+        final List<CommitModel> commits = this.fetcher.fetchNewest("master").join();
+
+        assertThat(commits)
+                .as("The first page should have the maximum number of commits.")
+                .hasSize(GitCommitAccess.MAX_PER_PAGE);
+        assertThat(commits.get(1))
+                .as("The commit should be parsed, with the date in UTC.")
+                .isEqualTo(new CommitModel.Builder()
+                        .sha(sha(1))
+                        .author("Ada Lovelace")
+                        .date(Instant.ofEpochSecond(date(1)).toString())
+                        .message("Commit 1\n\nWith a body.")
+                        .build());
+        assertThat(commits.get(1).getParents())
+                .as("The parents should be parsed.")
+                .containsExactly(sha(2));
+
+        final String query = this.requests.get(0).path("query").asText();
+        assertThat(query)
+                .as("Only the fields of a commit should be requested.")
+                .contains("oid", "message", "committer{name date}")
+                .doesNotMatch("(?s).*(author|tree|url|signature).*");
+        assertThat(this.authorizations)
+                .as("Requests should be authenticated.")
+                .containsOnly("bearer secret");
+    }
+
+    /**
+     * Ensures that pages are requested by cursor of the given head, or of the current head of the branch.
+     */
+    @Test
+    public void ensurePagesAreFetchedByCursor() {
+        assertThat(shas(this.fetcher.fetchPage("master", sha(0), 2, 100).join()))
+                .as("The page should be counted from the head.")
+                .isEqualTo(this.history.subList(100, 200));
+        assertThat(this.requests.get(0).path("variables").path("after").asText())
+                .as("The cursor should be the head and the position of the last commit seen.")
+                .isEqualTo(sha(0) + " 99");
+
+        assertThat(shas(this.fetcher.fetchPage("master", null, 3, 40).join()))
+                .as("The page should be counted from the current head of the branch.")
+                .isEqualTo(this.history.subList(80, 120));
+        assertThat(shas(this.fetcher.fetchPage("master", null, 7, 40).join()))
+                .as("The last page should have the remaining commits.")
+                .isEqualTo(this.history.subList(240, 250));
+        assertThat(shas(this.fetcher.fetchHistory(sha(200), 1, 100).join()))
+                .as("The history should start with the given commit.")
+                .isEqualTo(this.history.subList(200, 250));
+    }
+
+    /**
+     * Ensures that missing branches and GraphQL errors fail the request.
+     */
+    @Test
+    public void ensureErrorsFail() {
+        assertThatThrownBy(() -> this.fetcher.fetchNewest("missing").join())
+                .as("A missing branch should fail.")
+                .isInstanceOf(CompletionException.class);
+        assertThatThrownBy(() -> this.fetcher.fetchPage("missing", null, 2, 30).join())
+                .as("A page of a missing branch should fail.")
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> this.fetcher.fetchHistory("invalid", 1, 100).join())
+                .as("GraphQL errors should fail.")
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("Could not resolve");
+    }
+
+    /**
+     * Ensures that a project fetching from GraphQL API caches pages and syncs new commits.
+     */
+    @Test
+    public void ensureProjectUsesGraphQL() {
+        final GitCommitAccess project = new GitCommitAccess(this.client, "owner", "repository", this.fetcher);
+        project.cache.put("master", new BranchCache(project.graph));
+
+        assertThat(shas(project.getCommits("master", 3, 50).join()))
+                .as("The page should be fetched.")
+                .isEqualTo(this.history.subList(100, 150));
+
+        for (int i = 1; i <= 5; i++) {
+            this.history.add(0, sha(1000 + i));
+        }
+        project.refresh("master").join();
+        assertThat(shas(project.getCommits("master", 1, 10).join()))
+                .as("The new commits should be synced.")
+                .isEqualTo(this.history.subList(0, 10));
+        assertThat(shas(project.getCommits("master", 25, 10).join()))
+                .as("The older pages should be counted from the newest cached commit.")
+                .isEqualTo(this.history.subList(240, 250));
+    }
+
+    private static List<String> shas(final List<CommitModel> commits) {
+        return commits.stream().map(CommitModel::getSha).collect(Collectors.toList());
+    }
+
+    private static String sha(final int i) {
+        return format("%040x", i);
+    }
+
+    private static long date(final int i) {
+        return 1_600_000_000L - i * 60L;
+    }
+
+    /**
+     * Answers the queries of {@link GraphQLCommitFetcher} from {@link #history}.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        final JsonNode request = mapper.readTree(exchange.getRequestBody());
+        this.requests.add(request);
+        this.authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+        final String query = request.path("query").asText();
+        final JsonNode variables = request.path("variables");
+
+        final ObjectNode response = mapper.createObjectNode();
+        final ObjectNode repository = response.putObject("data").putObject("repository");
+        if (query.contains("object(oid:")) {
+            final String oid = variables.path("oid").asText();
+            final int start = this.history.indexOf(oid);
+            if (start < 0) {
+                response.putArray("errors").addObject()
+                        .put("message", format("Could not resolve to a GitObject with the oid of '%s'.", oid));
+                repository.putNull("object");
+            } else {
+                final String after = variables.path("after").asText(null);
+                final int from = after == null ? start : start + Integer.parseInt(after.split(" ")[1]) + 1;
+                history(repository.putObject("object"), from, variables.path("first").asInt());
+            }
+        } else if (!variables.path("ref").asText().equals("refs/heads/master")) {
+            repository.putNull("ref");
+        } else if (query.contains("history(")) {
+            history(repository.putObject("ref").putObject("target"), 0, variables.path("first").asInt());
+        } else {
+            repository.putObject("ref").putObject("target").put("oid", this.history.get(0));
+        }
+
+        final byte[] body = response.toString().getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private void history(final ObjectNode commit, final int from, final int first) {
+        final ArrayNode nodes = commit.putObject("history").putArray("nodes");
+        for (int i = from; i < Math.min(from + first, this.history.size()); i++) {
+            final int number = Integer.parseInt(this.history.get(i), 16);
+            final ObjectNode node = nodes.addObject()
+                    .put("oid", this.history.get(i))
+                    .put("message", format("Commit %d\n\nWith a body.", number));
+            node.putObject("committer")
+                    .put("name", "Ada Lovelace")
+                    .put("date", Instant.ofEpochSecond(date(number)).atOffset(ZoneOffset.ofHours(2)).toString());
+            final ArrayNode parents = node.putObject("parents").putArray("nodes");
+            if (i + 1 < this.history.size()) {
+                parents.addObject().put("oid", this.history.get(i + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package commit.viewer.git;
+
+import commit.viewer.model.CommitModel;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link LocalCommitAccess} tests, they read the repository of test resources whose branches are listed by
+ * {@code git log --format='%H %ct'} on {@code local/<branch>.log}.
+ * <p>
+ * The repository has both loose and packed objects, commits stored as deltas of each other, a merge commit, and
+ * branches both loose and packed, where the loose {@code master} is newer than the packed one.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class LocalCommitAccessTest {
+
+    private static Path resources;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        resources = Paths.get(LocalCommitAccessTest.class.getResource("/local").toURI());
+    }
+
+    /**
+     * Ensures that the branches are listed like {@code git log}, loose refs winning over packed ones.
+     */
+    @Test
+    public void ensureHistoryMatchesGitLog() throws Exception {
+        final LocalCommitAccess project = LocalCommitAccess.open(resources.resolve("fixture.git"));
+
+        assertThat(project.getDefaultBranch())
+                .as("The default branch should be the branch of HEAD.")
+                .isEqualTo("master");
+        assertThat(project.listBranches())
+                .as("Both loose and packed branches should be listed.")
+                .containsExactly("feature", "loose-ref", "master");
+
+        for (final String branch : project.listBranches()) {
+            final List<String> expected = Files.readAllLines(resources.resolve(branch + ".log"), UTF_8).stream()
+                    .map(line -> line.split(" ")[0])
+                    .collect(Collectors.toList());
+            final List<String> actual = new ArrayList<>();
+            for (int page = 1; actual.size() < expected.size() + 1; page++) {
+                final List<CommitModel> commits = project.getCommits(branch, page, 7).join();
+                if (commits.isEmpty()) {
+                    break;
+                }
+                commits.forEach(commit -> actual.add(commit.getSha()));
+            }
+            assertThat(actual)
+                    .as("Branch %s should be listed like git log.", branch)
+                    .isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Ensures that commits are parsed like Github API, i.e., with the committer as author.
+     */
+    @Test
+    public void ensureCommitsAreParsed() throws Exception {
+        final LocalCommitAccess project = LocalCommitAccess.open(resources.resolve("fixture.git"));
+
+        final List<CommitModel> commits = project.getCommits("master", 1, 2).join();
+        assertThat(commits.get(0))
+                .as("The head commit should be parsed.")
+                .isEqualTo(new CommitModel.Builder()
+                        .sha("27c8e85b5b52595ec7b4c8e4a7270a0dc8f633b7")
+                        .author("Ada Lovelace")
+                        .date("2020-09-13T14:23:20Z")
+                        .message("Master commit 20")
+                        .build());
+        assertThat(commits.get(0).getParents())
+                .as("The parents should be parsed.")
+                .containsExactly("e1a31cb622155eb1e4b16885e36bbb7999c6cf1f");
+        assertThat(commits.get(1).getAuthor())
+                .as("The author should be the committer.")
+                .isEqualTo("Grace Hopper");
+    }
+
+    /**
+     * Ensures that cursors return the commits next to the cursor commit.
+     */
+    @Test
+    public void ensureCursorsWork() throws Exception {
+        final LocalCommitAccess project = LocalCommitAccess.open(resources.resolve("fixture.git"));
+
+        final List<CommitModel> page = project.getCommits("master", 2, 5).join();
+        assertThat(project.getCommitsAfter("master", page.get(0).getSha(), 4).join())
+                .as("The commits after the cursor should follow it.")
+                .isEqualTo(page.subList(1, 5));
+        assertThat(project.getCommitsBefore("master", page.get(4).getSha(), 4).join())
+                .as("The commits before the cursor should precede it.")
+                .isEqualTo(page.subList(0, 4));
+
+        // A new instance has not walked the history yet.
+        final LocalCommitAccess reopened = LocalCommitAccess.open(resources.resolve("fixture.git"));
+        assertThat(reopened.getCommitsAfter("master", page.get(0).getSha(), 4).join())
+                .as("The cursor should be found by walking the history.")
+                .isEqualTo(page.subList(1, 5));
+        assertThatThrownBy(() -> reopened.getCommitsAfter("feature", page.get(0).getSha(), 4).join())
+                .as("A cursor out of the branch should be rejected.")
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+        assertThat(reopened.setBranch("missing").join())
+                .as("A missing branch should not be checked out.")
+                .isFalse();
+    }
+
+    /**
+     * Ensures that objects are read the same when the pack is mapped by windows smaller than its objects, i.e.,
+     * headers, deltas and zlib streams span several windows.
+     */
+    @Test
+    public void ensurePackIsReadAcrossWindows() throws Exception {
+        final Path objects = resources.resolve("fixture.git").resolve("objects");
+        final LocalObjects database = new LocalObjects(objects);
+        final Path index;
+        try (Stream<Path> indexes = Files.list(objects.resolve("pack"))) {
+            index = indexes.filter(file -> file.toString().endsWith(".idx")).findFirst().orElseThrow();
+        }
+        final PackFile windowed = new PackFile(index, database, 7);
+
+        int packed = 0;
+        for (final String branch : List.of("master", "feature", "loose-ref")) {
+            for (final String line : Files.readAllLines(resources.resolve(branch + ".log"), UTF_8)) {
+                final String sha = line.split(" ")[0];
+                final long offset = windowed.offsetOf(LocalObjects.HEX.decode(sha));
+                if (offset < 0) {
+                    continue;
+                }
+                packed++;
+                assertThat(windowed.read(offset).content)
+                        .as("Object %s should be read across windows.", sha)
+                        .isEqualTo(database.read(sha).content);
+            }
+        }
+        assertThat(packed)
+                .as("Some commits should be packed.")
+                .isPositive();
+    }
+
+    /**
+     * Ensures that a pack added after the repository is opened is found once the pack directory is modified.
+     */
+    @Test
+    public void ensureNewPacksAreListed() throws Exception {
+        final Path packs = resources.resolve("fixture.git").resolve("objects").resolve("pack");
+        final Path objects = Files.createTempDirectory("commit-viewer");
+        try {
+            Files.createDirectory(objects.resolve("pack"));
+            final LocalObjects database = new LocalObjects(objects);
+            final String sha = Files.readAllLines(resources.resolve("master.log"), UTF_8).get(19).split(" ")[0];
+            assertThatThrownBy(() -> database.read(sha))
+                    .as("An object of no pack should be missing.")
+                    .isInstanceOf(NoSuchFileException.class);
+
+            try (Stream<Path> files = Files.list(packs)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, objects.resolve("pack").resolve(file.getFileName().toString()));
+                }
+            }
+            // The modification time of a directory might only have a second of resolution.
+            Files.setLastModifiedTime(objects.resolve("pack"), FileTime.fromMillis(0));
+            assertThat(database.read(sha).type)
+                    .as("The object of the new pack should be found.")
+                    .isEqualTo("commit");
+        } finally {
+            try (Stream<Path> files = Files.walk(objects)) {
+                for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
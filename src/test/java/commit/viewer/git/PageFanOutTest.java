@@ -0,0 +1,100 @@
+package commit.viewer.git;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link PageFanOut} tests, they do not use Github API.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class PageFanOutTest {
+
+    /**
+     * Ensures that pages are joined in order while the number of requests in flight is bounded.
+     *
+     * @throws ExecutionException   If a page fails.
+     * @throws InterruptedException If the fetch is interrupted.
+     */
+    @Test
+    public void ensurePagesAreFetchedInOrderWithBoundedConcurrency() throws ExecutionException, InterruptedException {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        final List<List<Integer>> pages = PageFanOut.fetch(3, 12, 5, 4, page -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                sleep((13 - page) * 5);
+                inFlight.decrementAndGet();
+                return page(page, 5);
+            });
+        }).get();
+
+        assertThat(pages)
+                .as("All 10 pages should be fetched.")
+                .hasSize(10);
+        for (int i = 0; i < pages.size(); i++) {
+            assertThat(pages.get(i))
+                    .as("Page %d should be in order.", i + 3)
+                    .isEqualTo(page(i + 3, 5));
+        }
+        assertThat(maxInFlight.get())
+                .as("There should be at most 4 pages in flight.")
+                .isLessThanOrEqualTo(4);
+    }
+
+    /**
+     * Ensures that nothing after the last page is joined or requested once the last page is known.
+     *
+     * @throws ExecutionException   If a page fails.
+     * @throws InterruptedException If the fetch is interrupted.
+     */
+    @Test
+    public void ensureFetchStopsAtLastPage() throws ExecutionException, InterruptedException {
+        final AtomicInteger requests = new AtomicInteger();
+
+        final List<List<Integer>> pages = PageFanOut.fetch(1, 20, 5, 1, page -> {
+            requests.incrementAndGet();
+            if (page == 4) {
+                return CompletableFuture.completedFuture(page(page, 2));
+            }
+            if (page > 4) {
+                return CompletableFuture.completedFuture(new ArrayList<>());
+            }
+            return CompletableFuture.completedFuture(page(page, 5));
+        }).get();
+
+        assertThat(pages)
+                .as("Pages until the short page should be joined.")
+                .hasSize(4);
+        assertThat(pages.get(3))
+                .as("The short page should be the last one.")
+                .hasSize(2);
+        assertThat(requests.get())
+                .as("No page should be requested after the short page.")
+                .isEqualTo(4);
+    }
+
+    private static List<Integer> page(final int page, final int size) {
+        final List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            elements.add(page * 100 + i);
+        }
+        return elements;
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package commit.viewer.git;
+
+import commit.viewer.git.UpstreamScheduler.Credential;
+import commit.viewer.git.UpstreamScheduler.Priority;
+import org.junit.Test;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link UpstreamScheduler} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class UpstreamSchedulerTest {
+
+    private static final String CORE = "core";
+
+    /**
+     * Ensures that interactive requests waiting for the bucket are sent before background ones.
+     */
+    @Test
+    public void ensureInteractiveRequestsGoFirst() {
+        final UpstreamScheduler scheduler = new UpstreamScheduler(List.of(), 10, 1, 0.2);
+        assertThat(scheduler.acquire(Priority.BACKGROUND, CORE))
+                .as("The first request should take the only token of the bucket.")
+                .isCompleted();
+
+        final CompletableFuture<Credential> background = scheduler.acquire(Priority.BACKGROUND, CORE);
+        final CompletableFuture<Credential> interactive = scheduler.acquire(Priority.INTERACTIVE, CORE);
+        assertThat(background.isDone() || interactive.isDone())
+                .as("Requests should wait for the bucket.")
+                .isFalse();
+
+        interactive.join();
+        assertThat(background.isDone())
+                .as("The background request should still wait once the interactive one is sent.")
+                .isFalse();
+        assertThat(background.join())
+                .as("The background request should be sent on the next token.")
+                .isNotNull();
+    }
+
+    /**
+     * Ensures that background requests keep the reserve of the budget for interactive ones, and that no request is
+     * sent on an exhausted budget.
+     */
+    @Test
+    public void ensureExhaustedBudgetIsNotSpent() {
+        final UpstreamScheduler scheduler = new UpstreamScheduler(List.of("token"), 100, 100, 0.2);
+        final Credential credential = scheduler.acquire(Priority.INTERACTIVE, CORE).join();
+        assertThat(scheduler.onResponse(credential, CORE, 200, headers(5000, 1000)))
+                .as("A response within the rate limit should not be limited.")
+                .isNull();
+
+        assertThat(retryAfter(scheduler.acquire(Priority.BACKGROUND, CORE)))
+                .as("Background requests should not spend the reserve.")
+                .isPositive();
+        assertThat(scheduler.acquire(Priority.INTERACTIVE, CORE).join().token)
+                .as("Interactive requests should spend the reserve.")
+                .isEqualTo("token");
+
+        final RateLimitedException limited = scheduler.onResponse(credential, CORE, 403, headers(5000, 0));
+        assertThat(limited.getRetryAfterSeconds())
+                .as("A refused request should be retried after the reset.")
+                .isBetween(3500L, 3600L);
+        assertThat(retryAfter(scheduler.acquire(Priority.INTERACTIVE, CORE)))
+                .as("No request should be sent until the reset.")
+                .isBetween(3500L, 3600L);
+        assertThat(scheduler.acquire(Priority.INTERACTIVE, "graphql"))
+                .as("Other rate limit resources should not be limited.")
+                .isCompleted();
+    }
+
+    /**
+     * Ensures that requests are sent with the token that has the most requests left, and that a token paused by a
+     * secondary rate limit is not used.
+     */
+    @Test
+    public void ensureTokensArePooled() {
+        final UpstreamScheduler scheduler = new UpstreamScheduler(List.of("first", "second"), 100, 100, 0.2);
+        final Credential first = scheduler.acquire(Priority.INTERACTIVE, CORE).join();
+        final Credential second = scheduler.acquire(Priority.INTERACTIVE, CORE).join();
+        scheduler.onResponse(first, CORE, 200, headers(5000, 4000));
+        scheduler.onResponse(second, CORE, 200, headers(5000, 3000));
+
+        assertThat(scheduler.acquire(Priority.INTERACTIVE, CORE).join())
+                .as("The token with the most requests left should be used.")
+                .isSameAs(first);
+
+        final HttpHeaders secondary = HttpHeaders.of(Map.of("Retry-After", List.of("60")), (name, value) -> true);
+        assertThat(scheduler.onResponse(first, CORE, 403, secondary))
+                .as("A secondary rate limit should refuse the request.")
+                .isNotNull();
+        assertThat(scheduler.acquire(Priority.INTERACTIVE, CORE).join())
+                .as("A paused token should not be used.")
+                .isSameAs(second);
+    }
+
+    private static HttpHeaders headers(final long limit, final long remaining) {
+        final long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+        return HttpHeaders.of(Map.of(
+                "X-RateLimit-Limit", List.of(Long.toString(limit)),
+                "X-RateLimit-Remaining", List.of(Long.toString(remaining)),
+                "X-RateLimit-Reset", List.of(Long.toString(reset))
+        ), (name, value) -> true);
+    }
+
+    /**
+     * Gets the seconds to wait of a request refused by the scheduler.
+     */
+    private static long retryAfter(final CompletableFuture<Credential> acquired) {
+        try {
+            acquired.join();
+        } catch (final CompletionException e) {
+            return RateLimitedException.causeOf(e).getRetryAfterSeconds();
+        }
+        throw new AssertionError("The request should be refused.");
+    }
+}
@@ -0,0 +1,65 @@
+package commit.viewer.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link Metrics} tests.
+ *
+ * @author Sheng Wang (shenggwangg@gmail.com)
+ */
+public class MetricsTest {
+
+    /**
+     * Ensures that counters and gauges are written in Prometheus text format, with escaped label values.
+     */
+    @Test
+    public void ensureSeriesAreWrittenByLabels() {
+        final Metrics.Counter counter = Metrics.INSTANCE.counter("test_requests_total", "Test requests.", "repo");
+        counter.inc("a/b");
+        counter.inc("a/b");
+        counter.inc("say \"hi\"\n");
+        final Metrics.Gauge gauge = Metrics.INSTANCE.gauge("test_remaining", "Test gauge.");
+        gauge.set(42);
+
+        final String text = Metrics.INSTANCE.scrape();
+        assertThat(text)
+                .as("The counter should be described once.")
+                .contains("# HELP test_requests_total Test requests.\n# TYPE test_requests_total counter\n")
+                .as("Each series should be written by its labels.")
+                .contains("test_requests_total{repo=\"a/b\"} 2\n")
+                .as("Label values should be escaped.")
+                .contains("test_requests_total{repo=\"say \\\"hi\\\"\\n\"} 1\n")
+                .as("A series without labels should be written without braces.")
+                .contains("test_remaining 42\n");
+        assertThat(Metrics.INSTANCE.counter("test_requests_total", "Test requests.", "repo"))
+                .as("A metric should be registered once.")
+                .isSameAs(counter);
+    }
+
+    /**
+     * Ensures that histogram buckets are cumulative.
+     */
+    @Test
+    public void ensureHistogramBucketsAreCumulative() {
+        final Metrics.Histogram histogram = Metrics.INSTANCE.histogram("test_seconds", "Test latency.", "type");
+        histogram.observeNanos(TimeUnit.MILLISECONDS.toNanos(3), "page");
+        histogram.observeNanos(TimeUnit.MILLISECONDS.toNanos(200), "page");
+        histogram.observeNanos(TimeUnit.SECONDS.toNanos(60), "page");
+
+        assertThat(Metrics.INSTANCE.scrape())
+                .contains("# TYPE test_seconds histogram\n")
+                .as("A duration should be counted by its bucket.")
+                .contains("test_seconds_bucket{type=\"page\",le=\"0.005\"} 1\n")
+                .as("A bucket should count the durations of lower buckets.")
+                .contains("test_seconds_bucket{type=\"page\",le=\"0.25\"} 2\n")
+                .contains("test_seconds_bucket{type=\"page\",le=\"10\"} 2\n")
+                .as("The infinite bucket should count every duration.")
+                .contains("test_seconds_bucket{type=\"page\",le=\"+Inf\"} 3\n")
+                .contains("test_seconds_sum{type=\"page\"} 60.")
+                .contains("test_seconds_count{type=\"page\"} 3\n");
+    }
+}